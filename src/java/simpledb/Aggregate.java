@@ -24,8 +24,9 @@ public class Aggregate extends Operator {
      * Constructor.
      * 
      * Implementation hint: depending on the type of afield, you will want to
-     * construct an {@link IntegerAggregator} or {@link StringAggregator} to help
-     * you with your implementation of readNext().
+     * construct an {@link IntegerAggregator}, {@link StringAggregator} or
+     * {@link NumericAggregator} to help you with your implementation of
+     * readNext().
      * 
      * 
      * @param child
@@ -54,6 +55,10 @@ public class Aggregate extends Operator {
         case STRING_TYPE:
             aggregator = new StringAggregator(gfield == -1 ? Aggregator.NO_GROUPING : gfield, gtype, afield, aop);
             break;
+        default:
+            aggregator = new NumericAggregator(gfield == -1 ? Aggregator.NO_GROUPING : gfield, gtype, afield,
+                    child.getTupleDesc().getFieldType(afield), aop);
+            break;
         }
     }
 
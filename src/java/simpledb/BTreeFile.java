@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import simpledb.Predicate.Op;
@@ -24,6 +27,7 @@ public class BTreeFile implements DbFile {
 	private final TupleDesc td;
 	private final int tableid ;
 	private int keyField;
+	private FileChannel channel;
 
 	/**
 	 * Constructs a B+ tree file backed by the specified file.
@@ -69,6 +73,39 @@ public class BTreeFile implements DbFile {
 		return td;
 	}
 
+	/**
+	 * Returns the channel used for all page I/O on this file, opening it on
+	 * first use. Reads and writes are positional, so concurrent callers never
+	 * share a file pointer.
+	 */
+	private synchronized FileChannel getChannel() throws IOException {
+		if (channel == null || !channel.isOpen()) {
+			channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		}
+		return channel;
+	}
+
+	/**
+	 * Returns the byte offset in the file at which the given page starts
+	 */
+	private long pageOffset(BTreePageId id) {
+		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
+			return 0;
+		}
+		return BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber()-1) * BufferPool.getPageSize();
+	}
+
+	/**
+	 * Write a full buffer to the file at the given offset
+	 */
+	private void writeAt(ByteBuffer buf, long offset) throws IOException {
+		FileChannel fc = getChannel();
+		while (buf.hasRemaining()) {
+			fc.write(buf, offset + buf.position());
+		}
+	}
+
 	/**
 	 * Read a page from the file on disk. This should not be called directly
 	 * but should be called from the BufferPool via getPage()
@@ -78,63 +115,39 @@ public class BTreeFile implements DbFile {
 	 */
 	public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
-		BufferedInputStream bis = null;
+		int len = (id.pgcateg() == BTreePageId.ROOT_PTR) ?
+				BTreeRootPtrPage.getPageSize() : BufferPool.getPageSize();
+		byte pageBuf[] = new byte[len];
+		ByteBuffer buf = ByteBuffer.wrap(pageBuf);
+		long offset = pageOffset(id);
 
 		try {
-			bis = new BufferedInputStream(new FileInputStream(f));
-			if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-				byte pageBuf[] = new byte[BTreeRootPtrPage.getPageSize()];
-				int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
+			FileChannel fc = getChannel();
+			while (buf.hasRemaining()) {
+				int retval = fc.read(buf, offset + buf.position());
 				if (retval == -1) {
-					throw new IllegalArgumentException("Read past end of table");
-				}
-				if (retval < BTreeRootPtrPage.getPageSize()) {
+					if (buf.position() == 0) {
+						throw new IllegalArgumentException("Read past end of table");
+					}
 					throw new IllegalArgumentException("Unable to read "
-							+ BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
+							+ len + " bytes from BTreeFile");
 				}
-				Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
-				BTreeRootPtrPage p = new BTreeRootPtrPage(id, pageBuf);
-				return p;
 			}
-			else {
-				byte pageBuf[] = new byte[BufferPool.getPageSize()];
-				if (bis.skip(BTreeRootPtrPage.getPageSize() + (id.getPageNumber()-1) * BufferPool.getPageSize()) !=
-						BTreeRootPtrPage.getPageSize() + (id.getPageNumber()-1) * BufferPool.getPageSize()) {
-					throw new IllegalArgumentException(
-							"Unable to seek to correct place in BTreeFile");
-				}
-				int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
-				if (retval == -1) {
-					throw new IllegalArgumentException("Read past end of table");
-				}
-				if (retval < BufferPool.getPageSize()) {
-					throw new IllegalArgumentException("Unable to read "
-							+ BufferPool.getPageSize() + " bytes from BTreeFile");
-				}
-				Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
-				if(id.pgcateg() == BTreePageId.INTERNAL) {
-					BTreeInternalPage p = new BTreeInternalPage(id, pageBuf, keyField);
-					return p;
-				}
-				else if(id.pgcateg() == BTreePageId.LEAF) {
-					BTreeLeafPage p = new BTreeLeafPage(id, pageBuf, keyField);
-					return p;
-				}
-				else { // id.pgcateg() == BTreePageId.HEADER
-					BTreeHeaderPage p = new BTreeHeaderPage(id, pageBuf);
-					return p;
-				}
+			Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
+			if(id.pgcateg() == BTreePageId.ROOT_PTR) {
+				return new BTreeRootPtrPage(id, pageBuf);
+			}
+			else if(id.pgcateg() == BTreePageId.INTERNAL) {
+				return new BTreeInternalPage(id, pageBuf, keyField);
+			}
+			else if(id.pgcateg() == BTreePageId.LEAF) {
+				return new BTreeLeafPage(id, pageBuf, keyField);
+			}
+			else { // id.pgcateg() == BTreePageId.HEADER
+				return new BTreeHeaderPage(id, pageBuf);
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
-		} finally {
-			// Close the file on success or error
-			try {
-				if (bis != null)
-					bis.close();
-			} catch (IOException ioe) {
-				// Ignore failures closing the file
-			}
 		}
 	}
 
@@ -146,18 +159,7 @@ public class BTreeFile implements DbFile {
 	 */
 	public void writePage(Page page) throws IOException {
 		BTreePageId id = (BTreePageId) page.getId();
-		
-		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
-		}
-		else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (page.getId().getPageNumber()-1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
-		}
+		writeAt(ByteBuffer.wrap(page.getPageData()), pageOffset(id));
 	}
 	
 	/**
@@ -848,13 +850,10 @@ public class BTreeFile implements DbFile {
 		synchronized(this) {
 			if(f.length() == 0) {
 				// create the root pointer page and the root page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
 				byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-				bw.write(emptyRootPtrData);
-				bw.write(emptyLeafData);
-				bw.close();
+				writeAt(ByteBuffer.wrap(emptyRootPtrData), 0);
+				writeAt(ByteBuffer.wrap(emptyLeafData), emptyRootPtrData.length);
 			}
 		}
 
@@ -910,11 +909,8 @@ public class BTreeFile implements DbFile {
 		if(headerId == null) {		
 			synchronized(this) {
 				// create the new page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-				bw.write(emptyData);
-				bw.close();
+				writeAt(ByteBuffer.wrap(emptyData), getChannel().size());
 				emptyPageNo = numPages();
 			}
 		}
@@ -945,10 +941,7 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 		
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (emptyPageNo-1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		writeAt(ByteBuffer.wrap(BTreePage.createEmptyPageData()), pageOffset(newPageId));
 		
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
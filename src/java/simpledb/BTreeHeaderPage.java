@@ -24,7 +24,7 @@ public class BTreeHeaderPage implements Page {
 	private int prevPage; // previous header page or 0
 
 	byte[] oldData;
-	private final Byte oldDataLock=new Byte((byte)0);
+	private final Object oldDataLock=new Object();
 
 	/**
 	 * Create a BTreeHeaderPage from a set of bytes of data read from disk.
@@ -61,13 +61,14 @@ public class BTreeHeaderPage implements Page {
 
 		dis.close();
 
-		setBeforeImage();
+		// the before image is captured when the page is first modified
 	}
 
 	/**
 	 * Initially mark all slots in the header used.
 	 */
 	public void init() {
+		captureBeforeImage();
 		for (int i=0; i<header.length; i++)
 			header[i] = (byte) 0xFF;
 	}
@@ -97,7 +98,8 @@ public class BTreeHeaderPage implements Page {
 			{
 				oldDataRef = oldData;
 			}
-			return new BTreeHeaderPage(pid,oldDataRef);
+			// no saved image: the page is unchanged since it was read or committed
+			return new BTreeHeaderPage(pid,oldDataRef == null ? getPageData() : oldDataRef);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -107,9 +109,24 @@ public class BTreeHeaderPage implements Page {
 	}
 
 	public void setBeforeImage() {
+		// the current content becomes the before image; it is only copied
+		// once the page is modified again
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = null;
+		}
+	}
+
+	/**
+	 * Save the current content as the before image, unless it has already
+	 * been saved since the page was read or last committed. Must be called
+	 * before every modification of the page.
+	 */
+	private void captureBeforeImage() {
+		synchronized(oldDataLock)
+		{
+			if (oldData == null)
+				oldData = getPageData();
 		}
 	}
 
@@ -211,6 +228,7 @@ public class BTreeHeaderPage implements Page {
 	 * @throws DbException
 	 */
 	public void setPrevPageId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			prevPage = 0;
 		}
@@ -231,6 +249,7 @@ public class BTreeHeaderPage implements Page {
 	 * @throws DbException
 	 */
 	public void setNextPageId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			nextPage = 0;
 		}
@@ -277,6 +296,7 @@ public class BTreeHeaderPage implements Page {
 	 * Abstraction to mark a page of the BTreeFile used or unused
 	 */
 	public void markSlotUsed(int i, boolean value) {
+		captureBeforeImage();
 		int headerbit = i % 8;
 		int headerbyte = (i - headerbit) / 8;
 
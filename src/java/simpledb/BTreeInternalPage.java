@@ -108,7 +108,7 @@ public class BTreeInternalPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		// the before image is captured when the page is first modified
 	}
 
 	/** 
@@ -145,7 +145,8 @@ public class BTreeInternalPage extends BTreePage {
 			{
 				oldDataRef = oldData;
 			}
-			return new BTreeInternalPage(pid,oldDataRef,keyField);
+			// no saved image: the page is unchanged since it was read or committed
+			return new BTreeInternalPage(pid,oldDataRef == null ? getPageData() : oldDataRef,keyField);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -155,9 +156,11 @@ public class BTreeInternalPage extends BTreePage {
 	}
 
 	public void setBeforeImage() {
+		// the current content becomes the before image; it is only copied
+		// once the page is modified again
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = null;
 		}
 	}
 
@@ -377,6 +380,7 @@ public class BTreeInternalPage extends BTreePage {
 	 * @param e The entry to delete
 	 */
 	public void deleteKeyAndRightChild(BTreeEntry e) throws DbException {
+		captureBeforeImage();
 		deleteEntry(e, true);
 	}
 	
@@ -390,6 +394,7 @@ public class BTreeInternalPage extends BTreePage {
 	 * @param e The entry to delete
 	 */
 	public void deleteKeyAndLeftChild(BTreeEntry e) throws DbException {
+		captureBeforeImage();
 		deleteEntry(e, false);
 	}
 	
@@ -402,6 +407,7 @@ public class BTreeInternalPage extends BTreePage {
 	 *         order on the page
 	 */
 	public void updateEntry(BTreeEntry e) throws DbException {
+		captureBeforeImage();
 		RecordId rid = e.getRecordId();
 		if(rid == null)
 			throw new DbException("tried to update entry with null rid");
@@ -441,6 +447,7 @@ public class BTreeInternalPage extends BTreePage {
 	 * @param e The entry to add.
 	 */
 	public void insertEntry(BTreeEntry e) throws DbException {
+		captureBeforeImage();
 		if (!e.getKey().getType().equals(td.getFieldType(keyField)))
 			throw new DbException("key field type mismatch, in insertEntry");
 
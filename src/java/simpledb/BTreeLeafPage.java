@@ -103,7 +103,7 @@ public class BTreeLeafPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		// the before image is captured when the page is first modified
 	}
 
 	/** 
@@ -137,7 +137,8 @@ public class BTreeLeafPage extends BTreePage {
 			{
 				oldDataRef = oldData;
 			}
-			return new BTreeLeafPage(pid,oldDataRef,keyField);
+			// no saved image: the page is unchanged since it was read or committed
+			return new BTreeLeafPage(pid,oldDataRef == null ? getPageData() : oldDataRef,keyField);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -147,9 +148,11 @@ public class BTreeLeafPage extends BTreePage {
 	}
 
 	public void setBeforeImage() {
+		// the current content becomes the before image; it is only copied
+		// once the page is modified again
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = null;
 		}
 	}
 
@@ -287,6 +290,7 @@ public class BTreeLeafPage extends BTreePage {
 	 * @param t The tuple to delete
 	 */
 	public void deleteTuple(Tuple t) throws DbException {
+		captureBeforeImage();
 		RecordId rid = t.getRecordId();
 		if(rid == null)
 			throw new DbException("tried to delete tuple with null rid");
@@ -307,6 +311,7 @@ public class BTreeLeafPage extends BTreePage {
 	 * @param t The tuple to add.
 	 */
 	public void insertTuple(Tuple t) throws DbException {
+		captureBeforeImage();
 		if (!t.getTupleDesc().equals(td))
 			throw new DbException("type mismatch, in addTuple");
 
@@ -400,6 +405,7 @@ public class BTreeLeafPage extends BTreePage {
 	 * @throws DbException if the id is not valid
 	 */
 	public void setLeftSiblingId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			leftSibling = 0;
 		}
@@ -420,6 +426,7 @@ public class BTreeLeafPage extends BTreePage {
 	 * @throws DbException if the id is not valid
 	 */
 	public void setRightSiblingId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			rightSibling = 0;
 		}
@@ -22,7 +22,7 @@ public abstract class BTreePage implements Page {
 
 	protected int parent; // parent is always internal node or 0 for root node
 	protected byte[] oldData;
-	protected final Byte oldDataLock=new Byte((byte)0);
+	protected final Object oldDataLock=new Object();
 
 	/**
 	 * Create a BTreeInternalPage from a set of bytes of data read from disk.
@@ -54,6 +54,19 @@ public abstract class BTreePage implements Page {
 		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
 	}
 
+	/**
+	 * Save the current content as the before image, unless it has already
+	 * been saved since the page was read or last committed. Must be called
+	 * before every modification of the page.
+	 */
+	protected void captureBeforeImage() {
+		synchronized(oldDataLock)
+		{
+			if (oldData == null)
+				oldData = getPageData();
+		}
+	}
+
 	/**
 	 * @return the PageId associated with this page.
 	 */
@@ -92,6 +105,7 @@ public abstract class BTreePage implements Page {
 	 * @throws DbException if the id is not valid
 	 */
 	public void setParentId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			throw new DbException("parent id must not be null");
 		}
@@ -23,6 +23,7 @@ public class BTreeRootPtrPage implements Page {
 	private int header;
 
 	private byte[] oldData;
+	private final Object oldDataLock=new Object();
 
 	/**
 	 * Constructor.
@@ -44,11 +45,29 @@ public class BTreeRootPtrPage implements Page {
 		// read in the header pointer
 		header = dis.readInt();
 		
-		setBeforeImage();
+		// the before image is captured when the page is first modified
 	}
 
 	public void setBeforeImage() {
-		oldData = getPageData().clone();
+		// the current content becomes the before image; it is only copied
+		// once the page is modified again
+		synchronized(oldDataLock)
+		{
+			oldData = null;
+		}
+	}
+
+	/**
+	 * Save the current content as the before image, unless it has already
+	 * been saved since the page was read or last committed. Must be called
+	 * before every modification of the page.
+	 */
+	private void captureBeforeImage() {
+		synchronized(oldDataLock)
+		{
+			if (oldData == null)
+				oldData = getPageData();
+		}
 	}
 
 	/**
@@ -142,7 +161,13 @@ public class BTreeRootPtrPage implements Page {
         -- used by recovery */
 	public BTreeRootPtrPage getBeforeImage(){
 		try {
-			return new BTreeRootPtrPage(pid,oldData);
+			byte[] oldDataRef = null;
+			synchronized(oldDataLock)
+			{
+				oldDataRef = oldData;
+			}
+			// no saved image: the page is unchanged since it was read or committed
+			return new BTreeRootPtrPage(pid,oldDataRef == null ? getPageData() : oldDataRef);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -168,6 +193,7 @@ public class BTreeRootPtrPage implements Page {
 	 * @throws DbException if the id is invalid
 	 */
 	public void setRootId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			root = 0;
 		}
@@ -200,6 +226,7 @@ public class BTreeRootPtrPage implements Page {
 	 * @throws DbException if the id is invalid
 	 */
 	public void setHeaderId(BTreePageId id) throws DbException {
+		captureBeforeImage();
 		if(id == null) {
 			header = 0;
 		}
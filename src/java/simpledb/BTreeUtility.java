@@ -147,7 +147,7 @@ public class BTreeUtility {
 		
 		// Convert the tuples list to a B+ tree file
 		File hFile = File.createTempFile("table", ".dat");
-		hFile.deleteOnExit();
+		HeapFile.deleteOnExit(hFile);
 
 		File bFile = File.createTempFile("table_index", ".dat");
 		bFile.deleteOnExit();
@@ -403,7 +403,7 @@ public class BTreeUtility {
 
 		// Convert the tuples list to a B+ tree file
 		File hFile = File.createTempFile("table", ".dat");
-		hFile.deleteOnExit();
+		HeapFile.deleteOnExit(hFile);
 
 		File bFile = File.createTempFile("table_index", ".dat");
 		bFile.deleteOnExit();
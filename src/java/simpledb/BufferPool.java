@@ -2,9 +2,12 @@ package simpledb;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Random;
-import java.util.Vector;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from disk.
@@ -22,7 +25,7 @@ public class BufferPool {
     private static final int DEFAULT_PAGE_SIZE = 4096;
 
     private static int pageSize = DEFAULT_PAGE_SIZE;
-    private LockManager lockManager;
+    private final LockManager lockManager;
 
     /**
      * Default number of pages passed to the constructor. This is used by other
@@ -31,21 +34,99 @@ public class BufferPool {
      */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Eviction policy of new pools, see {@link EvictionPolicy#forName}. */
+    private static volatile String defaultPolicy =
+            System.getProperty("simpledb.bufferpool.policy", "lru");
+
     private ConcurrentHashMap<PageId, Page> pages;
     private final int numPages;
+    private final EvictionPolicy policy;
+    /** Requests for pages that were, and were not, in the pool. */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    /** Page reads that have been started but have not finished yet. */
+    private final ConcurrentHashMap<PageId, PendingRead> inFlight;
+    /** Pages read ahead that no transaction has asked for yet. */
+    private final Set<PageId> prefetched = ConcurrentHashMap.newKeySet();
+
+    /** A page read in flight. */
+    private static class PendingRead {
+        final CompletableFuture<Page> result = new CompletableFuture<Page>();
+        /**
+         * Set when the page is written or discarded during the read, since
+         * the image read may then be out of date.
+         */
+        volatile boolean stale = false;
+    }
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, evicting pages
+     * by the {@link #setDefaultPolicy default policy}.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, EvictionPolicy.forName(defaultPolicy, numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy chooses the pages to evict; it must be new.
+     */
+    public BufferPool(int numPages, EvictionPolicy policy) {
         // Done
         pages = new ConcurrentHashMap<PageId, Page>();
+        inFlight = new ConcurrentHashMap<PageId, PendingRead>();
         this.numPages = numPages;
+        this.policy = policy;
         lockManager = new LockManager();
     }
 
+    /**
+     * @return the name of the eviction policy of new pools
+     */
+    public static String getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Sets the eviction policy of the pools created from now on, by a name
+     * accepted by {@link EvictionPolicy#forName}: "lru", the default,
+     * "clock", "lru-k" or "2q". Workloads that mix large scans with lookups
+     * of hot pages should choose "lru-k" or "2q". The policy can also be set
+     * by starting the JVM with the system property
+     * <code>simpledb.bufferpool.policy</code>.
+     *
+     * @throws IllegalArgumentException if there is no policy with that name
+     */
+    public static void setDefaultPolicy(String name) {
+        EvictionPolicy.forName(name, DEFAULT_PAGES);
+        defaultPolicy = name;
+    }
+
+    /**
+     * @return the policy choosing the pages this pool evicts
+     */
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of getPage calls that found the page in the pool
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of getPage calls that had to read the page
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
     public static int getPageSize() {
         return pageSize;
     }
@@ -60,153 +141,6 @@ public class BufferPool {
         BufferPool.pageSize = DEFAULT_PAGE_SIZE;
     }
 
-    private enum LockType {
-        EXCLUSIVE, SHARED
-    }
-
-    private class LockManager {
-        private class Lock {
-            LockType lockType;
-            Vector<TransactionId> holdLockTxs;
-
-            public Lock(LockType lockType) {
-                this.holdLockTxs = new Vector<>();
-                this.lockType = lockType;
-            }
-
-            public void setType(LockType lockType) {
-                this.lockType = lockType;
-            }
-
-            public LockType getType() {
-                return lockType;
-            }
-
-            public boolean isEmpty() {
-                return holdLockTxs.size() == 0;
-            }
-
-            public int size() {
-                return holdLockTxs.size();
-            }
-
-            public boolean containsTx(TransactionId tid) {
-                return holdLockTxs.contains(tid);
-            }
-
-            public boolean addTx(TransactionId tid) {
-                if (!containsTx(tid)) {
-                    holdLockTxs.add(tid);
-                    return true;
-                }
-                return false;
-            }
-
-            public boolean removeTx(TransactionId tid) {
-                if (containsTx(tid)) {
-                    holdLockTxs.remove(tid);
-                    return true;
-                }
-                return false;
-            }
-        }
-
-        private ConcurrentHashMap<PageId, Lock> pid2lock;
-
-        public LockManager() {
-            pid2lock = new ConcurrentHashMap<>();
-        }
-
-        public synchronized boolean acquireLock(PageId pid, TransactionId tid, LockType lockType) {
-            // There's no lock on the target page, create one and return true
-            if (pid2lock.get(pid) == null) {
-                Lock newLock = new Lock(lockType);
-                newLock.addTx(tid);
-                pid2lock.put(pid, newLock);
-                
-                return true;
-            }
-            
-            // Already have a lock
-            Lock targetLock = pid2lock.get(pid);
-
-            // tid own the targetLock
-            if (targetLock.containsTx(tid)) {
-                // tid is exclusive targetLock's only owner
-                if (targetLock.getType() == LockType.EXCLUSIVE) {
-                    // requiring shared or exclusive lock are both ok
-                    assert targetLock.size() == 1 : "targetlock have more than one tid in exclusive mode";
-                    return true;
-                }
-
-                // tid is shared targetLock's only owner
-                if (targetLock.size() == 1) {
-                    // upgrade to exclusive lock no matter acquiring lockType is shared or exclusive
-                    targetLock.setType(LockType.EXCLUSIVE);
-                    return true;
-                }
-
-                // tid is one of the owner of shared targetLock
-                // Acquiring a exclusive lock is forbiddened
-                if (lockType == LockType.EXCLUSIVE)
-                    return false;
-
-                // Acquiring a shared lock is allowed
-                return true;
-            }
-
-            // tid doesn't own the exclusive targetLock
-            if (targetLock.getType() == LockType.EXCLUSIVE)
-                return false;
-
-            // tid doesn't own the shared targetLock
-            if (lockType == LockType.SHARED) {
-                // allow shared lock join
-                targetLock.addTx(tid);
-                return true;
-            }
-
-            // forbidden exclusive lock join
-            return false;
-        }
-
-        public synchronized boolean releaseLock(PageId pid, TransactionId tid) {
-            Lock targetLock = pid2lock.get(pid);
-
-            // There isn't a lock for pid
-            if (targetLock == null)
-                return false;
-
-            // Remove tid success
-            if (targetLock.removeTx(tid)) {
-                // If targetLock no more owned by any tid, remove it
-                if (targetLock.isEmpty())
-                    pid2lock.remove(pid);
-
-                return true;
-            }
-
-            // Remove tid failed that tid doesn't own targetLock
-            return false;
-        }
-
-        public synchronized boolean holdsLock(PageId pid, TransactionId tid) {
-            Lock targetLock = pid2lock.get(pid);
-
-            // if not a single lock is held on pid
-            if (targetLock == null)
-                return false;
-
-            return targetLock.containsTx(tid);
-        }
-
-        public synchronized void releaseTxLocks(TransactionId tid) {
-            for (PageId pid : pid2lock.keySet()) {
-                if (holdsLock(pid, tid))
-                    releaseLock(pid, tid);
-            }
-        }
-    }
     /**
      * Retrieve the specified page with the associated permissions. Will acquire a
      * lock and may block if that lock is held by another transaction.
@@ -219,42 +153,228 @@ public class BufferPool {
      * @param tid  the ID of the transaction requesting the page
      * @param pid  the ID of the requested page
      * @param perm the requested permissions on the page
+     * @throws TransactionAbortedException if the transaction must abort to
+     *             break a deadlock, or because the page was truncated away
+     *             from a {@link HeapFile} while the transaction waited
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DbException {
         // Done
-        long start = System.currentTimeMillis();
-        long timeOut = new Random().nextInt(2000) + 1000;
-        while (!lockManager.acquireLock(pid, tid,
-                perm == Permissions.READ_ONLY ? LockType.SHARED : LockType.EXCLUSIVE)) {
-            // Looping until acquire the requring lock
+        lockManager.acquire(tid, pid, perm == Permissions.READ_ONLY
+                ? LockManager.LockMode.SHARED : LockManager.LockMode.EXCLUSIVE);
+
+        Page cached = pages.get(pid);
+        if (cached != null) {
+            hits.incrementAndGet();
+            if (!firstUse(pid))
+                policy.pageHit(pid);
+            return cached;
+        }
+        misses.incrementAndGet();
+        DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        if (file instanceof HeapFile && ((HeapFile) file).wasTruncated(pid.getPageNumber())) {
+            // the page was cut off the file while this transaction waited
+            // for its lock; the caller restarts and no longer sees it
+            throw new TransactionAbortedException();
+        }
+
+        // join a read of the page that is already in flight, or read it here
+        Page page;
+        try {
+            page = loadPage(pid, false).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        cached = pages.get(pid);
+        if (cached != null) {
+            firstUse(pid);
+            return cached;
+        }
+        if (page == null) {
+            // the read raced a write of the page, so it may be out of date
+            page = file.readPage(pid);
+        }
+        return cachePage(pid, page);
+    }
 
-            // Dead lock detection
+    /**
+     * Adds a page just read to the pool, evicting a page if the pool is
+     * full, unless the pool got a copy of the page in the meantime.
+     *
+     * @return the page now in the pool
+     */
+    private synchronized Page cachePage(PageId pid, Page page) throws DbException {
+        Page cached = pages.get(pid);
+        if (cached != null)
+            return cached;
+        // If the page number surpass the limit, we evict and put
+        if (pages.size() >= numPages)
+            evictPage();
+        pages.put(pid, page);
+        policy.pageAdded(pid);
+        return page;
+    }
+
+    /**
+     * Puts a page changed by an insert or delete into the pool, replacing
+     * the copy there if any.
+     */
+    private synchronized void putDirtyPage(Page page) {
+        if (pages.put(page.getId(), page) == null)
+            policy.pageAdded(page.getId());
+    }
+
+    /**
+     * Returns a future for the disk image of the specified page. If a read
+     * of the page is already in flight the future is that of the read, so
+     * concurrent misses on the same page share one read. Otherwise the page
+     * is read on one of the {@link PageIO} threads if async is true, and in
+     * the calling thread, which saves a hand-off, if it is false. When the
+     * read finishes the page is added to the pool if there is room, or room
+     * can be made by evicting a clean page.
+     * <p>
+     * The future completes with null if the page was written or discarded
+     * while the read was in progress, since the image read may then be out
+     * of date; such images are never added to the pool.
+     */
+    private CompletableFuture<Page> loadPage(PageId pid, boolean async) {
+        PendingRead load = new PendingRead();
+        PendingRead running = inFlight.putIfAbsent(pid, load);
+        if (running != null)
+            return running.result;
+        // a read that finished after the caller missed has cached the page
+        Page cached = pages.get(pid);
+        if (cached != null) {
+            inFlight.remove(pid, load);
+            load.result.complete(cached);
+            return load.result;
+        }
+
+        DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        if (!async) {
+            Page page = null;
+            Throwable err = null;
+            boolean done = false;
             try {
-                Thread.sleep(50);
-            } catch (Exception e) {
-                e.printStackTrace();
+                page = file.readPage(pid);
+                done = true;
+            } catch (RuntimeException e) {
+                err = e;
+                done = true;
+            } finally {
+                if (!done) {
+                    // this thread is dying; whoever joined the read reads again
+                    inFlight.remove(pid, load);
+                    load.result.complete(null);
+                }
             }
-            long now = System.currentTimeMillis();
-            if (now - start > timeOut)
-                throw new TransactionAbortedException();
+            finishLoad(pid, load, page, err, false);
+            return load.result;
         }
 
-        if (pages.get(pid) != null)
-            return pages.get(pid);
+        CompletableFuture<Page> read;
+        try {
+            read = file.readPageAsync(pid);
+        } catch (RuntimeException e) {
+            read = new CompletableFuture<Page>();
+            read.completeExceptionally(e);
+        }
+        read.whenComplete((page, err) -> finishLoad(pid, load, page, err, true));
+        return load.result;
+    }
 
-        HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
-        HeapPage hp = (HeapPage) hf.readPage(pid);
+    /**
+     * Completes the read load of page pid with its outcome, adding the page
+     * to the pool unless it became stale.
+     *
+     * @param prefetch true if nobody asked for the page yet
+     */
+    private void finishLoad(PageId pid, PendingRead load, Page page, Throwable err,
+            boolean prefetch) {
+        Page current = null;
+        if (err == null) {
+            synchronized (this) {
+                if (!load.stale) {
+                    current = page;
+                    if (!pages.containsKey(pid) && makeRoom()) {
+                        pages.put(pid, page);
+                        policy.pageAdded(pid);
+                        if (prefetch)
+                            prefetched.add(pid);
+                    }
+                }
+            }
+        }
+        inFlight.remove(pid, load);
+        if (err != null)
+            load.result.completeExceptionally(err instanceof CompletionException ? err.getCause() : err);
+        else
+            load.result.complete(current);
+    }
 
-        // If the page number surpass the limit, we evict and put
-        if (pages.size() < numPages) {
-            pages.put(pid, hp);
-        } else {
+    /**
+     * Called when a transaction gets page pid from the pool. If the page was
+     * read ahead, this is its first real use: it is added to the eviction
+     * policy again, so the prefetch does not count as a reference. Under
+     * LRU-K, for example, a page read ahead and then scanned would otherwise
+     * look referenced twice, and outrank the pages read ahead of the scan.
+     *
+     * @return true if the page was read ahead
+     */
+    private boolean firstUse(PageId pid) {
+        if (!prefetched.remove(pid))
+            return false;
+        synchronized (this) {
+            if (pages.containsKey(pid)) {
+                policy.pageRemoved(pid);
+                policy.pageAdded(pid);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks a read of page pid in flight as stale, because the image of the
+     * page on disk has just changed, or may change.
+     */
+    private void diskImageChanged(PageId pid) {
+        PendingRead load = inFlight.get(pid);
+        if (load != null)
+            load.stale = true;
+    }
+
+    /**
+     * Evicts a page if the pool is full.
+     *
+     * @return true if the pool has room for another page
+     */
+    private synchronized boolean makeRoom() {
+        if (pages.size() < numPages)
+            return true;
+        try {
             evictPage();
-            pages.put(pid, hp);
+            return true;
+        } catch (DbException e) {
+            return false;
         }
+    }
 
-        return pages.get(pid);
+    /**
+     * Starts loading the specified page into the buffer pool in the
+     * background, without locking it, if it is not cached or being read
+     * yet. Used by {@link ReadAhead} to read pages before a scan asks for
+     * them; a getPage call for the page waits for the read to finish instead
+     * of reading the page a second time. Failures are ignored, since the
+     * page is read again when it is needed.
+     *
+     * @param pid the ID of the page to load
+     */
+    public void prefetchPage(PageId pid) {
+        if (pages.containsKey(pid) || inFlight.containsKey(pid))
+            return;
+        loadPage(pid, true);
     }
 
     /**
@@ -267,7 +387,7 @@ public class BufferPool {
      */
     public void releasePage(TransactionId tid, PageId pid) {
         // Done
-        lockManager.releaseLock(pid, tid);
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -277,13 +397,21 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid) throws IOException {
         // Done
-        lockManager.releaseTxLocks(tid);
+        lockManager.releaseAll(tid);
+    }
+
+    /**
+     * @return the lock manager of this pool, to configure how it deals with
+     *         deadlocks
+     */
+    public LockManager getLockManager() {
+        return lockManager;
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // Done
-        return lockManager.holdsLock(p, tid);
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -337,14 +465,37 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // Done
-        HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
 
         ArrayList<Page> pageList = file.insertTuple(tid, t);
 
         // after inserted, tuple will get a record Id, then we can mark page dirty
         for (Page page : pageList) {
             page.markDirty(true, tid);
-            pages.put(page.getId(), page);
+            putDirtyPage(page);
+        }
+    }
+
+    /**
+     * Add all the tuples of an iterator to the specified table on behalf of
+     * transaction tid, like repeated calls to {@link #insertTuple}. The file
+     * fills each page before moving on to the next, so each page is locked
+     * and marked dirty once for the whole batch.
+     *
+     * @param tid     the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples  the tuples to add
+     * @see DbFile#insertTuples
+     */
+    public void insertTuples(TransactionId tid, int tableId, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+
+        ArrayList<Page> pageList = file.insertTuples(tid, tuples);
+
+        for (Page page : pageList) {
+            page.markDirty(true, tid);
+            putDirtyPage(page);
         }
     }
 
@@ -364,11 +515,14 @@ public class BufferPool {
     public void deleteTuple(TransactionId tid, Tuple t) throws DbException, IOException, TransactionAbortedException {
         // Done
         RecordId rid = t.getRecordId();
-        PageId pid = rid.getPageId();
-        HeapPage page = (HeapPage) getPage(tid, pid, Permissions.READ_WRITE);
+        DbFile file = Database.getCatalog().getDatabaseFile(rid.getPageId().getTableId());
 
-        page.deleteTuple(t);
-        page.markDirty(true, tid);
+        ArrayList<Page> pageList = file.deleteTuple(tid, t);
+
+        for (Page page : pageList) {
+            page.markDirty(true, tid);
+            putDirtyPage(page);
+        }
     }
 
     /**
@@ -395,7 +549,10 @@ public class BufferPool {
      */
     public synchronized void discardPage(PageId pid) {
         // Done
-        pages.remove(pid);
+        diskImageChanged(pid);
+        prefetched.remove(pid);
+        if (pages.remove(pid) != null)
+            policy.pageRemoved(pid);
     }
 
     /**
@@ -409,6 +566,7 @@ public class BufferPool {
         TransactionId tid = page.isDirty();
         if (tid != null) {
             Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            diskImageChanged(pid);
             page.markDirty(false, tid);
         }
     }
@@ -435,20 +593,23 @@ public class BufferPool {
     }
 
     /**
-     * Discards a page from the buffer pool. Flushes the page to disk to ensure
-     * dirty pages are updated on disk.
+     * Discards a page from the buffer pool, chosen by the eviction policy.
+     * Dirty pages hold uncommitted changes and are never evicted.
      */
     private synchronized void evictPage() throws DbException {
         // Done
-        // Pick a dirty page to evict
-        for (ConcurrentHashMap.Entry<PageId, Page> entry : pages.entrySet()) {
-            if (entry.getValue().isDirty() == null) {
-                discardPage(entry.getKey());
+        while (true) {
+            PageId victim = policy.evict(pid -> {
+                Page page = pages.get(pid);
+                return page == null || page.isDirty() == null;
+            });
+            if (victim == null)
+                throw new DbException("no page can be used to or should to be evicted");
+            // the page on disk is up to date, so reads in flight stay valid
+            prefetched.remove(victim);
+            if (pages.remove(victim) != null)
                 return;
-            }
         }
-
-        throw new DbException("no page can be used to or should to be evicted");
     }
 
 }
@@ -0,0 +1,600 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BulkLoader converts a delimited text file into a HeapFile. It is the
+ * streaming, parallel replacement for the conversion loop of
+ * {@link HeapFileEncoder}, used by the SimpleDb "convert" command.
+ * <p>
+ * The input is read in chunks of about {@link #DEFAULT_CHUNK_SIZE} bytes,
+ * cut at line boundaries. Worker threads parse the chunks and encode each
+ * tuple straight into its fixed-width on-disk form, and the calling thread
+ * packs the encoded tuples of each chunk, in input order, into
+ * {@link PageLayout#ROW} page images and writes them to the output file in
+ * large sequential writes. Only a few chunks are in memory at any time, so
+ * files of any size can be loaded.
+ * <p>
+ * Each line of the input holds one tuple, with fields separated by the
+ * field separator. Blank lines are skipped and values are trimmed; strings
+ * longer than {@link Type#STRING_LEN} are truncated. A line with the wrong
+ * number of fields or a value that cannot be parsed fails the load with an
+ * IOException.
+ * <p>
+ * A clustered load (see {@link #setClusterKey}) sorts the whole table by
+ * its key in memory before writing it, and writes the {@link SparseIndex}
+ * of the file.
+ * <p>
+ * If statistics are enabled, the loader also records the number of tuples,
+ * the range of every int field and a sample of the values, from which
+ * {@link #getTableStats} builds table statistics without scanning the
+ * table again.
+ */
+public class BulkLoader {
+    /** Default number of input bytes parsed by one task. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+    /** Approximate number of tuples sampled for statistics. */
+    static final int TARGET_SAMPLE_SIZE = 1 << 16;
+    /** Number of pages collected before they are written out. */
+    private static final int WRITE_PAGES = 256;
+
+    private final Type[] types;
+    private final char separator;
+    private int[] fieldLens;
+    private int recordSize;
+    private int[] encoded = new int[0];
+    private StringDictionary dictionary;
+    private int clusterKey = -1;
+    private SparseIndex keyIndex;
+    private int keyOffset;
+    /** Chunks of a clustered load, written once the whole input is parsed. */
+    private ArrayList<Chunk> held;
+    private int pageSize = BufferPool.getPageSize();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean statistics = false;
+
+    // results of the last load
+    private long numTuples;
+    private int numPages;
+    private int sampleStride;
+    private int[] mins;
+    private int[] maxs;
+    private ArrayList<ArrayList<Field>> samples;
+
+    /**
+     * Creates a loader for tables with the specified field types.
+     *
+     * @param types the type of each field of the table
+     * @param separator the character separating fields on a line
+     */
+    public BulkLoader(Type[] types, char separator) {
+        this.types = types.clone();
+        this.separator = separator;
+    }
+
+    /**
+     * Stores the specified string columns dictionary encoded, as
+     * {@link HeapFile#setDictionaryEncoded} does. The dictionary is written
+     * next to the output file; the table must be opened with the same
+     * columns encoded.
+     */
+    public void setDictionaryEncoded(int... columns) {
+        this.encoded = columns.clone();
+    }
+
+    /**
+     * Sorts the table on the specified field and writes the key range of
+     * each page next to the output file, as {@link HeapFile#setClustered}
+     * expects; the table must be opened clustered on the same field.
+     *
+     * @param keyField the index of the key field, or -1 for an unsorted load
+     */
+    public void setClusterKey(int keyField) {
+        if (keyField >= types.length)
+            throw new IllegalArgumentException("no field " + keyField);
+        this.clusterKey = keyField;
+    }
+
+    /**
+     * Sets the size of the pages written; defaults to the page size of the
+     * BufferPool.
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets the number of threads parsing the input; defaults to the number
+     * of processors.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the number of input bytes parsed by one task.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Sets whether statistics are gathered during the load (see
+     * {@link #getTableStats}).
+     */
+    public void setStatistics(boolean statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the number of tuples written by the last load
+     */
+    public long getNumTuples() {
+        return numTuples;
+    }
+
+    /**
+     * @return the number of pages written by the last load
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /** The parsed form of one chunk of input. */
+    private class Chunk {
+        /** Encoded tuples, recordSize bytes each. */
+        byte[] records = new byte[0];
+        int count = 0;
+        int[] mins = new int[types.length];
+        int[] maxs = new int[types.length];
+        /** Indexes of the sampled tuples. */
+        ArrayList<Integer> sampled = new ArrayList<Integer>();
+
+        Chunk() {
+            Arrays.fill(mins, Integer.MAX_VALUE);
+            Arrays.fill(maxs, Integer.MIN_VALUE);
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static String text(byte[] buf, int start, int end) {
+        try {
+            return new String(buf, start, end - start, "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int parseInt(byte[] buf, int start, int end) throws IOException {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+'))
+            negative = buf[i++] == '-';
+        if (i == end)
+            throw new IOException("malformed int value '" + text(buf, start, end) + "'");
+        long v = 0;
+        for (; i < end; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9)
+                throw new IOException("malformed int value '" + text(buf, start, end) + "'");
+            v = v * 10 + d;
+            if (v > (long) Integer.MAX_VALUE + 1)
+                throw new IOException("int value out of range '" + text(buf, start, end) + "'");
+        }
+        v = negative ? -v : v;
+        if (v > Integer.MAX_VALUE)
+            throw new IOException("int value out of range '" + text(buf, start, end) + "'");
+        return (int) v;
+    }
+
+    /**
+     * Encodes the trimmed value buf[start, end) of field j into the record
+     * at offset off of chunk.
+     */
+    private void encodeField(Chunk chunk, ByteBuffer out, int off, int j, byte[] buf, int start, int end)
+            throws IOException {
+        if (dictionary != null && dictionary.isEncoded(j)) {
+            out.putInt(off, dictionary.encode(j, text(buf, start, end)));
+            return;
+        }
+        switch (types[j]) {
+        case INT_TYPE: {
+            int v = parseInt(buf, start, end);
+            out.putInt(off, v);
+            chunk.mins[j] = Math.min(chunk.mins[j], v);
+            chunk.maxs[j] = Math.max(chunk.maxs[j], v);
+            break;
+        }
+        case STRING_TYPE: {
+            int len = Math.min(end - start, Type.STRING_LEN);
+            out.putInt(off, len);
+            System.arraycopy(buf, start, chunk.records, off + 4, len);
+            break;
+        }
+        default:
+            try {
+                types[j].fromString(text(buf, start, end)).serialize(out, off);
+            } catch (ParseException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Parses the complete lines in buf[0, len) into encoded tuples.
+     */
+    private Chunk parse(byte[] buf, int len, int stride) throws IOException {
+        Chunk chunk = new Chunk();
+        chunk.records = new byte[Math.max(recordSize, len / 2 / Math.max(1, recordSize) * recordSize)];
+        ByteBuffer out = ByteBuffer.wrap(chunk.records);
+
+        int pos = 0;
+        while (pos < len) {
+            int lineEnd = pos;
+            while (lineEnd < len && buf[lineEnd] != '\n')
+                lineEnd++;
+            int next = lineEnd + 1;
+
+            int start = pos;
+            while (start < lineEnd && isBlank(buf[start]))
+                start++;
+            if (start == lineEnd) {
+                pos = next;
+                continue;
+            }
+
+            if ((chunk.count + 1) * recordSize > chunk.records.length) {
+                chunk.records = Arrays.copyOf(chunk.records, chunk.records.length * 2);
+                out = ByteBuffer.wrap(chunk.records);
+            }
+            int off = chunk.count * recordSize;
+            int fieldStart = pos;
+            for (int j = 0; j < types.length; j++) {
+                int fieldEnd = fieldStart;
+                while (fieldEnd < lineEnd && buf[fieldEnd] != separator)
+                    fieldEnd++;
+                if (fieldEnd == lineEnd && j < types.length - 1)
+                    throw new IOException("expected " + types.length + " fields: " + text(buf, pos, lineEnd));
+                int s = fieldStart, e = fieldEnd;
+                while (s < e && isBlank(buf[s]))
+                    s++;
+                while (e > s && isBlank(buf[e - 1]))
+                    e--;
+                encodeField(chunk, out, off, j, buf, s, e);
+                off += fieldLens[j];
+                fieldStart = fieldEnd + 1;
+            }
+            if (fieldStart <= lineEnd)
+                throw new IOException("expected " + types.length + " fields: " + text(buf, pos, lineEnd));
+
+            if (stride > 0 && chunk.count % stride == 0)
+                chunk.sampled.add(chunk.count);
+            chunk.count++;
+            pos = next;
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads from in until buf is full or the input ends.
+     *
+     * @return the number of bytes read
+     */
+    private static int readFully(InputStream in, byte[] buf, int off) throws IOException {
+        int n = off;
+        while (n < buf.length) {
+            int r = in.read(buf, n, buf.length - n);
+            if (r < 0)
+                break;
+            n += r;
+        }
+        return n - off;
+    }
+
+    /** Packs encoded tuples into pages and writes them out in order. */
+    private class PageWriter {
+        final FileChannel out;
+        final int slots = (pageSize * 8) / (recordSize * 8 + 1);
+        final int headerSize = (slots + 7) / 8;
+        final byte[] page = new byte[pageSize];
+        final ByteBuffer writeBuf = ByteBuffer.allocateDirect(pageSize * WRITE_PAGES);
+        int used = 0;
+        /** The key range of the page being filled, if clustered. */
+        Field min, max;
+
+        PageWriter(FileChannel out) {
+            this.out = out;
+        }
+
+        void add(Chunk chunk) throws IOException {
+            int done = 0;
+            while (done < chunk.count) {
+                int n = Math.min(chunk.count - done, slots - used);
+                System.arraycopy(chunk.records, done * recordSize, page,
+                        headerSize + used * recordSize, n * recordSize);
+                for (int i = used; i < used + n; i++)
+                    page[i / 8] |= (byte) (1 << (i % 8));
+                if (keyIndex != null) {
+                    for (int i = done; i < done + n; i++) {
+                        Field key = key(chunk, i);
+                        if (min == null || SparseIndex.compare(key, min) < 0)
+                            min = key;
+                        if (max == null || SparseIndex.compare(key, max) > 0)
+                            max = key;
+                    }
+                }
+                used += n;
+                done += n;
+                if (used == slots)
+                    emitPage();
+            }
+        }
+
+        void emitPage() throws IOException {
+            if (keyIndex != null) {
+                keyIndex.setRange(numPages, min, max);
+                min = max = null;
+            }
+            writeBuf.put(page);
+            Arrays.fill(page, (byte) 0);
+            used = 0;
+            numPages++;
+            if (!writeBuf.hasRemaining())
+                flush();
+        }
+
+        void finish() throws IOException {
+            // an empty table still gets one empty page
+            if (used > 0 || numPages == 0)
+                emitPage();
+            flush();
+        }
+
+        void flush() throws IOException {
+            writeBuf.flip();
+            while (writeBuf.hasRemaining())
+                out.write(writeBuf);
+            writeBuf.clear();
+        }
+    }
+
+    /**
+     * @return the key of the ith tuple of chunk
+     */
+    private Field key(Chunk chunk, int i) {
+        int off = i * recordSize + keyOffset;
+        ByteBuffer records = ByteBuffer.wrap(chunk.records);
+        if (dictionary != null && dictionary.isEncoded(clusterKey))
+            return dictionary.decode(clusterKey, records.getInt(off));
+        return types[clusterKey].parse(records, off);
+    }
+
+    /**
+     * Merges the held chunks into one, sorted by key.
+     */
+    private Chunk sortHeld() {
+        int count = 0;
+        for (Chunk chunk : held)
+            count += chunk.count;
+        Field[] keys = new Field[count];
+        Integer[] order = new Integer[count];
+        byte[] all = new byte[count * recordSize];
+        int n = 0;
+        for (Chunk chunk : held) {
+            System.arraycopy(chunk.records, 0, all, n * recordSize, chunk.count * recordSize);
+            for (int i = 0; i < chunk.count; i++, n++) {
+                keys[n] = key(chunk, i);
+                order[n] = n;
+            }
+        }
+        held.clear();
+        // a stable sort keeps tuples with equal keys in input order
+        Arrays.sort(order, (a, b) -> SparseIndex.compare(keys[a], keys[b]));
+
+        Chunk sorted = new Chunk();
+        sorted.records = new byte[all.length];
+        sorted.count = count;
+        for (int i = 0; i < count; i++)
+            System.arraycopy(all, order[i] * recordSize, sorted.records, i * recordSize, recordSize);
+        return sorted;
+    }
+
+    private void collect(Chunk chunk, PageWriter writer) throws IOException {
+        if (held != null)
+            held.add(chunk);
+        else
+            writer.add(chunk);
+        numTuples += chunk.count;
+        if (!statistics)
+            return;
+
+        for (int j = 0; j < types.length; j++) {
+            mins[j] = Math.min(mins[j], chunk.mins[j]);
+            maxs[j] = Math.max(maxs[j], chunk.maxs[j]);
+        }
+        ByteBuffer records = ByteBuffer.wrap(chunk.records);
+        for (int i : chunk.sampled) {
+            int off = i * recordSize;
+            for (int j = 0; j < types.length; j++) {
+                if (dictionary != null && dictionary.isEncoded(j))
+                    samples.get(j).add(dictionary.decode(j, records.getInt(off)));
+                else
+                    samples.get(j).add(types[j].parse(records, off));
+                off += fieldLens[j];
+            }
+        }
+    }
+
+    private static Chunk get(Future<Chunk> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("bulk load interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Loads the text file in into a new heap file out, replacing any
+     * existing content of out.
+     *
+     * @param in the delimited text file to read
+     * @param out the heap file to write
+     * @throws IOException if a file cannot be read or written, or the input
+     *             is malformed
+     */
+    public void load(File in, File out) throws IOException {
+        // side files of a previous file would not match the new pages
+        HeapFile.deleteSideFiles(out);
+        dictionary = null;
+        if (encoded.length > 0) {
+            File dictFile = new File(out.getPath() + ".dict");
+            dictionary = new StringDictionary(dictFile, new TupleDesc(types), encoded);
+        }
+        fieldLens = new int[types.length];
+        recordSize = 0;
+        for (int j = 0; j < types.length; j++) {
+            fieldLens[j] = dictionary != null && dictionary.isEncoded(j) ? 4 : types[j].getLen();
+            recordSize += fieldLens[j];
+        }
+        if (recordSize * 8 + 1 > pageSize * 8)
+            throw new IOException("tuples of " + recordSize + " bytes do not fit on a page");
+        keyIndex = null;
+        held = null;
+        if (clusterKey >= 0) {
+            File keyFile = new File(out.getPath() + ".key");
+            keyIndex = new SparseIndex(keyFile, types[clusterKey]);
+            keyOffset = 0;
+            for (int j = 0; j < clusterKey; j++)
+                keyOffset += fieldLens[j];
+            held = new ArrayList<Chunk>();
+        }
+        numTuples = 0;
+        numPages = 0;
+        sampleStride = 0;
+        mins = new int[types.length];
+        maxs = new int[types.length];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        Arrays.fill(maxs, Integer.MIN_VALUE);
+        samples = new ArrayList<ArrayList<Field>>();
+        for (int j = 0; j < types.length; j++)
+            samples.add(new ArrayList<Field>());
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+        try (InputStream is = new FileInputStream(in);
+                FileChannel fc = FileChannel.open(out.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            PageWriter writer = new PageWriter(fc);
+            long inputSize = in.length();
+            byte[] carry = new byte[0];
+            boolean eof = false;
+            while (!eof) {
+                byte[] buf = Arrays.copyOf(carry, carry.length + chunkSize);
+                int n = carry.length + readFully(is, buf, carry.length);
+                eof = n < buf.length;
+
+                // hand out complete lines only; a line longer than a chunk
+                // is carried over until its end has been read
+                int end = n;
+                if (!eof) {
+                    while (end > 0 && buf[end - 1] != '\n')
+                        end--;
+                }
+                carry = Arrays.copyOfRange(buf, end, n);
+                if (end == 0)
+                    continue;
+
+                if (statistics && sampleStride == 0)
+                    sampleStride = computeStride(buf, end, inputSize);
+                final byte[] chunkBuf = buf;
+                final int chunkLen = end;
+                final int stride = statistics ? sampleStride : 0;
+                pending.add(workers.submit(() -> parse(chunkBuf, chunkLen, stride)));
+                while (pending.size() >= 2 * threads)
+                    collect(get(pending.poll()), writer);
+            }
+            while (!pending.isEmpty())
+                collect(get(pending.poll()), writer);
+            if (held != null)
+                writer.add(sortHeld());
+            writer.finish();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Picks the sampling stride from the line length in the first chunk, so
+     * that about {@link #TARGET_SAMPLE_SIZE} tuples of the input are sampled.
+     */
+    private static int computeStride(byte[] buf, int len, long inputSize) {
+        int lines = 0;
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == '\n')
+                lines++;
+        }
+        long estimated = inputSize / Math.max(1, len / Math.max(1, lines));
+        return (int) Math.max(1, estimated / TARGET_SAMPLE_SIZE);
+    }
+
+    /**
+     * Returns statistics for the table written by the last load, which must
+     * have been run with statistics enabled. The tuple count and the value
+     * ranges are exact; the histograms are built from a sample of the
+     * tuples.
+     *
+     * @param ioCostPerPage the cost per page of IO (see {@link TableStats})
+     * @throws IllegalStateException if statistics were not gathered
+     */
+    public TableStats getTableStats(int ioCostPerPage) {
+        if (!statistics || samples == null)
+            throw new IllegalStateException("no statistics were gathered");
+
+        HashMap<Integer, IntHistogram> intHistograms = new HashMap<Integer, IntHistogram>();
+        HashMap<Integer, StringHistogram> stringHistograms = new HashMap<Integer, StringHistogram>();
+        HashMap<Integer, DoubleHistogram> doubleHistograms = new HashMap<Integer, DoubleHistogram>();
+        for (int j = 0; j < types.length; j++) {
+            if (types[j] == Type.INT_TYPE) {
+                IntHistogram h = new IntHistogram(TableStats.NUM_HIST_BINS, mins[j], maxs[j]);
+                for (Field f : samples.get(j))
+                    h.addValue(((IntField) f).getValue());
+                intHistograms.put(j, h);
+            } else if (types[j] == Type.STRING_TYPE) {
+                StringHistogram h = new StringHistogram(TableStats.NUM_HIST_BINS);
+                for (Field f : samples.get(j))
+                    h.addValue(((StringField) f).getValue());
+                stringHistograms.put(j, h);
+            } else if (!samples.get(j).isEmpty()) {
+                // only the sampled range of these fields is known
+                double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (Field f : samples.get(j)) {
+                    min = Math.min(min, DoubleHistogram.valueOf(f));
+                    max = Math.max(max, DoubleHistogram.valueOf(f));
+                }
+                DoubleHistogram h = new DoubleHistogram(TableStats.NUM_HIST_BINS, min, max);
+                for (Field f : samples.get(j))
+                    h.addValue(DoubleHistogram.valueOf(f));
+                doubleHistograms.put(j, h);
+            }
+        }
+        return new TableStats(new TupleDesc(types), numPages, ioCostPerPage, (int) numTuples,
+                intHistograms, stringHistograms, doubleHistograms);
+    }
+}
@@ -0,0 +1,195 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A Tuple stored as its fixed-width serialized form: the fields are laid
+ * out one after another in a byte array, exactly as on a
+ * {@link PageLayout#ROW} page (see {@link TupleDesc#getFieldOffset}).
+ * <p>
+ * The typed accessors ({@link #getInt}, {@link #getString}, ...) read the
+ * bytes directly. Field objects are only created when {@link #getField} is
+ * called, and are then kept for later calls. Two BytesTuples are joined into
+ * one with a single array copy per side (see {@link #concat}).
+ * <p>
+ * A BytesTuple may be a view of a slice of a shared buffer; it then copies
+ * the slice before the first {@link #setField}, so the buffer is never
+ * written to.
+ */
+public class BytesTuple extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private byte[] data;
+    private int offset;
+    private boolean shared;
+    private transient Field[] fields;
+
+    /**
+     * Create a tuple of the specified schema with every field zeroed.
+     */
+    public BytesTuple(TupleDesc td) {
+        this(td, new byte[td.getSize()], 0, false);
+    }
+
+    /**
+     * Create a tuple whose fields are stored in data, starting at offset.
+     *
+     * @param td the schema of the tuple
+     * @param data the buffer holding the tuple
+     * @param offset the offset of the first field in data
+     * @param shared true if data may be used by others, in which case the
+     *            tuple copies it before changing a field
+     */
+    public BytesTuple(TupleDesc td, byte[] data, int offset, boolean shared) {
+        super(td, true);
+        if (offset < 0 || offset + td.getSize() > data.length)
+            throw new IllegalArgumentException("tuple of " + td.getSize() + " bytes at offset "
+                    + offset + " does not fit in " + data.length + " bytes");
+        this.data = data;
+        this.offset = offset;
+        this.shared = shared;
+    }
+
+    /**
+     * Create a tuple holding a copy of the fields of t.
+     */
+    public static BytesTuple copyOf(Tuple t) {
+        if (t instanceof BytesTuple) {
+            BytesTuple b = (BytesTuple) t;
+            byte[] copy = new byte[b.getTupleDesc().getSize()];
+            System.arraycopy(b.data, b.offset, copy, 0, copy.length);
+            BytesTuple result = new BytesTuple(b.getTupleDesc(), copy, 0, false);
+            result.setRecordId(b.getRecordId());
+            return result;
+        }
+        BytesTuple result = new BytesTuple(t.getTupleDesc());
+        for (int i = 0; i < t.getTupleDesc().numFields(); i++)
+            result.setField(i, t.getField(i));
+        result.setRecordId(t.getRecordId());
+        return result;
+    }
+
+    /**
+     * Create the tuple made of the fields of t1 followed by the fields of t2,
+     * as produced by a join.
+     *
+     * @param td the schema of the result; the merge of the schemas of t1 and
+     *            t2 (see {@link TupleDesc#merge})
+     */
+    public static BytesTuple concat(TupleDesc td, BytesTuple t1, BytesTuple t2) {
+        int len1 = t1.getTupleDesc().getSize();
+        int len2 = t2.getTupleDesc().getSize();
+        byte[] bytes = new byte[len1 + len2];
+        System.arraycopy(t1.data, t1.offset, bytes, 0, len1);
+        System.arraycopy(t2.data, t2.offset, bytes, len1, len2);
+        return new BytesTuple(td, bytes, 0, false);
+    }
+
+    /**
+     * Write the serialized fields of this tuple into buf at offset.
+     */
+    public void copyTo(byte[] buf, int off) {
+        System.arraycopy(data, offset, buf, off, getTupleDesc().getSize());
+    }
+
+    private int pos(int i) {
+        return offset + getTupleDesc().getFieldOffset(i);
+    }
+
+    private static int readInt(byte[] b, int p) {
+        return ((b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16)
+                | ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+    }
+
+    private static long readLong(byte[] b, int p) {
+        return ((long) readInt(b, p) << 32) | (readInt(b, p + 4) & 0xffffffffL);
+    }
+
+    @Override
+    public int getInt(int i) {
+        return readInt(data, pos(i));
+    }
+
+    @Override
+    public long getLong(int i) {
+        return readLong(data, pos(i));
+    }
+
+    @Override
+    public double getDouble(int i) {
+        return Double.longBitsToDouble(readLong(data, pos(i)));
+    }
+
+    @Override
+    public String getString(int i) {
+        int p = pos(i);
+        int len = readInt(data, p);
+        if (len < 0 || len > Type.STRING_LEN)
+            throw new IllegalArgumentException("bad string length " + len);
+        // decoded as Type.STRING_TYPE.parse does
+        return new String(data, p + 4, len);
+    }
+
+    @Override
+    public Field getField(int i) {
+        if (i >= getTupleDesc().numFields())
+            return null;
+        if (fields == null)
+            fields = new Field[getTupleDesc().numFields()];
+        Field f = fields[i];
+        if (f == null) {
+            switch (getTupleDesc().getFieldType(i)) {
+            case INT_TYPE:
+                f = new IntField(getInt(i));
+                break;
+            case STRING_TYPE:
+                f = new StringField(getString(i), Type.STRING_LEN);
+                break;
+            default:
+                f = getTupleDesc().getFieldType(i).parse(ByteBuffer.wrap(data), pos(i));
+                break;
+            }
+            fields[i] = f;
+        }
+        return f;
+    }
+
+    @Override
+    public void setField(int i, Field f) {
+        if (i >= getTupleDesc().numFields())
+            return;
+        if (shared) {
+            byte[] copy = new byte[getTupleDesc().getSize()];
+            System.arraycopy(data, offset, copy, 0, copy.length);
+            data = copy;
+            offset = 0;
+            shared = false;
+        }
+        f.serialize(ByteBuffer.wrap(data), pos(i));
+        if (fields == null)
+            fields = new Field[getTupleDesc().numFields()];
+        fields[i] = f;
+    }
+
+    @Override
+    public Iterator<Field> fields() {
+        ArrayList<Field> list = new ArrayList<Field>(getTupleDesc().numFields());
+        for (int i = 0; i < getTupleDesc().numFields(); i++)
+            list.add(getField(i));
+        return list.iterator();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < getTupleDesc().numFields(); i++) {
+            if (i > 0)
+                sb.append('\t');
+            sb.append(getField(i));
+        }
+        return sb.toString();
+    }
+}
@@ -158,6 +158,16 @@ public class Catalog {
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the form <code>name (field type [pk] [dict] [clustered], ...) [mmap|compressed] [slotted|pax]</code>;
+     * string fields marked <code>dict</code> are dictionary encoded (see
+     * {@link HeapFile#setDictionaryEncoded}), and the table is kept
+     * ordered on the field marked <code>clustered</code>, if any (see
+     * {@link HeapFile#setClustered});
+     * the optional trailing <code>mmap</code> makes the table read its pages
+     * through memory mappings (see {@link HeapFile#HeapFile(File, TupleDesc, boolean)}),
+     * <code>compressed</code> stores it in a {@link CompressedHeapFile},
+     * and <code>slotted</code> or <code>pax</code> store the table in
+     * {@link PageLayout#SLOTTED} or {@link PageLayout#PAX} pages.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -171,26 +181,32 @@ public class Catalog {
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                //optional storage options follow the field list, e.g. "name (f int) mmap"
+                String options = line.substring(line.indexOf(")") + 1).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> dictColumns = new ArrayList<Integer>();
+                int clusterKey = -1;
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
-                    if (els2[1].trim().toLowerCase().equals("int"))
-                        types.add(Type.INT_TYPE);
-                    else if (els2[1].trim().toLowerCase().equals("string"))
-                        types.add(Type.STRING_TYPE);
-                    else {
+                    Type type = Type.fromName(els2[1]);
+                    if (type == null) {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    types.add(type);
+                    for (int k = 2; k < els2.length; k++) {
+                        if (els2[k].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[k].trim().equals("dict") && type == Type.STRING_TYPE)
+                            dictColumns.add(names.size() - 1);
+                        else if (els2[k].trim().equals("clustered") && clusterKey < 0)
+                            clusterKey = names.size() - 1;
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[k]);
                             System.exit(0);
                         }
                     }
@@ -198,7 +214,44 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                boolean memoryMapped = false;
+                boolean compressed = false;
+                PageLayout layout = PageLayout.ROW;
+                for (String opt : options.split("\\s+")) {
+                    if (opt.isEmpty())
+                        continue;
+                    if (opt.toLowerCase().equals("mmap"))
+                        memoryMapped = true;
+                    else if (opt.toLowerCase().equals("compressed"))
+                        compressed = true;
+                    else if (opt.toLowerCase().equals("slotted"))
+                        layout = PageLayout.SLOTTED;
+                    else if (opt.toLowerCase().equals("pax"))
+                        layout = PageLayout.PAX;
+                    else {
+                        System.out.println("Unknown table option " + opt);
+                        System.exit(0);
+                    }
+                }
+                if (compressed && memoryMapped) {
+                    System.out.println("Compressed tables cannot be memory mapped: " + name);
+                    System.exit(0);
+                }
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf = compressed ? new CompressedHeapFile(tabFile, t, layout)
+                        : new HeapFile(tabFile, t, layout, memoryMapped);
+                if (!dictColumns.isEmpty()) {
+                    if (layout == PageLayout.SLOTTED) {
+                        System.out.println("Slotted tables cannot be dictionary encoded: " + name);
+                        System.exit(0);
+                    }
+                    int[] encoded = new int[dictColumns.size()];
+                    for (int k = 0; k < encoded.length; k++)
+                        encoded[k] = dictColumns.get(k);
+                    tabHf.setDictionaryEncoded(encoded);
+                }
+                if (clusterKey >= 0)
+                    tabHf.setClustered(clusterKey);
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
@@ -0,0 +1,74 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * ClockPolicy approximates LRU with one reference bit per page. The pages
+ * sit in a ring that a clock hand sweeps when a victim is needed: a page
+ * whose bit is set gets a second chance and has its bit cleared, and the
+ * first page found with a clear bit is evicted. A hit only sets a bit, so
+ * it is cheaper than under {@link LruPolicy}, and each eviction clears at
+ * most one bit per page.
+ *
+ * @Threadsafe
+ */
+public class ClockPolicy implements EvictionPolicy {
+    /** The ring of pages; slots of removed pages hold null until reused. */
+    private final ArrayList<PageId> ring = new ArrayList<PageId>();
+    private final HashMap<PageId, Integer> slots = new HashMap<PageId, Integer>();
+    private final BitSet referenced = new BitSet();
+    private final ArrayList<Integer> freeSlots = new ArrayList<Integer>();
+    private int hand = 0;
+
+    public synchronized void pageAdded(PageId pid) {
+        Integer slot = slots.get(pid);
+        if (slot == null) {
+            if (freeSlots.isEmpty()) {
+                slot = ring.size();
+                ring.add(pid);
+            } else {
+                slot = freeSlots.remove(freeSlots.size() - 1);
+                ring.set(slot, pid);
+            }
+            slots.put(pid, slot);
+        }
+        referenced.set(slot);
+    }
+
+    public synchronized void pageHit(PageId pid) {
+        Integer slot = slots.get(pid);
+        if (slot != null)
+            referenced.set(slot);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        Integer slot = slots.remove(pid);
+        if (slot != null) {
+            ring.set(slot, null);
+            referenced.clear(slot);
+            freeSlots.add(slot);
+        }
+    }
+
+    public synchronized PageId evict(Evictable evictable) {
+        // the first turn clears the bits, the second finds a page unless
+        // none may be evicted
+        for (int steps = 2 * ring.size(); steps > 0; steps--) {
+            if (hand >= ring.size())
+                hand = 0;
+            int slot = hand++;
+            PageId pid = ring.get(slot);
+            if (pid == null)
+                continue;
+            if (referenced.get(slot)) {
+                referenced.clear(slot);
+            } else if (evictable.test(pid)) {
+                pageRemoved(pid);
+                return pid;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,240 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are stored compressed with
+ * {@link PageCompressor}. It is meant for large, rarely updated tables
+ * where scans are limited by disk bandwidth: pages are decompressed in
+ * readPage, so the BufferPool and the rest of the system only ever see
+ * ordinary pages.
+ * <p>
+ * Compressed pages have different sizes, so the data file is a sequence of
+ * extents and a page index, stored next to it in a file with the suffix
+ * ".idx", maps each page number to the offset and length of its extent.
+ * Each index entry is a long offset followed by an int length; an extent
+ * as long as a whole page holds the page uncompressed. A rewritten page
+ * replaces its extent in place when it still fits and is appended to the
+ * data file otherwise, leaving the old extent unused.
+ *
+ * @see HeapFile
+ * @see PageCompressor
+ */
+public class CompressedHeapFile extends HeapFile {
+    /** Bytes used by each entry of the page index. */
+    static final int INDEX_ENTRY_SIZE = 12;
+
+    private final File indexFile;
+    private FileChannel indexChannel;
+
+    private long[] offsets;
+    private int[] lengths;
+    private int count = -1;
+    private long dataEnd;
+
+    /**
+     * Constructs a compressed heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the compressed pages of this heap file.
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        this(f, td, PageLayout.ROW);
+    }
+
+    /**
+     * Constructs a compressed heap file backed by the specified file whose
+     * pages are stored in the specified format before compression.
+     *
+     * @param f
+     *            the file that stores the compressed pages of this heap file.
+     * @param layout
+     *            the format of the pages of this file.
+     */
+    public CompressedHeapFile(File f, TupleDesc td, PageLayout layout) {
+        super(f, td, layout, false);
+        this.indexFile = new File(f.getPath() + ".idx");
+    }
+
+    /**
+     * Writes a compressed copy of every page of source to dest, replacing
+     * any existing content of dest, and returns the compressed file.
+     *
+     * @param source the heap file to compress
+     * @param dest the file that stores the compressed pages
+     */
+    public static CompressedHeapFile compress(HeapFile source, File dest) throws IOException {
+        CompressedHeapFile target = new CompressedHeapFile(dest, source.getTupleDesc(), source.getLayout());
+        if ((dest.exists() && !dest.delete()) || (target.indexFile.exists() && !target.indexFile.delete()))
+            throw new IOException("cannot replace " + dest);
+        // side files of an old file at dest would not match the new pages
+        HeapFile.deleteSideFiles(dest);
+        for (int pgNo = 0; pgNo < source.numPages(); pgNo++)
+            target.writeExtent(pgNo, source.readPageData(pgNo));
+        return target;
+    }
+
+    /**
+     * @return the file holding the page index
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    private FileChannel getIndexChannel() throws IOException {
+        if (indexChannel == null || !indexChannel.isOpen()) {
+            indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return indexChannel;
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            if (fc.read(buf, offset + buf.position()) < 0)
+                throw new IllegalArgumentException("Unable to read "
+                        + buf.limit() + " bytes from CompressedHeapFile");
+        }
+    }
+
+    /** Reads the page index on first use. */
+    private synchronized void loadIndex() throws IOException {
+        if (count >= 0)
+            return;
+        count = 0;
+        offsets = new long[16];
+        lengths = new int[16];
+        dataEnd = 0;
+        if (!indexFile.exists())
+            return;
+
+        int n = (int) (indexFile.length() / INDEX_ENTRY_SIZE);
+        ByteBuffer buf = ByteBuffer.allocate(n * INDEX_ENTRY_SIZE);
+        readFully(getIndexChannel(), buf, 0);
+        buf.flip();
+        for (int i = 0; i < n; i++)
+            setEntry(i, buf.getLong(), buf.getInt());
+    }
+
+    private void setEntry(int pgNo, long offset, int length) {
+        if (pgNo >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(pgNo + 1, offsets.length * 2));
+            lengths = Arrays.copyOf(lengths, offsets.length);
+        }
+        offsets[pgNo] = offset;
+        lengths[pgNo] = length;
+        count = Math.max(count, pgNo + 1);
+        dataEnd = Math.max(dataEnd, offset + length);
+    }
+
+    /**
+     * Returns the number of pages in this file, as recorded in the page
+     * index.
+     */
+    @Override
+    synchronized int countPages() {
+        try {
+            loadIndex();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ratio of the uncompressed size of the pages of this file
+     * to the size of their extents, or 1 for an empty file.
+     */
+    public synchronized double getCompressionRatio() {
+        long compressed = 0;
+        for (int i = 0; i < countPages(); i++)
+            compressed += lengths[i];
+        if (compressed == 0)
+            return 1.0;
+        return (double) count * BufferPool.getPageSize() / compressed;
+    }
+
+    @Override
+    byte[] readPageData(int pgNo) throws IOException {
+        long offset;
+        int length;
+        synchronized (this) {
+            loadIndex();
+            offset = offsets[pgNo];
+            length = lengths[pgNo];
+        }
+
+        int pageSize = BufferPool.getPageSize();
+        byte[] extent = new byte[length];
+        readFully(getChannel(), ByteBuffer.wrap(extent), offset);
+        if (length == pageSize)
+            return extent;
+
+        byte[] data = new byte[pageSize];
+        PageCompressor.decompress(extent, 0, length, data);
+        return data;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePage(Page page) throws IOException {
+        createSideFiles();
+        writeExtent(page.getId().getPageNumber(), page.getPageData());
+        pageWritten(page);
+    }
+
+    /**
+     * Drops the index entries of the pages from numPages on, and the data
+     * past the last extent still in use.
+     */
+    @Override
+    synchronized void truncateFile(int numPages) throws IOException {
+        loadIndex();
+        if (numPages >= count)
+            return;
+        count = numPages;
+        dataEnd = 0;
+        for (int i = 0; i < count; i++)
+            dataEnd = Math.max(dataEnd, offsets[i] + lengths[i]);
+        getIndexChannel().truncate((long) count * INDEX_ENTRY_SIZE);
+        getChannel().truncate(dataEnd);
+    }
+
+    /**
+     * Compresses data and stores it as page pgNo, which must be an existing
+     * page or the page just past the end of the file.
+     */
+    private void writeExtent(int pgNo, byte[] data) throws IOException {
+        byte[] extent = new byte[PageCompressor.maxCompressedLength(data.length)];
+        int length = PageCompressor.compress(data, extent);
+        if (length >= data.length) {
+            // incompressible pages are stored as they are
+            extent = data;
+            length = data.length;
+        }
+
+        synchronized (this) {
+            loadIndex();
+            if (pgNo < 0 || pgNo > count)
+                throw new IllegalArgumentException("page " + pgNo + " is past the end of the file");
+            long offset = pgNo < count && length <= lengths[pgNo] ? offsets[pgNo] : dataEnd;
+
+            ByteBuffer buf = ByteBuffer.wrap(extent, 0, length);
+            FileChannel fc = getChannel();
+            while (buf.hasRemaining())
+                fc.write(buf, offset + buf.position());
+
+            // write the index entry once the extent it points at is on disk
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putLong(offset).putInt(length).flip();
+            FileChannel ic = getIndexChannel();
+            while (entry.hasRemaining())
+                ic.write(entry, (long) pgNo * INDEX_ENTRY_SIZE + entry.position());
+            setEntry(pgNo, offset, length);
+        }
+    }
+}
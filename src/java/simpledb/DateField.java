@@ -0,0 +1,107 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Instance of Field that stores a date or timestamp, as the number of
+ * milliseconds since 1970-01-01 00:00:00 UTC.
+ * <p>
+ * The text form is <code>yyyy-MM-dd</code> for a date, or
+ * <code>yyyy-MM-dd HH:mm:ss[.SSS]</code> for a timestamp, both in UTC.
+ */
+public class DateField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSS]");
+    private static final DateTimeFormatter SECONDS =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter MILLIS =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final long millis;
+
+    /**
+     * @return the milliseconds since the epoch
+     */
+    public long getValue() {
+        return millis;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param millis The milliseconds since 1970-01-01 00:00:00 UTC.
+     */
+    public DateField(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Parses a date or timestamp in the text form described above.
+     *
+     * @throws IllegalArgumentException if s is not a valid date or timestamp
+     */
+    public static DateField valueOf(String s) {
+        s = s.trim();
+        try {
+            if (s.length() <= 10)
+                return new DateField(LocalDate.parse(s).atStartOfDay()
+                        .toInstant(ZoneOffset.UTC).toEpochMilli());
+            return new DateField(LocalDateTime.parse(s.replace('T', ' '), TIMESTAMP)
+                    .toInstant(ZoneOffset.UTC).toEpochMilli());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("bad date '" + s + "'");
+        }
+    }
+
+    public String toString() {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        if (t.toLocalTime().toNanoOfDay() == 0)
+            return t.toLocalDate().toString();
+        return t.format(t.getNano() == 0 ? SECONDS : MILLIS);
+    }
+
+    public int hashCode() {
+        return Long.hashCode(millis);
+    }
+
+    public boolean equals(Object field) {
+        return field instanceof DateField && ((DateField) field).millis == millis;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(millis);
+    }
+
+    public void serialize(ByteBuffer buf, int offset) {
+        buf.putLong(offset, millis);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a DateField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return LongField.compare(op, millis, ((DateField) val).millis);
+    }
+
+    /**
+     * Return the Type of this field.
+     * @return Type.DATE_TYPE
+     */
+    public Type getType() {
+        return Type.DATE_TYPE;
+    }
+}
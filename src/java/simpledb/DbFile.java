@@ -2,6 +2,7 @@
 package simpledb;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.io.*;
 
 /**
@@ -19,6 +20,18 @@ public interface DbFile {
      */
     public Page readPage(PageId id);
 
+    /**
+     * Read the specified page from disk without blocking the caller. The
+     * default implementation runs {@link #readPage} on one of the
+     * {@link PageIO} threads.
+     *
+     * @return a future completed with the page, or completed exceptionally
+     *         with the exception thrown by readPage
+     */
+    public default CompletableFuture<Page> readPageAsync(PageId id) {
+        return CompletableFuture.supplyAsync(() -> readPage(id), PageIO.executor());
+    }
+
     /**
      * Push the specified page to disk.
      *
@@ -43,6 +56,33 @@ public interface DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts all the tuples of an iterator into the file on behalf of
+     * transaction, like repeated calls to {@link #insertTuple}. Files may
+     * override this to fill each page they touch completely, locking it once,
+     * before moving on to the next. The default implementation inserts the
+     * tuples one at a time.
+     *
+     * @param tid The transaction performing the update
+     * @param tuples The tuples to add. Each tuple should be updated to
+     *          reflect that it is now stored in this file.
+     * @return An ArrayList containing each page that was modified once
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    public default ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        LinkedHashMap<PageId, Page> modified = new LinkedHashMap<PageId, Page>();
+        while (tuples.hasNext()) {
+            for (Page p : insertTuple(tid, tuples.next())) {
+                // keep the page from being evicted by the following inserts
+                p.markDirty(true, tid);
+                modified.put(p.getId(), p);
+            }
+        }
+        return new ArrayList<Page>(modified.values());
+    }
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -0,0 +1,72 @@
+package simpledb;
+
+/**
+ * A StringField read from a dictionary-encoded column. It knows the code of
+ * its value, so equality with other values of the same column, and
+ * therefore equality predicates, hash joins and grouping, is decided by
+ * comparing codes. Each code has a single instance, owned by the
+ * {@link StringDictionary}, so reading an encoded column allocates no
+ * strings.
+ */
+public class DictStringField extends StringField {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient StringDictionary dictionary;
+    private final int column;
+    private final int code;
+
+    DictStringField(StringDictionary dictionary, int column, int code, String value) {
+        super(value, Type.STRING_LEN);
+        this.dictionary = dictionary;
+        this.column = column;
+        this.code = code;
+    }
+
+    /**
+     * @return the dictionary this value belongs to
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the column of the dictionary this value belongs to
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the code of this value in its column
+     */
+    public int getCode() {
+        return code;
+    }
+
+    private boolean sameColumn(Object field) {
+        if (!(field instanceof DictStringField))
+            return false;
+        DictStringField d = (DictStringField) field;
+        return dictionary != null && d.dictionary == dictionary && d.column == column;
+    }
+
+    public boolean equals(Object field) {
+        if (sameColumn(field))
+            return ((DictStringField) field).code == code;
+        return super.equals(field);
+    }
+
+    // hashCode() is that of the string, which caches it, so encoded and
+    // plain values stay interchangeable as hash keys
+
+    public boolean compare(Predicate.Op op, Field val) {
+        if (sameColumn(val)) {
+            if (op == Predicate.Op.EQUALS)
+                return ((DictStringField) val).code == code;
+            if (op == Predicate.Op.NOT_EQUALS)
+                return ((DictStringField) val).code != code;
+        }
+        return super.compare(op, val);
+    }
+}
@@ -0,0 +1,123 @@
+package simpledb;
+
+/**
+ * A fixed-width histogram over a single numeric field that is not an int:
+ * LONG_TYPE, DOUBLE_TYPE or DATE_TYPE. Values are histogrammed as doubles,
+ * so the histogram keeps no boxed values and uses constant space.
+ */
+public class DoubleHistogram {
+
+    private final int[] counts;
+    private final double min;
+    private final double max;
+    private final double width;
+    private int ntups = 0;
+
+    /**
+     * Create a new DoubleHistogram.
+     *
+     * @param buckets The number of buckets to split the input value into.
+     * @param min The minimum value that will ever be passed to this class for histogramming
+     * @param max The maximum value that will ever be passed to this class for histogramming
+     */
+    public DoubleHistogram(int buckets, double min, double max) {
+        this.min = min;
+        this.max = max;
+        this.counts = new int[Math.max(1, buckets)];
+        this.width = max > min ? (max - min) / counts.length : 1.0;
+    }
+
+    /**
+     * @return the value of a LONG_TYPE, DOUBLE_TYPE or DATE_TYPE field as
+     *     histogrammed by this class
+     */
+    public static double valueOf(Field f) {
+        switch (f.getType()) {
+        case LONG_TYPE:
+            return ((LongField) f).getValue();
+        case DOUBLE_TYPE:
+            return ((DoubleField) f).getValue();
+        case DATE_TYPE:
+            return ((DateField) f).getValue();
+        default:
+            throw new IllegalArgumentException("not a long, double or date field: " + f.getType());
+        }
+    }
+
+    private int bucket(double v) {
+        int b = (int) ((v - min) / width);
+        return Math.max(0, Math.min(counts.length - 1, b));
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     * @param v Value to add to the histogram
+     */
+    public void addValue(double v) {
+        counts[bucket(v)]++;
+        ntups++;
+    }
+
+    /** @return the fraction of values below v */
+    private double below(double v) {
+        if (v <= min)
+            return 0;
+        if (v > max)
+            return 1;
+        int b = bucket(v);
+        double sum = 0;
+        for (int i = 0; i < b; i++)
+            sum += counts[i];
+        double left = min + b * width;
+        sum += counts[b] * Math.min(1.0, (v - left) / width);
+        return sum / ntups;
+    }
+
+    /** @return the fraction of values equal to v */
+    private double equal(double v) {
+        if (v < min || v > max)
+            return 0;
+        // assume the values of a bucket are spread over one unit steps
+        return counts[bucket(v)] / Math.max(1.0, width) / ntups;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this table.
+     *
+     * @param op Operator
+     * @param v Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, double v) {
+        if (ntups == 0)
+            return 0;
+        double lt = below(v), eq = equal(v);
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return eq;
+        case NOT_EQUALS:
+            return 1 - eq;
+        case LESS_THAN:
+            return lt;
+        case LESS_THAN_OR_EQ:
+            return Math.min(1.0, lt + eq);
+        case GREATER_THAN:
+            return Math.max(0.0, 1 - lt - eq);
+        case GREATER_THAN_OR_EQ:
+            return 1 - lt;
+        default:
+            return -1.0;
+        }
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < counts.length; i++)
+            sb.append("counts[" + i + "]=" + counts[i]);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which page the BufferPool evicts when it is full.
+ * The pool tells the policy about every page it adds, every request for a
+ * page it already holds and every page it drops, and asks it for a victim
+ * when it needs room.
+ * <p>
+ * The pool only evicts clean pages (it does not write uncommitted data to
+ * disk), so a policy is given a test for the pages it may pick, and must
+ * keep the others where they are. Implementations are thread safe, since
+ * hits are reported without holding the pool's lock, and must ignore hits
+ * and removals of pages they do not know.
+ *
+ * @see BufferPool#setDefaultPolicy
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Tells which pages may be evicted.
+     */
+    interface Evictable {
+        /** @return true if the page with the specified id may be evicted */
+        boolean test(PageId pid);
+    }
+
+    /**
+     * Records that a page was added to the pool.
+     */
+    void pageAdded(PageId pid);
+
+    /**
+     * Records that a page held by the pool was requested again.
+     */
+    void pageHit(PageId pid);
+
+    /**
+     * Records that a page left the pool without being chosen by
+     * {@link #evict}, for example because it was discarded.
+     */
+    void pageRemoved(PageId pid);
+
+    /**
+     * Chooses the page to evict among those the policy knows, and forgets
+     * it.
+     *
+     * @param evictable tells which pages may be chosen
+     * @return the page to evict, or null if no page may be evicted
+     */
+    PageId evict(Evictable evictable);
+
+    /**
+     * Creates the policy with the specified name: "lru", "clock", "lru-k"
+     * (which keeps the last {@link LruKPolicy#DEFAULT_K} references of each
+     * page) or "2q".
+     *
+     * @param name the name of the policy, in any case
+     * @param capacity the number of pages the pool holds
+     * @throws IllegalArgumentException if there is no policy with that name
+     */
+    static EvictionPolicy forName(String name, int capacity) {
+        switch (name.toLowerCase()) {
+        case "lru":
+            return new LruPolicy();
+        case "clock":
+            return new ClockPolicy();
+        case "lru-k":
+            return new LruKPolicy(LruKPolicy.DEFAULT_K, capacity);
+        case "2q":
+            return new TwoQueuePolicy(capacity);
+        default:
+            throw new IllegalArgumentException("unknown eviction policy " + name);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for values of fields in tuples in SimpleDB.
@@ -14,6 +15,16 @@ public interface Field extends Serializable{
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the bytes representing this field into buf, starting at the
+     * absolute offset given. Exactly getType().getLen() bytes are written and
+     * the position of buf is left unchanged.
+     * @see Type#parse(ByteBuffer, int)
+     * @param buf The buffer to write to.
+     * @param offset The offset in buf of the first byte of this field.
+     */
+    void serialize(ByteBuffer buf, int offset);
+
     /**
      * Compare the value of this field object to the passed in value.
      * @param op The operator
@@ -23,7 +34,7 @@ public interface Field extends Serializable{
     public boolean compare(Predicate.Op op, Field value);
 
     /**
-     * Returns the type of this field (see {@link Type#INT_TYPE} or {@link Type#STRING_TYPE}
+     * Returns the type of this field (see {@link Type})
      * @return type of this field
      */
     public Type getType();
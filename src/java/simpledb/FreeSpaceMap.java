@@ -0,0 +1,162 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap remembers which pages of a HeapFile are full, so that
+ * inserts can go straight to a page with a free slot instead of probing
+ * every page of the file.
+ * <p>
+ * The map is a bitmap with one bit per page; a set bit means the page was
+ * full the last time it was looked at. It is stored in a side file next to
+ * the heap file, and once that file exists each change is written through
+ * to it as a single byte. The file is only created by {@link #create}, which
+ * the HeapFile calls before it first writes to the heap file, so tables
+ * that are only read leave no side files behind. Pages past the end of the
+ * side file (including pages that have just been appended) read as not
+ * full.
+ * <p>
+ * The map is only a hint: a page marked not full may turn out to be full
+ * (for example after an aborted delete) and callers must check the page
+ * itself. The owning HeapFile corrects the bit whenever it looks at a page.
+ *
+ * @see HeapFile#insertTuple
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+    private final File f;
+    private FileChannel channel;
+    private BitSet full;
+    private int firstCandidate;
+    /** True once the side file exists. */
+    private boolean persistent;
+
+    /**
+     * Creates a free space map stored in the specified file. If the file
+     * does not exist, changes are only kept in memory until {@link #create}
+     * is called.
+     *
+     * @param f the file holding the bitmap
+     */
+    public FreeSpaceMap(File f) {
+        this.f = f;
+    }
+
+    /**
+     * @return the file holding the bitmap
+     */
+    public File getFile() {
+        return f;
+    }
+
+    private void load() throws IOException {
+        if (full != null)
+            return;
+        if (f.exists()) {
+            byte[] data = new byte[(int) f.length()];
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            FileChannel fc = getChannel();
+            while (buf.hasRemaining() && fc.read(buf, buf.position()) >= 0)
+                ;
+            full = BitSet.valueOf(data);
+            persistent = true;
+        } else {
+            full = new BitSet();
+        }
+        firstCandidate = full.nextClearBit(0);
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+
+    /**
+     * Creates the side file if it does not exist yet, holding the changes
+     * made so far, and writes every later change through to it.
+     */
+    public synchronized void create() throws IOException {
+        load();
+        if (persistent)
+            return;
+        byte[] data = full.toByteArray();
+        FileChannel fc = getChannel();
+        fc.truncate(0);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining())
+            fc.write(buf, buf.position());
+        persistent = true;
+    }
+
+    /**
+     * Returns the first page number, at or after from, that is not known to
+     * be full. The result may be past the last page of the heap file, in
+     * which case no existing page is known to have space.
+     *
+     * @param from the first page number to consider
+     */
+    public synchronized int nextPageWithSpace(int from) throws IOException {
+        load();
+        return full.nextClearBit(Math.max(from, firstCandidate));
+    }
+
+    /**
+     * Records whether the specified page is full. Does nothing if the map
+     * already holds that value.
+     *
+     * @param pgNo the page number
+     * @param isFull true if the page has no free slots
+     */
+    public synchronized void setFull(int pgNo, boolean isFull) throws IOException {
+        load();
+        if (full.get(pgNo) == isFull)
+            return;
+
+        full.set(pgNo, isFull);
+        if (!isFull && pgNo < firstCandidate)
+            firstCandidate = pgNo;
+        else if (isFull && pgNo == firstCandidate)
+            firstCandidate = full.nextClearBit(pgNo);
+        if (!persistent)
+            return;
+
+        // write through the byte holding this page's bit
+        int byteNo = pgNo / 8;
+        byte b = 0;
+        for (int i = 0; i < 8; i++) {
+            if (full.get(byteNo * 8 + i))
+                b |= (1 << i);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] { b });
+        getChannel().write(buf, byteNo);
+    }
+
+    /**
+     * Forgets the pages from numPages on, after the heap file was shortened
+     * to numPages pages.
+     *
+     * @param numPages the number of pages left in the heap file
+     */
+    public synchronized void truncate(int numPages) throws IOException {
+        load();
+        if (numPages >= full.length())
+            return;
+        full.clear(numPages, full.length());
+        firstCandidate = full.nextClearBit(0);
+        if (!persistent)
+            return;
+
+        byte[] data = full.toByteArray();
+        FileChannel fc = getChannel();
+        fc.truncate(data.length);
+        if (data.length > 0)
+            fc.write(ByteBuffer.wrap(data, data.length - 1, 1), data.length - 1);
+    }
+}
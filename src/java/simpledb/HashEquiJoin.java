@@ -116,6 +116,8 @@ public class HashEquiJoin extends Operator {
      */
     private Tuple processList() throws TransactionAbortedException, DbException {
         t1 = listIt.next();
+        if (t1 instanceof BytesTuple && t2 instanceof BytesTuple)
+            return BytesTuple.concat(comboTD, (BytesTuple) t1, (BytesTuple) t2);
 
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
@@ -1,6 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.Permission;
 import java.util.*;
 
@@ -9,14 +13,51 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. Other page formats can be chosen per table with a
+ * {@link PageLayout}.
  * 
  * @see simpledb.HeapPage#HeapPage
+ * @see simpledb.PageLayout
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
+    /** Bytes covered by one mapped segment in memory-mapped mode. */
+    public static final int MAPPED_SEGMENT_SIZE = 1 << 26;
+
+    /**
+     * Suffixes of the side files kept next to a heap file: the free space
+     * map, the zone map, the metadata, the sparse index of a clustered file,
+     * the string dictionary and the page index of a compressed file.
+     */
+    static final String[] SIDE_FILES = { ".fsm", ".zone", ".meta", ".key", ".dict", ".idx" };
+
+    /** Per-thread buffer that pages are serialized into before being written. */
+    private static final ThreadLocal<ByteBuffer> writeBuffer = new ThreadLocal<ByteBuffer>();
+
     private TupleDesc td;
     private File f;
+    private FileChannel channel;
+
+    private final PageLayout layout;
+    private final boolean memoryMapped;
+    private ArrayList<MappedByteBuffer> segments;
+    private int segmentPageSize;
+
+    private final FreeSpaceMap freeSpace;
+    private final ZoneMap zoneMap;
+    private final int[] zoneColumns;
+    private volatile TableMetadata metadata;
+    private volatile boolean sideFilesCreated = false;
+    private StringDictionary dictionary;
+    private int clusterKey = -1;
+    private SparseIndex keyIndex;
+
+    /** Guards changes to the length of the file; see truncate. */
+    private final Object resizeLock = new Object();
+    /** Pages appended whose writer does not hold their lock yet. */
+    private int appending = 0;
+    /** The largest page count the file had before it was truncated. */
+    private volatile int truncatedFrom = 0;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -26,9 +67,67 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, optionally reading
+     * its pages through read-only memory mappings of the file. Mapped mode
+     * is intended for read-mostly tables: page reads become a copy out of the
+     * OS page cache instead of a system call. Writes always go through the
+     * file channel, and the mappings are extended as the file grows.
+     * 
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param memoryMapped
+     *            true to read pages through memory mappings of the file.
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        this(f, td, PageLayout.ROW, memoryMapped);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file whose pages are
+     * stored in the specified format.
+     * 
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param layout
+     *            the format of the pages of this file.
+     * @param memoryMapped
+     *            true to read pages through memory mappings of the file.
+     */
+    public HeapFile(File f, TupleDesc td, PageLayout layout, boolean memoryMapped) {
         // Done
         this.f = f;
         this.td = td;
+        this.layout = layout;
+        this.memoryMapped = memoryMapped;
+        this.segments = new ArrayList<MappedByteBuffer>();
+        this.freeSpace = new FreeSpaceMap(new File(f.getPath() + ".fsm"));
+        this.zoneMap = new ZoneMap(new File(f.getPath() + ".zone"), td);
+        this.zoneColumns = zoneMap.getColumns();
+    }
+
+    /**
+     * Deletes the side files of the heap file f, for example because f is
+     * about to be replaced by a new file whose pages they do not describe.
+     */
+    public static void deleteSideFiles(File f) {
+        for (String suffix : SIDE_FILES)
+            new File(f.getPath() + suffix).delete();
+    }
+
+    /**
+     * Deletes the heap file f, and its side files, when the virtual machine
+     * exits. Meant for temporary tables.
+     */
+    public static void deleteOnExit(File f) {
+        f.deleteOnExit();
+        for (String suffix : SIDE_FILES)
+            new File(f.getPath() + suffix).deleteOnExit();
     }
 
     /**
@@ -41,6 +140,130 @@ public class HeapFile implements DbFile {
         return this.f;
     }
 
+    /**
+     * Returns the map used to find pages with free slots on insert. It is
+     * stored next to the heap file, in a file with the suffix ".fsm".
+     */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpace;
+    }
+
+    /**
+     * Returns the zones of the int fields of each page, used to skip pages
+     * during scans. They are stored next to the heap file, in a file with
+     * the suffix ".zone".
+     */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
+    /**
+     * Returns the cached page count and tuple counts of this file, opened
+     * on first use. They are stored next to the heap file, in a file with
+     * the suffix ".meta".
+     */
+    public TableMetadata getMetadata() {
+        TableMetadata m = metadata;
+        if (m == null) {
+            synchronized (resizeLock) {
+                m = metadata;
+                if (m == null) {
+                    try {
+                        m = new TableMetadata(new File(f.getPath() + ".meta"), td, countPages());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    metadata = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @return the format of the pages of this file.
+     */
+    public PageLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Stores the specified string columns dictionary encoded: pages hold an
+     * int code per value, and the codes are kept in a {@link StringDictionary}
+     * next to the heap file, in a file with the suffix ".dict". Must be
+     * called before any page of the file is read, and with the same columns
+     * every time the table is opened.
+     *
+     * @param columns the indexes of the encoded columns, all of type
+     *            STRING_TYPE
+     * @throws IOException if the dictionary cannot be read
+     * @throws IllegalArgumentException if a column is not a string column,
+     *             or the pages of this file do not have fixed-size slots
+     */
+    public void setDictionaryEncoded(int... columns) throws IOException {
+        if (layout == PageLayout.SLOTTED)
+            throw new IllegalArgumentException("slotted pages cannot be dictionary encoded");
+        dictionary = columns.length == 0 ? null
+                : new StringDictionary(new File(f.getPath() + ".dict"), td, columns);
+    }
+
+    /**
+     * @return the dictionary of the encoded string columns of this file, or
+     *         null if no column is encoded.
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Keeps the tuples of this file approximately ordered on the specified
+     * field. New tuples go to a page whose key range covers their key when
+     * it has room, batches of inserts are sorted by key, and the key range
+     * of every page is kept in a {@link SparseIndex} next to the heap file,
+     * in a file with the suffix ".key", so that scans can skip pages that
+     * cannot match a predicate on the key (see {@link #iterator(TransactionId, int[], List)}).
+     * <p>
+     * Must be called before any page of the file is read, and with the same
+     * field every time the table is opened. Pages that exist when the index
+     * is first created have no known range and are always read; load the
+     * table with {@link BulkLoader#setClusterKey} to create a sorted file
+     * with a complete index.
+     *
+     * @param keyField the index of the key field
+     * @throws IOException if the index cannot be read or written
+     */
+    public void setClustered(int keyField) throws IOException {
+        if (keyField < 0 || keyField >= td.numFields())
+            throw new IllegalArgumentException("no field " + keyField);
+        SparseIndex index = new SparseIndex(new File(f.getPath() + ".key"), td.getFieldType(keyField));
+        index.markUnknown(numPages());
+        clusterKey = keyField;
+        keyIndex = index;
+    }
+
+    /**
+     * @return the index of the field this file is clustered on, or -1 if it
+     *         is not clustered
+     */
+    public int getClusterKey() {
+        return clusterKey;
+    }
+
+    /**
+     * @return the key ranges of the pages of this file, or null if it is not
+     *         clustered
+     */
+    public SparseIndex getSparseIndex() {
+        return keyIndex;
+    }
+
+    /**
+     * @return true if pages of this file are read through memory mappings.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere to ensure that each
@@ -65,84 +288,395 @@ public class HeapFile implements DbFile {
         return this.td;
     }
 
+    /**
+     * Returns the channel used for all page I/O on this file, opening it on
+     * first use. The channel is shared by every transaction; all reads and
+     * writes go through positional calls so no file pointer is shared.
+     */
+    synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+
+    /**
+     * Returns a private view of the mapped bytes of page pgNo, mapping or
+     * remapping its segment if the file has grown past the mapped length.
+     * Segments hold a whole number of pages so no page straddles two of them.
+     */
+    private synchronized ByteBuffer getMappedPage(int pgNo, int pageSize) throws IOException {
+        if (segmentPageSize != pageSize) {
+            segments.clear();
+            segmentPageSize = pageSize;
+        }
+        long segmentBytes = (long) MAPPED_SEGMENT_SIZE / pageSize * pageSize;
+        int segNo = (int) ((long) pgNo * pageSize / segmentBytes);
+        long segStart = segNo * segmentBytes;
+        long pageEnd = (long) (pgNo + 1) * pageSize;
+
+        while (segments.size() <= segNo)
+            segments.add(null);
+        MappedByteBuffer segment = segments.get(segNo);
+        if (segment == null || segStart + segment.capacity() < pageEnd) {
+            FileChannel fc = getChannel();
+            long len = Math.min(segmentBytes, fc.size() - segStart);
+            segment = fc.map(FileChannel.MapMode.READ_ONLY, segStart, len);
+            segments.set(segNo, segment);
+        }
+
+        ByteBuffer view = segment.duplicate();
+        view.position((int) ((long) pgNo * pageSize - segStart));
+        view.limit(view.position() + pageSize);
+        return view;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         // Done
         int pgNo = pid.getPageNumber();
-        int pageSize = BufferPool.getPageSize();
-        byte[] data = new byte[pageSize];
+        // only look at the file for pages appended to it by other means
+        if (pgNo < 0 || pgNo >= getMetadata().getNumPages() && pgNo >= countPages())
+            throw new IllegalArgumentException("Read past end of table");
 
+        HeapFilePage page;
         try {
-            RandomAccessFile raf = new RandomAccessFile(f, "r");
-            raf.seek(pgNo * pageSize);
-            raf.read(data);
-            raf.close();
-            return new HeapPage((HeapPageId)pid, data);
-        } catch (Exception e) {
-            e.printStackTrace();
+            page = layout.createPage((HeapPageId) pid, readPageData(pgNo));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // the page on disk is the committed state, so it corrects any stale hint
+        updateFreeSpace(page);
+        if (!zoneMap.isKnown(pgNo) || !getMetadata().isKnown(pgNo)) {
+            try {
+                pageWritten(page);
+            } catch (IOException e) {
+                // zones and counts are only an optimization; the page stays unknown
+                e.printStackTrace();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Reads the bytes of page pgNo, which must be an existing page of this
+     * file, as they are passed to the page constructor.
+     */
+    byte[] readPageData(int pgNo) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        if (memoryMapped) {
+            getMappedPage(pgNo, pageSize).get(data);
+            return data;
         }
 
-        return null;
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long offset = (long) pgNo * pageSize;
+        FileChannel fc = getChannel();
+        while (buf.hasRemaining()) {
+            if (fc.read(buf, offset + buf.position()) < 0)
+                throw new IllegalArgumentException("Unable to read "
+                        + pageSize + " bytes from HeapFile");
+        }
+        return data;
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // Done
-        PageId pid = page.getId();
-        int pgNo = pid.getPageNumber();
-        int pgSize = BufferPool.getPageSize();
-
-        try {
-            RandomAccessFile randAccFile = new RandomAccessFile(f, "rw");
-            randAccFile.seek(pgNo * pgSize);
-            randAccFile.write(page.getPageData());
-            randAccFile.close();
+        int pgNo = page.getId().getPageNumber();
+        int pageSize = BufferPool.getPageSize();
+        long offset = (long) pgNo * pageSize;
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        ByteBuffer buf = writeBuffer.get();
+        if (buf == null || buf.capacity() != pageSize) {
+            buf = ByteBuffer.allocateDirect(pageSize);
+            writeBuffer.set(buf);
         }
+        buf.clear();
+        page.writePageData(buf);
+        buf.flip();
+
+        createSideFiles();
+        FileChannel fc = getChannel();
+        while (buf.hasRemaining())
+            fc.write(buf, offset + buf.position());
+        pageWritten(page);
+    }
+
+    /**
+     * Creates the side files of the free space map, zone map and metadata
+     * that do not exist yet, before the first write to this file. Tables
+     * that are only read keep what they learn about their pages in memory,
+     * and leave no files behind.
+     */
+    void createSideFiles() throws IOException {
+        if (sideFilesCreated)
+            return;
+        freeSpace.create();
+        zoneMap.create();
+        getMetadata().create();
+        sideFilesCreated = true;
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * Records the zones and the counts of a page that was just written to
+     * disk. Pages are written when the transactions that changed them
+     * commit, so this is where deletes narrow the zones.
+     */
+    void pageWritten(Page page) throws IOException {
+        HeapFilePage hp = (HeapFilePage) page;
+        int pgNo = hp.getId().getPageNumber();
+        int tupleCount = zoneMap.update(pgNo, hp.iterator(zoneColumns));
+        getMetadata().pageWritten(pgNo, tupleCount, hp.getNumEmptySlots());
+    }
+
+    /**
+     * Returns the number of pages in this HeapFile. This asks the file
+     * system, so that pages written to the file by other means are seen, and
+     * brings the page count of the {@link #getMetadata metadata} up to date;
+     * code that looks at the page count often, such as the loop of a scan,
+     * reads that count instead.
      */
     public int numPages() {
         // Done
+        synchronized (resizeLock) {
+            int n = countPages();
+            try {
+                getMetadata().setNumPages(n);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Returns the number of pages in the file on disk.
+     */
+    int countPages() {
         return (int)(this.f.length() / BufferPool.getPageSize());
     }
 
+    /**
+     * Returns true if page pgNo was cut off the end of the file by
+     * {@link #truncate} and has not been appended again. A transaction that
+     * gets the lock on such a page after waiting for the truncating
+     * transaction must start over, since the page it meant to use is gone.
+     */
+    boolean wasTruncated(int pgNo) {
+        return pgNo < truncatedFrom && pgNo >= getMetadata().getNumPages() && pgNo >= countPages();
+    }
+
+    /**
+     * Removes the pages from numPages on from the end of the file. The
+     * caller must hold a READ_WRITE lock on each of those pages through tid
+     * and must have checked that they are empty; their tuples are lost
+     * otherwise. The pages are dropped from the BufferPool.
+     * <p>
+     * Returns false, without changing the file, if pages were appended that
+     * tid does not hold a lock on, since another transaction may be about
+     * to fill them.
+     *
+     * @param tid the transaction holding the locks on the removed pages
+     * @param numPages the number of pages to keep
+     * @return true if the file now has numPages pages
+     * @see Vacuum
+     */
+    public boolean truncate(TransactionId tid, int numPages) throws IOException {
+        BufferPool bufferPool = Database.getBufferPool();
+        int oldPages;
+        synchronized (resizeLock) {
+            oldPages = numPages();
+            if (appending > 0)
+                return false;
+            for (int pgNo = numPages; pgNo < oldPages; pgNo++) {
+                if (!bufferPool.holdsLock(tid, new HeapPageId(getId(), pgNo)))
+                    return false;
+            }
+            if (numPages >= oldPages)
+                return true;
+            createSideFiles();
+            truncatedFrom = Math.max(truncatedFrom, oldPages);
+            truncateFile(numPages);
+            freeSpace.truncate(numPages);
+            zoneMap.truncate(numPages);
+            getMetadata().truncate(numPages);
+            if (keyIndex != null)
+                keyIndex.truncate(numPages);
+        }
+        for (int pgNo = numPages; pgNo < oldPages; pgNo++)
+            bufferPool.discardPage(new HeapPageId(getId(), pgNo));
+        return true;
+    }
+
+    /**
+     * Shortens the file to its first numPages pages.
+     */
+    void truncateFile(int numPages) throws IOException {
+        synchronized (this) {
+            // mappings must not reach past the end of the file
+            segments.clear();
+        }
+        getChannel().truncate((long) numPages * BufferPool.getPageSize());
+    }
+
+    /**
+     * Records in the free space map whether page still has a free slot.
+     */
+    void updateFreeSpace(HeapFilePage page) {
+        try {
+            freeSpace.setFull(page.getId().getPageNumber(), page.getNumEmptySlots() == 0);
+        } catch (IOException e) {
+            // the map is only a hint; a lost update is corrected on a later visit
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds t to page, which must have a free slot and be locked READ_WRITE
+     * by the calling transaction, first widening the zones of the page and,
+     * if this file is clustered, its key range.
+     */
+    void addToPage(HeapFilePage page, Tuple t) throws DbException, IOException {
+        if (keyIndex != null)
+            keyIndex.include(page.getId().getPageNumber(), t.getField(clusterKey));
+        zoneMap.include(page.getId().getPageNumber(), t);
+        page.insertTuple(t);
+    }
+
+    /**
+     * Inserts t into page, which must have a free slot and be locked
+     * READ_WRITE by the calling transaction.
+     */
+    private ArrayList<Page> insertIntoPage(HeapFilePage page, Tuple t) throws DbException, IOException {
+        addToPage(page, t);
+        updateFreeSpace(page);
+
+        ArrayList<Page> retList = new ArrayList<Page>();
+        retList.add(page);
+        return retList;
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // Done
-        HeapPageId pid = new HeapPageId(getId(), 0);
-        // Find a available heap page id
-        while (pid.getPageNumber() < numPages()) {
-            HeapPage checkPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        BufferPool bufferPool = Database.getBufferPool();
+
+        // Clustered files first try the pages holding keys close to the new one
+        if (keyIndex != null) {
+            for (int pgNo : keyIndex.pagesFor(t.getField(clusterKey))) {
+                if (pgNo >= numPages() || freeSpace.nextPageWithSpace(pgNo) != pgNo)
+                    continue;
+                HeapPageId pid = new HeapPageId(getId(), pgNo);
+                boolean alreadyLocked = bufferPool.holdsLock(tid, pid);
+                HeapFilePage checkPage = (HeapFilePage) bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
+                if (checkPage.getNumEmptySlots() != 0)
+                    return insertIntoPage(checkPage, t);
+                updateFreeSpace(checkPage);
+                if (!alreadyLocked)
+                    bufferPool.releasePage(tid, pid);
+            }
+        }
+
+        // Only visit pages that the free space map does not know to be full
+        int pgNo = freeSpace.nextPageWithSpace(0);
+        while (pgNo < numPages()) {
+            HeapPageId pid = new HeapPageId(getId(), pgNo);
+            boolean alreadyLocked = bufferPool.holdsLock(tid, pid);
+            HeapFilePage checkPage = (HeapFilePage) bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
 
             if (checkPage.getNumEmptySlots() != 0)
-                break;
-            else
-                pid = new HeapPageId(getId(), pid.getPageNumber() + 1);
+                return insertIntoPage(checkPage, t);
+
+            // Stale hint: remember the page is full and give the lock back,
+            // since nothing on the page was read or changed
+            updateFreeSpace(checkPage);
+            if (!alreadyLocked)
+                bufferPool.releasePage(tid, pid);
+            pgNo = freeSpace.nextPageWithSpace(pgNo + 1);
         }
 
-        assert(pid.getPageNumber() <= numPages());
-        
         // Find no available page
-        // Create a new heap page and write it to bufferpool
-        if (pid.getPageNumber() == numPages()) {
+        return insertIntoPage(appendPage(tid), t);
+    }
+
+    /**
+     * Writes a new empty page at the end of the file and returns it, locked
+     * READ_WRITE by tid.
+     */
+    private HeapFilePage appendPage(TransactionId tid)
+            throws DbException, IOException, TransactionAbortedException {
+        HeapPageId pid;
+        synchronized (resizeLock) {
+            pid = new HeapPageId(getId(), numPages());
             byte[] data = HeapPage.createEmptyPageData();
-            HeapPage newPage = new HeapPage(pid, data);
+            HeapFilePage newPage = layout.createPage(pid, data);
             writePage(newPage);
+            appending++;
         }
 
-        HeapPage targetPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        // the empty page must not be truncated before it is locked
+        try {
+            return (HeapFilePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        } finally {
+            synchronized (resizeLock) {
+                appending--;
+            }
+        }
+    }
 
-        targetPage.insertTuple(t);
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        if (keyIndex != null) {
+            // place the batch in key order, one tuple at a time
+            ArrayList<Tuple> sorted = new ArrayList<Tuple>();
+            while (tuples.hasNext())
+                sorted.add(tuples.next());
+            sorted.sort((a, b) -> SparseIndex.compare(a.getField(clusterKey), b.getField(clusterKey)));
+            return DbFile.super.insertTuples(tid, sorted.iterator());
+        }
 
+        BufferPool bufferPool = Database.getBufferPool();
         ArrayList<Page> retList = new ArrayList<Page>();
-        retList.add(targetPage);
 
+        int pgNo = freeSpace.nextPageWithSpace(0);
+        while (tuples.hasNext()) {
+            HeapFilePage page;
+            if (pgNo < numPages()) {
+                HeapPageId pid = new HeapPageId(getId(), pgNo);
+                boolean alreadyLocked = bufferPool.holdsLock(tid, pid);
+                page = (HeapFilePage) bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
+                if (page.getNumEmptySlots() == 0) {
+                    updateFreeSpace(page);
+                    if (!alreadyLocked)
+                        bufferPool.releasePage(tid, pid);
+                    pgNo = freeSpace.nextPageWithSpace(pgNo + 1);
+                    continue;
+                }
+            } else {
+                page = appendPage(tid);
+                pgNo = page.getId().getPageNumber();
+            }
+
+            // Fetching the next page may evict this one, so it is marked
+            // dirty before it changes rather than by the caller afterwards
+            page.markDirty(true, tid);
+            int free = page.getNumEmptySlots();
+            while (free > 0 && tuples.hasNext()) {
+                addToPage(page, tuples.next());
+                // variable-length pages may have room for more than promised
+                if (--free == 0)
+                    free = page.getNumEmptySlots();
+            }
+            updateFreeSpace(page);
+            retList.add(page);
+            pgNo = freeSpace.nextPageWithSpace(pgNo + 1);
+        }
         return retList;
     }
 
@@ -154,8 +688,9 @@ public class HeapFile implements DbFile {
         PageId pid = rid.getPageId();
 
         // delete tuple and mark page as dirty
-        HeapPage targetPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        HeapFilePage targetPage = (HeapFilePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
         targetPage.deleteTuple(t);
+        updateFreeSpace(targetPage);
 
         ArrayList<Page> retList = new ArrayList<Page>();
         retList.add(targetPage);
@@ -165,52 +700,99 @@ public class HeapFile implements DbFile {
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that only needs to
+     * decode the specified fields of each tuple. The other fields of the
+     * returned tuples may be null. Pages in the {@link PageLayout#PAX}
+     * layout then only read the minipages of those fields.
+     * <p>
+     * Pages after the current one are prefetched into the BufferPool while
+     * the scan proceeds in order (see {@link ReadAhead}).
+     *
+     * @param tid the transaction the scan runs as a part of
+     * @param columns the indexes of the fields to decode, or null for all
+     * @see HeapFilePage#iterator(int[])
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return iterator(tid, columns, null);
+    }
+
+    /**
+     * Returns false if page pgNo is known to hold no tuple that satisfies
+     * all of the predicates.
+     */
+    private boolean mayMatch(int pgNo, List<Predicate> predicates) {
+        if (predicates == null)
+            return true;
+        for (Predicate p : predicates) {
+            if (!zoneMap.mayMatch(pgNo, p))
+                return false;
+            if (keyIndex != null && p.getField() == clusterKey
+                    && !keyIndex.mayMatch(pgNo, p.getOp(), p.getOperand()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file, like
+     * {@link #iterator(TransactionId, int[])}, that skips the pages that the
+     * {@link ZoneMap}, or the {@link SparseIndex} of a clustered file, shows
+     * cannot hold a tuple satisfying all of the predicates. Tuples of the
+     * pages that are read are returned whether they satisfy the predicates
+     * or not.
+     *
+     * @param tid the transaction the scan runs as a part of
+     * @param columns the indexes of the fields to decode, or null for all
+     * @param predicates conditions the caller is interested in, or null
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, List<Predicate> predicates) {
         // Done
         return new DbFileIterator() {
             private int curPageId = 0;
             private Iterator<Tuple> tupleIt = null;
+            private ReadAhead readAhead = null;
 
             private Iterator<Tuple> getTupleIteratorOfPageId(int pageId)
                     throws DbException, TransactionAbortedException {
+                if (!mayMatch(pageId, predicates))
+                    return Collections.<Tuple>emptyIterator();
                 HeapPageId hpid = new HeapPageId(getId(), pageId);
+                readAhead.accessed(pageId, getMetadata().getNumPages());
 
-                HeapPage hp = (HeapPage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_ONLY);
+                HeapFilePage hp = (HeapFilePage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_ONLY);
 
-                return hp.iterator();
+                return columns == null ? hp.iterator() : hp.iterator(columns);
             }
 
             @Override
             public void open() throws DbException, TransactionAbortedException {
+                // one look at the file; from here on the cached count is used
+                int n = numPages();
                 curPageId = 0;
-                tupleIt = getTupleIteratorOfPageId(curPageId++);
+                readAhead = new ReadAhead(getId());
+                tupleIt = n > 0 ? getTupleIteratorOfPageId(curPageId++)
+                        : Collections.<Tuple>emptyIterator();
             }
     
             @Override
             public boolean hasNext() throws DbException, TransactionAbortedException {
                 if(tupleIt == null) return false;
-                if(tupleIt.hasNext()) return true;
-
-                int checkPageId = curPageId;
-                while (checkPageId < numPages() && !getTupleIteratorOfPageId(checkPageId).hasNext()) {
-                    checkPageId++;
+                // advance here, so that next() sees the same pages, even if
+                // reading a page taught the zone map to skip it
+                while (!tupleIt.hasNext() && curPageId < getMetadata().getNumPages()) {
+                    tupleIt = getTupleIteratorOfPageId(curPageId++);
                 }
-                return checkPageId < numPages();
+                return tupleIt.hasNext();
             }
     
             @Override
             public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-                if(tupleIt == null) throw new NoSuchElementException();
-                if(tupleIt.hasNext()) return tupleIt.next();
-
-                while (curPageId < numPages() && !getTupleIteratorOfPageId(curPageId).hasNext()) {
-                    curPageId++;
-                }
-
-                if(curPageId < numPages()) {
-                    tupleIt = getTupleIteratorOfPageId(curPageId++);
-                    return tupleIt.next();
-                }
-                throw new NoSuchElementException();
+                if(!hasNext()) throw new NoSuchElementException();
+                return tupleIt.next();
             }
     
             @Override
@@ -106,6 +106,8 @@ public class HeapFileEncoder {
 
     BufferedReader br = new BufferedReader(new FileReader(inFile));
     FileOutputStream os = new FileOutputStream(outFile);
+    // side files of a previous file would not match the new pages
+    HeapFile.deleteSideFiles(outFile);
 
     // our numbers probably won't be much larger than 1024 digits
     char buf[] = new char[1024];
@@ -157,6 +159,13 @@ public class HeapFileEncoder {
                 while (overflow-- > 0)
                     pageStream.write((byte)0);
             }
+            else {
+                try {
+                    typeAr[fieldNo].fromString(s).serialize(pageStream);
+                } catch (java.text.ParseException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+            }
             curpos = 0;
             if (c == '\n')
                 fieldNo = 0;
@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * HeapFilePage is the interface implemented by every page format that a
+ * HeapFile can be stored in. HeapFile only uses these methods, so the page
+ * layout of a table can be chosen independently of the rest of the system.
+ *
+ * @see HeapFile
+ * @see PageLayout
+ */
+public interface HeapFilePage extends Page {
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId();
+
+    /**
+     * Returns the number of tuples of this table that can still be added to
+     * the page with certainty. A page with no empty slots is considered full
+     * by HeapFile and its free space map.
+     */
+    public int getNumEmptySlots();
+
+    /**
+     * Returns true if the tuple with the specified tuple number (see
+     * {@link RecordId#getTupleNumber}) is stored on this page.
+     */
+    public boolean isSlotUsed(int i);
+
+    /**
+     * Adds the specified tuple to the page; the tuple should be updated to
+     * reflect that it is now stored on this page.
+     * @throws DbException if the page is full or the tupledesc is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Delete the specified tuple from the page.
+     * @throws DbException if this tuple is not on this page, or the slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on
+     * this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * Returns an iterator over all tuples on this page that only needs to
+     * decode the specified fields; other fields of the returned tuples may
+     * be null. Pages that cannot decode single fields return whole tuples.
+     *
+     * @param columns the indexes of the fields the caller reads
+     */
+    public default Iterator<Tuple> iterator(int[] columns) {
+        return iterator();
+    }
+}
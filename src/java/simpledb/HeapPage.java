@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -11,7 +12,7 @@ import java.io.*;
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements HeapFilePage {
 
     final HeapPageId pid;
     final TupleDesc td;
@@ -19,10 +20,20 @@ public class HeapPage implements Page {
     final Tuple tuples[];
     final int numSlots;
 
+    /** The raw bytes of this page; always kept in sync with header and tuples. */
+    final byte data[];
+    /** View of data used to decode and encode fields at fixed offsets. */
+    private final ByteBuffer dataBuf;
+    /** Offset of each field from the start of its tuple. */
+    private final int fieldOffsets[];
+    private final int tupleSize;
+    /** Dictionary of the encoded string columns of the table, or null. */
+    final StringDictionary dictionary;
+
     private TransactionId tid;
 
     byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
+    private final Object oldDataLock=new Object();
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -36,32 +47,51 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The page works on a copy of data: only the header is parsed up front,
+     * and each tuple is decoded from the copy the first time it is accessed.
+     * Modifications are written back into the copy immediately.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a HeapPage from a set of bytes of data, like
+     * {@link #HeapPage(HeapPageId, byte[])}, taking ownership of data
+     * unless copy is true. Pages built from freshly read bytes, as in
+     * {@link HeapFile#readPage}, need no copy.
+     */
+    HeapPage(HeapPageId id, byte[] data, boolean copy) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.dictionary = file instanceof HeapFile ? ((HeapFile) file).getDictionary() : null;
+
+        fieldOffsets = new int[td.numFields()];
+        for (int j=1; j<fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j-1] + fieldLen(j-1);
+        this.tupleSize = fieldOffsets.length == 0 ? 0
+                : fieldOffsets[fieldOffsets.length-1] + fieldLen(fieldOffsets.length-1);
+
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length != BufferPool.getPageSize())
+            throw new IOException("page data has " + data.length + " bytes, expected "
+                    + BufferPool.getPageSize());
+        this.data = copy ? data.clone() : data;
+        this.dataBuf = ByteBuffer.wrap(this.data);
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
+        System.arraycopy(this.data, 0, header, 0, header.length);
+
+        // tuples are decoded on first access
         tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
 
-        setBeforeImage();
+        // the before image is captured when the page is first modified
     }
 
     /** Retrieve the number of tuples on this page.
@@ -69,7 +99,7 @@ public class HeapPage implements Page {
     */
     private int getNumTuples() {        
         // Done
-        return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        return (BufferPool.getPageSize() * 8) / (tupleSize * 8 + 1);
     }
 
     /**
@@ -92,7 +122,8 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid,oldDataRef);
+            // no saved image: the page is unchanged since it was read or committed
+            return copyOf(oldDataRef == null ? getPageData() : oldDataRef.clone());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -102,9 +133,24 @@ public class HeapPage implements Page {
     }
     
     public void setBeforeImage() {
+        // the current content becomes the before image; it is only copied
+        // once the page is modified again
+        synchronized(oldDataLock)
+        {
+        oldData = null;
+        }
+    }
+
+    /**
+     * Save the current content as the before image, unless it has already
+     * been saved since the page was read or last committed. Must be called
+     * before every modification of the page.
+     */
+    private void captureBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        if (oldData == null)
+            oldData = getPageData();
         }
     }
 
@@ -117,37 +163,117 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Creates a page of the same format as this one from the specified data.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
+    HeapPage copyOf(byte[] data) throws IOException {
+        return new HeapPage(pid, data, false);
+    }
+
+    /**
+     * @return the number of bytes field fieldIndex takes on the page: 4 for
+     *         the code of a dictionary-encoded string, otherwise the length
+     *         of its type.
+     */
+    int fieldLen(int fieldIndex) {
+        if (dictionary != null && dictionary.isEncoded(fieldIndex))
+            return 4;
+        return td.getFieldType(fieldIndex).getLen();
+    }
+
+    /**
+     * @return true if each slot holds its tuple in the format of a
+     *         {@link BytesTuple}: fields one after another at the full width
+     *         of their types.
+     */
+    boolean rowBytes() {
+        return dictionary == null;
+    }
+
+    /**
+     * @return the offset in data of the first byte of slot slotId
+     */
+    private int slotOffset(int slotId) {
+        return header.length + slotId * tupleSize;
+    }
+
+    /**
+     * @return the offset in data of field fieldIndex of the tuple in slot
+     *         slotId. Tuples are stored contiguously, one slot after another.
+     */
+    int fieldOffset(int slotId, int fieldIndex) {
+        return slotOffset(slotId) + fieldOffsets[fieldIndex];
+    }
+
+    /**
+     * Decode the tuple in slot slotId from the page data, or return the
+     * already decoded copy. Returns null if the slot is empty.
+     */
+    private Tuple getTuple(int slotId) throws NoSuchElementException {
+        if (!isSlotUsed(slotId))
             return null;
-        }
+        Tuple t = tuples[slotId];
+        if (t != null)
+            return t;
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
+        if (rowBytes()) {
+            // the slot already holds the serialized tuple; copy it as is and
+            // decode fields only when they are asked for
+            int offset = slotOffset(slotId);
+            t = new BytesTuple(td, Arrays.copyOfRange(data, offset, offset + tupleSize), 0, false);
+        } else {
+            // read fields in the tuple
+            t = new Tuple(td);
+            for (int j=0; j<td.numFields(); j++)
+                t.setField(j, getField(slotId, j));
+        }
         t.setRecordId(rid);
+        tuples[slotId] = t;
+        return t;
+    }
+
+    /**
+     * Decode a single field of the tuple in a slot, without decoding the rest
+     * of the tuple.
+     *
+     * @param slotId the slot holding the tuple; must be in use
+     * @param fieldIndex the index of the field in the tuple
+     * @return the value of the field
+     * @throws NoSuchElementException if the slot is empty or the field cannot be parsed
+     */
+    public Field getField(int slotId, int fieldIndex) throws NoSuchElementException {
+        if (!isSlotUsed(slotId))
+            throw new NoSuchElementException("slot " + slotId + " is empty");
+        Tuple t = tuples[slotId];
+        if (t != null)
+            return t.getField(fieldIndex);
+
+        int offset = fieldOffset(slotId, fieldIndex);
         try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
+            if (dictionary != null && dictionary.isEncoded(fieldIndex))
+                return dictionary.decode(fieldIndex, dataBuf.getInt(offset));
+            return td.getFieldType(fieldIndex).parse(dataBuf, offset);
+        } catch (IllegalArgumentException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
+    }
 
-        return t;
+    /**
+     * Serialize t into slot slotId of the page data.
+     */
+    private void writeTuple(int slotId, Tuple t) throws DbException {
+        for (int j=0; j<td.numFields(); j++) {
+            if (dictionary != null && dictionary.isEncoded(j)) {
+                try {
+                    dataBuf.putInt(fieldOffset(slotId, j), dictionary.encode(j, t.getField(j)));
+                } catch (IOException e) {
+                    throw new DbException("cannot update dictionary: " + e);
+                }
+            } else {
+                t.getField(j).serialize(dataBuf, fieldOffset(slotId, j));
+            }
+        }
     }
 
     /**
@@ -157,69 +283,20 @@ public class HeapPage implements Page {
      * The invariant here is that it should be possible to pass the byte
      * array generated by getPageData to the HeapPage constructor and
      * have it produce an identical HeapPage object.
+     * <p>
+     * The page data is kept up to date on every modification, so this is
+     * a plain copy of it.
      *
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return data.clone();
+    }
 
-        return baos.toByteArray();
+    // see Page.java for javadocs
+    public void writePageData(ByteBuffer buf) {
+        buf.put(data);
     }
 
     /**
@@ -251,7 +328,13 @@ public class HeapPage implements Page {
         if (!pageId.equals(pid) || !isSlotUsed(t.getRecordId().getTupleNumber()))
             throw new DbException("failed to delete tuple");
 
+        captureBeforeImage();
         markSlotUsed(index, false);
+        tuples[index] = null;
+        for (int j=0; j<td.numFields(); j++) {
+            int offset = fieldOffset(index, j);
+            Arrays.fill(data, offset, offset + fieldLen(j), (byte) 0);
+        }
     }
 
     /**
@@ -268,8 +351,10 @@ public class HeapPage implements Page {
         if (!t.getTupleDesc().equals(td))
             throw new DbException("tuple desc does not match");
 
+        captureBeforeImage();
         for (int index = 0; index != getNumTuples(); index++) {
             if (!isSlotUsed(index)) {
+                writeTuple(index, t);
                 RecordId rid = new RecordId(pid, index);
                 t.setRecordId(rid);
                 tuples[index] = t;
@@ -304,23 +389,10 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // Done
+        // only count real slots, not the padding bits of the last header byte
         int empty_slot_number = 0;
-        for (byte bt : header) {
-            if ((bt & (1 << 0)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 1)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 2)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 3)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 4)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 5)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 6)) == 0)
-                empty_slot_number++;
-            if ((bt & (1 << 7)) == 0)
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i))
                 empty_slot_number++;
         }
         return empty_slot_number;
@@ -355,6 +427,7 @@ public class HeapPage implements Page {
             byte mask = (byte)(~(1 << shift)); // 11110111
             header[index] = (byte) (header[index] & mask);
         }
+        data[index] = header[index];
     }
 
     /**
@@ -383,7 +456,48 @@ public class HeapPage implements Page {
                     index++;
                 }
 
-                return index < numSlots ? tuples[index++] : null;
+                return index < numSlots ? getTuple(index++) : null;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over all tuples on this page that only decodes
+     * the specified fields of each tuple; the other fields of the returned
+     * tuples are null. Tuples that have already been decoded in full are
+     * returned as they are.
+     *
+     * @param columns the indexes of the fields to decode
+     */
+    public Iterator<Tuple> iterator(final int[] columns) {
+        return new Iterator<Tuple>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (index < numSlots && !isSlotUsed(index))
+                    index++;
+                return index < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int slotId = index++;
+                if (tuples[slotId] != null)
+                    return tuples[slotId];
+
+                Tuple t = new Tuple(td);
+                t.setRecordId(new RecordId(pid, slotId));
+                for (int j : columns)
+                    t.setField(j, getField(slotId, j));
+                return t;
             }
 
             @Override
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 /**
  * Inserts tuples read from the child operator into the tableId specified in the
@@ -10,6 +11,9 @@ public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** Maximum number of child tuples buffered per call to insertTuples. */
+    static final int BATCH_SIZE = 1024;
+
     private TransactionId t;
     private OpIterator child;
     private int tableId;
@@ -77,20 +81,27 @@ public class Insert extends Operator {
      * @return A 1-field tuple containing the number of inserted records, or
      *         null if called more than once.
      * @see Database#getBufferPool
-     * @see BufferPool#insertTuple
+     * @see BufferPool#insertTuples
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // Done
         if (called)
             return null;
 
+        // Insert in batches, so that each page is locked and dirtied once per
+        // batch instead of once per tuple
         int cnt = 0;
+        ArrayList<Tuple> batch = new ArrayList<Tuple>(BATCH_SIZE);
         while (child.hasNext()) {
-            try {
-                Database.getBufferPool().insertTuple(t, tableId, child.next());
-                cnt++;
-            } catch (IOException e) {
-                throw new DbException(e.toString());
+            batch.add(child.next());
+            if (batch.size() == BATCH_SIZE || !child.hasNext()) {
+                try {
+                    Database.getBufferPool().insertTuples(t, tableId, batch.iterator());
+                } catch (IOException e) {
+                    throw new DbException(e.toString());
+                }
+                cnt += batch.size();
+                batch.clear();
             }
         }
         Tuple t = new Tuple(desc);
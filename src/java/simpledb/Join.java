@@ -126,6 +126,11 @@ public class Join extends Operator {
                 Tuple predicatingTuple2 = child2.next();
 
                 if(joinPredicate.filter(predicatingTuple1, predicatingTuple2)) {
+                    if (predicatingTuple1 instanceof BytesTuple && predicatingTuple2 instanceof BytesTuple) {
+                        cache.add(BytesTuple.concat(getTupleDesc(),
+                                (BytesTuple) predicatingTuple1, (BytesTuple) predicatingTuple2));
+                        continue;
+                    }
                     Tuple addingTuple = new Tuple(getTupleDesc());
                     int i = 0;
                     for (int j = 0; j != predicatingTuple1.getTupleDesc().numFields(); j++){
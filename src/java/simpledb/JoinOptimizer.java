@@ -233,6 +233,8 @@ public class JoinOptimizer {
 
         // Done
         //Replace the following
+        if (joins.isEmpty())
+            return joins;
         PlanCache planCache = new PlanCache();
 
         Set<Set<LogicalJoinNode>> nodeSets = null;
@@ -0,0 +1,588 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LockManager keeps the page-level shared and exclusive locks of the
+ * BufferPool.
+ * <p>
+ * Each page with a lock held or requested has its own lock object, with
+ * the set of transactions holding it and a queue of waiting requests. A
+ * request that must wait parks its thread, and is woken as soon as a
+ * release makes it grantable, rather than polling. Requests are granted
+ * in FIFO order, so a stream of readers cannot starve a writer: a new
+ * request waits behind any request already queued. The exception is an
+ * upgrade, a request for an exclusive lock by a transaction that already
+ * holds the lock shared, which goes ahead of every other waiter, since
+ * the transactions it waits for cannot finish before it is granted
+ * without risking a deadlock with the queue.
+ * <p>
+ * No monitor is shared by all pages: the locks are found in a concurrent
+ * map, and a shared lock on a page nobody holds or waits for exclusively
+ * is taken with a single compare-and-set, so readers of the same hot pages
+ * do not serialize.
+ * <p>
+ * Deadlocks are handled according to the {@link DeadlockMode}. By default
+ * they are detected: the lock manager keeps a {@link WaitsForGraph} of the
+ * waiting transactions, looks for a cycle through each request that has
+ * to wait, and aborts one transaction of the cycle, chosen according to
+ * the {@link Victim} policy. The mode and the policy can be set on the
+ * lock manager of the BufferPool, or by starting the JVM with the system
+ * properties <code>simpledb.deadlock</code> (one of "detect", "wound-wait",
+ * "wait-die" and "timeout") and <code>simpledb.deadlock.victim</code>
+ * ("youngest", "least-work" or "fewest-locks").
+ *
+ * @see BufferPool#getLockManager
+ * @Threadsafe
+ */
+public class LockManager {
+
+    /** The kinds of locks. */
+    public enum LockMode {
+        SHARED, EXCLUSIVE
+    }
+
+    /** The ways of dealing with deadlocks. */
+    public enum DeadlockMode {
+        /** Abort a transaction of each cycle of the waits-for graph. */
+        DETECT,
+        /**
+         * An older transaction aborts ("wounds") the younger transactions it
+         * waits for; a younger one waits for older ones. A wounded
+         * transaction that is not waiting aborts on its next lock request.
+         */
+        WOUND_WAIT,
+        /**
+         * An older transaction waits for younger ones; a younger one that
+         * would wait for an older one aborts ("dies") instead.
+         */
+        WAIT_DIE,
+        /**
+         * A transaction that waited for a random time between the
+         * {@link #setTimeout timeout} and three times that aborts; deadlocks
+         * are assumed rather than detected.
+         */
+        TIMEOUT
+    }
+
+    /** The transaction of a deadlock that is aborted under DETECT. */
+    public enum Victim {
+        /** The transaction that started last. */
+        YOUNGEST,
+        /** The transaction holding the fewest exclusive locks. */
+        LEAST_WORK,
+        /** The transaction holding the fewest locks. */
+        FEWEST_LOCKS
+    }
+
+    /** A request waiting in the queue of a lock. */
+    private static class Request {
+        final TransactionId tid;
+        final LockMode mode;
+        final boolean upgrade;
+        final Thread thread = Thread.currentThread();
+        volatile boolean granted = false;
+        /** Set when the transaction is chosen to be aborted. */
+        volatile boolean aborted = false;
+
+        Request(TransactionId tid, LockMode mode, boolean upgrade) {
+            this.tid = tid;
+            this.mode = mode;
+            this.upgrade = upgrade;
+        }
+
+        void wake() {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * The lock of one page. Shared locks are taken without the monitor of
+     * the lock, by a compare-and-set of word, for as long as nobody holds
+     * or waits for the lock exclusively; the transactions holding it this
+     * way are kept in readers. Everything else happens under the monitor,
+     * which first closes the fast path, and reopens it when the lock is
+     * uncontended again. The other fields are guarded by the monitor.
+     */
+    private static class Lock {
+        /** Set in word while shared locks must be taken under the monitor. */
+        static final int CLOSED = 1 << 30;
+
+        final PageId pid;
+        /** The number of transactions in readers, and the CLOSED flag. */
+        final AtomicInteger word = new AtomicInteger();
+        /** The holders of shared locks taken on the fast path. */
+        final Set<TransactionId> readers = ConcurrentHashMap.newKeySet();
+        final LinkedHashSet<TransactionId> holders = new LinkedHashSet<TransactionId>();
+        boolean exclusive = false;
+        final ArrayDeque<Request> queue = new ArrayDeque<Request>();
+        /** Set once the lock is removed from the map; callers must look again. */
+        boolean dead = false;
+
+        Lock(PageId pid) {
+            this.pid = pid;
+        }
+
+        /**
+         * Takes a shared lock for tid on the fast path.
+         *
+         * @return false if the fast path is closed
+         */
+        boolean tryShared(TransactionId tid) {
+            // tid joins readers first, so that the monitor sees every
+            // reader counted in word once it has closed the fast path
+            readers.add(tid);
+            for (int w = word.get(); (w & CLOSED) == 0; w = word.get()) {
+                if (word.compareAndSet(w, w + 1))
+                    return true;
+            }
+            readers.remove(tid);
+            return false;
+        }
+
+        int fastReaders() {
+            return word.get() & ~CLOSED;
+        }
+
+        /** Closes the fast path. The caller holds the monitor. */
+        void close() {
+            word.getAndUpdate(w -> w | CLOSED);
+        }
+
+        /** Opens the fast path if it is safe to. The caller holds the monitor. */
+        void reopen() {
+            if (!exclusive && queue.isEmpty() && !dead)
+                word.getAndUpdate(w -> w & ~CLOSED);
+        }
+
+        /**
+         * Moves tid from readers to holders, if it took its lock on the fast
+         * path. The caller holds the monitor, and has closed the fast path.
+         */
+        void adopt(TransactionId tid) {
+            if (readers.remove(tid)) {
+                word.decrementAndGet();
+                holders.add(tid);
+            }
+        }
+
+        boolean grantable(TransactionId tid, LockMode mode, boolean upgrade) {
+            if (upgrade)
+                return holders.size() == 1 && fastReaders() == 0;
+            if (mode == LockMode.EXCLUSIVE)
+                return holders.isEmpty() && fastReaders() == 0;
+            return !exclusive;
+        }
+    }
+
+    /**
+     * What the lock manager knows about a transaction with locks. The pages
+     * it holds locks on are kept here as well as in the locks themselves, so
+     * that releasing them on commit or abort only visits its own locks.
+     */
+    private static class TxState {
+        /** The pages locked, and how. */
+        final ConcurrentHashMap<PageId, LockMode> held = new ConcurrentHashMap<PageId, LockMode>();
+        final AtomicInteger exclusiveLocks = new AtomicInteger();
+        /** The request the transaction waits on, if any. */
+        volatile Request waiting;
+        /** Set when an older transaction wounded this one (WOUND_WAIT). */
+        volatile boolean wounded;
+    }
+
+    private final ConcurrentHashMap<PageId, Lock> locks = new ConcurrentHashMap<PageId, Lock>();
+    private final ConcurrentHashMap<TransactionId, TxState> transactions =
+            new ConcurrentHashMap<TransactionId, TxState>();
+    private final WaitsForGraph waitsFor = new WaitsForGraph();
+
+    private volatile DeadlockMode deadlockMode =
+            DeadlockMode.valueOf(property("simpledb.deadlock", "detect"));
+    private volatile Victim victim =
+            Victim.valueOf(property("simpledb.deadlock.victim", "youngest"));
+    private volatile long timeoutMillis = 1000;
+
+    private static String property(String name, String def) {
+        return System.getProperty(name, def).toUpperCase().replace('-', '_');
+    }
+
+    /**
+     * @return the way deadlocks are dealt with
+     */
+    public DeadlockMode getDeadlockMode() {
+        return deadlockMode;
+    }
+
+    /**
+     * Sets the way deadlocks are dealt with, for the requests made from now
+     * on.
+     */
+    public void setDeadlockMode(DeadlockMode deadlockMode) {
+        this.deadlockMode = deadlockMode;
+    }
+
+    /**
+     * @return the policy choosing the transaction aborted in a deadlock
+     */
+    public Victim getVictim() {
+        return victim;
+    }
+
+    /**
+     * Sets the policy choosing the transaction aborted in a deadlock found
+     * under {@link DeadlockMode#DETECT}.
+     */
+    public void setVictim(Victim victim) {
+        this.victim = victim;
+    }
+
+    /**
+     * Sets the shortest time a request waits under
+     * {@link DeadlockMode#TIMEOUT}; the default is one second.
+     */
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private TxState state(TransactionId tid) {
+        return transactions.computeIfAbsent(tid, k -> new TxState());
+    }
+
+    /** Adds tid to the holders of lock. The caller holds its monitor. */
+    private void grant(Lock lock, TransactionId tid, LockMode mode) {
+        TxState state = state(tid);
+        lock.holders.add(tid);
+        state.held.put(lock.pid, mode);
+        if (mode == LockMode.EXCLUSIVE && !lock.exclusive) {
+            lock.exclusive = true;
+            state.exclusiveLocks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Grants the requests at the head of the queue of lock for as long as
+     * they are grantable, wakes their threads, and brings the waits-for
+     * edges of the requests left up to date. The caller holds the monitor
+     * of lock.
+     */
+    private void grantWaiters(Lock lock) {
+        while (!lock.queue.isEmpty()) {
+            Request r = lock.queue.peekFirst();
+            if (!lock.grantable(r.tid, r.mode, r.upgrade))
+                break;
+            lock.queue.pollFirst();
+            grant(lock, r.tid, r.mode);
+            r.granted = true;
+            waitsFor.remove(r.tid);
+            r.wake();
+        }
+        updateWaits(lock);
+        lock.reopen();
+    }
+
+    /**
+     * Returns the transactions the request r waits for: the holders of
+     * lock and the transactions queued ahead of r. The caller holds the
+     * monitor of lock.
+     */
+    private Set<TransactionId> blockers(Lock lock, Request r) {
+        HashSet<TransactionId> blockers = new HashSet<TransactionId>(lock.holders);
+        blockers.addAll(lock.readers);
+        for (Request ahead : lock.queue) {
+            if (ahead == r)
+                break;
+            blockers.add(ahead.tid);
+        }
+        blockers.remove(r.tid);
+        return blockers;
+    }
+
+    /** Replaces the waits-for edges of every request queued on lock. */
+    private void updateWaits(Lock lock) {
+        if (deadlockMode != DeadlockMode.DETECT)
+            return;
+        for (Request r : lock.queue)
+            waitsFor.setEdges(r.tid, blockers(lock, r));
+    }
+
+    /**
+     * Acquires a lock on page pid for transaction tid, waiting for
+     * conflicting locks to be released.
+     *
+     * @throws TransactionAbortedException if the transaction has to be
+     *             aborted to resolve or prevent a deadlock, or the thread
+     *             was interrupted while waiting
+     */
+    public void acquire(TransactionId tid, PageId pid, LockMode mode)
+            throws TransactionAbortedException {
+        DeadlockMode deadlockMode = this.deadlockMode;
+        TxState state = state(tid);
+        if (state.wounded)
+            throw new TransactionAbortedException();
+
+        // only the thread of tid changes what tid holds
+        LockMode held = state.held.get(pid);
+        if (held == LockMode.EXCLUSIVE || (held != null && mode == LockMode.SHARED))
+            return;
+
+        Lock lock = locks.computeIfAbsent(pid, k -> new Lock(k));
+        if (mode == LockMode.SHARED && lock.tryShared(tid)) {
+            state.held.put(pid, mode);
+            return;
+        }
+
+        Request request;
+        while (true) {
+            synchronized (lock) {
+                if (lock.dead) {
+                    lock = locks.computeIfAbsent(pid, k -> new Lock(k));
+                    continue;
+                }
+                lock.close();
+
+                if (held != null) {
+                    lock.adopt(tid);
+                    if (lock.grantable(tid, mode, true)) {
+                        grant(lock, tid, mode);
+                        return;
+                    }
+                    request = new Request(tid, mode, true);
+                    lock.queue.addFirst(request);
+                } else if (lock.queue.isEmpty() && lock.grantable(tid, mode, false)) {
+                    grant(lock, tid, mode);
+                    lock.reopen();
+                    return;
+                } else {
+                    request = new Request(tid, mode, false);
+                    lock.queue.addLast(request);
+                }
+                state.waiting = request;
+                try {
+                    resolve(lock, request, deadlockMode);
+                } catch (TransactionAbortedException e) {
+                    state.waiting = null;
+                    cancel(pid, lock, request);
+                    throw e;
+                }
+                break;
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                timeoutMillis + ThreadLocalRandom.current().nextLong(2 * timeoutMillis + 1));
+        try {
+            // wounded is checked as well, in case the transaction was wounded
+            // before its request was published in state.waiting
+            while (!request.aborted && !state.wounded && !request.granted) {
+                if (deadlockMode == DeadlockMode.TIMEOUT) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0)
+                        throw new TransactionAbortedException();
+                    LockSupport.parkNanos(this, left);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new TransactionAbortedException();
+                }
+            }
+            // an aborted transaction may have been granted the lock at the
+            // same time; it is released with the other locks on abort
+            if (request.aborted || state.wounded)
+                throw new TransactionAbortedException();
+        } finally {
+            if (!request.granted) {
+                synchronized (lock) {
+                    cancel(pid, lock, request);
+                }
+            }
+            state.waiting = null;
+        }
+    }
+
+    /**
+     * Applies deadlockMode to request, which has just been queued on lock.
+     * The caller holds the monitor of lock.
+     *
+     * @throws TransactionAbortedException if the requesting transaction must
+     *             abort
+     */
+    private void resolve(Lock lock, Request request, DeadlockMode deadlockMode)
+            throws TransactionAbortedException {
+        long age = request.tid.getId();
+        switch (deadlockMode) {
+        case DETECT:
+            updateWaits(lock);
+            List<TransactionId> cycle;
+            while ((cycle = waitsFor.findCycle(request.tid)) != null) {
+                TransactionId v = chooseVictim(cycle);
+                if (v.equals(request.tid))
+                    throw new TransactionAbortedException();
+                abort(v);
+            }
+            break;
+        case WOUND_WAIT:
+            for (TransactionId t : blockers(lock, request)) {
+                if (t.getId() > age)
+                    abort(t);
+            }
+            break;
+        case WAIT_DIE:
+            for (TransactionId t : blockers(lock, request)) {
+                if (t.getId() < age)
+                    throw new TransactionAbortedException();
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Marks tid to be aborted, waking it if it waits for a lock. A
+     * transaction that does not wait aborts on its next request.
+     */
+    private void abort(TransactionId tid) {
+        waitsFor.remove(tid);
+        TxState state = transactions.get(tid);
+        if (state == null)
+            return;
+        state.wounded = true;
+        Request r = state.waiting;
+        if (r != null) {
+            r.aborted = true;
+            r.wake();
+        }
+    }
+
+    /**
+     * Returns the transaction of cycle to abort, according to the victim
+     * policy; ties go to the youngest.
+     */
+    private TransactionId chooseVictim(List<TransactionId> cycle) {
+        TransactionId best = null;
+        int bestScore = 0;
+        for (TransactionId t : cycle) {
+            TxState s = transactions.get(t);
+            int score = s == null ? 0
+                    : victim == Victim.LEAST_WORK ? s.exclusiveLocks.get()
+                    : victim == Victim.FEWEST_LOCKS ? s.held.size() : 0;
+            if (best == null || score < bestScore
+                    || (score == bestScore && t.getId() > best.getId())) {
+                best = t;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Takes a request that will not be granted out of the queue of lock,
+     * unless it was granted in the meantime. The caller holds the monitor of
+     * lock.
+     */
+    private void cancel(PageId pid, Lock lock, Request request) {
+        if (request.granted)
+            return;
+        waitsFor.remove(request.tid);
+        if (lock.queue.remove(request)) {
+            // the requests behind this one may be grantable now
+            grantWaiters(lock);
+        }
+        retire(pid, lock);
+    }
+
+    /**
+     * Removes lock from the map if nobody holds or waits for it, and
+     * otherwise reopens its fast path if it can. The caller holds its
+     * monitor.
+     */
+    private void retire(PageId pid, Lock lock) {
+        int w = lock.word.get();
+        if (lock.holders.isEmpty() && lock.queue.isEmpty() && (w & ~Lock.CLOSED) == 0
+                && lock.word.compareAndSet(w, Lock.CLOSED)) {
+            lock.dead = true;
+            locks.remove(pid, lock);
+        } else {
+            lock.reopen();
+        }
+    }
+
+    /**
+     * Releases the lock tid holds on page pid, granting it to the waiters
+     * it was blocking.
+     *
+     * @return false if tid held no lock on the page
+     */
+    public boolean release(TransactionId tid, PageId pid) {
+        Lock lock = locks.get(pid);
+        if (lock == null)
+            return false;
+        TxState state = transactions.get(tid);
+        if (lock.readers.remove(tid)) {
+            if (state != null)
+                state.held.remove(pid);
+            int w = lock.word.decrementAndGet();
+            // when the fast path is closed, the waiters may be grantable and
+            // their waits-for edges are stale; when the last reader leaves,
+            // the lock may be retired
+            if ((w & Lock.CLOSED) != 0 || w == 0) {
+                synchronized (lock) {
+                    grantWaiters(lock);
+                    retire(pid, lock);
+                }
+            }
+            return true;
+        }
+        synchronized (lock) {
+            if (!lock.holders.remove(tid))
+                return false;
+            if (state != null)
+                state.held.remove(pid);
+            if (lock.holders.isEmpty()) {
+                if (lock.exclusive && state != null)
+                    state.exclusiveLocks.decrementAndGet();
+                lock.exclusive = false;
+            }
+            grantWaiters(lock);
+            retire(pid, lock);
+            return true;
+        }
+    }
+
+    /**
+     * @return true if tid holds a lock on page pid
+     */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        TxState state = transactions.get(tid);
+        return state != null && state.held.containsKey(pid);
+    }
+
+    /**
+     * Releases every lock tid holds, and forgets the transaction, which
+     * has committed or aborted. This takes time in the number of locks tid
+     * holds, not in the number of locks held by all transactions.
+     */
+    public void releaseAll(TransactionId tid) {
+        TxState state = transactions.get(tid);
+        if (state != null) {
+            for (PageId pid : state.held.keySet())
+                release(tid, pid);
+            transactions.remove(tid);
+        }
+        waitsFor.remove(tid);
+    }
+
+    /**
+     * @return the number of pages tid holds a lock on
+     */
+    public int lockCount(TransactionId tid) {
+        TxState state = transactions.get(tid);
+        return state == null ? 0 : state.held.size();
+    }
+}
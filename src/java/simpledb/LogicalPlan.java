@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.TreeSet;
 
 /**
  * LogicalPlan represents a logical query plan that has been through
@@ -271,6 +272,82 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** Record that the query reads the field with the qualified name fname
+     *  (alias.field) in used, the fields read of each table alias.  A name
+     *  that cannot be resolved to a single field makes the query read every
+     *  field of its table, which is recorded as null.
+     */
+    private void addUsedField(HashMap<String,TreeSet<Integer>> used, String fname) {
+        if (fname == null || fname.indexOf('.') < 0)
+            return;
+        String alias = fname.substring(0, fname.indexOf('.'));
+        String pureName = fname.substring(fname.indexOf('.') + 1);
+        TreeSet<Integer> fields = used.get(alias);
+        if (fields == null)
+            return;
+        TupleDesc td = Database.getCatalog().getTupleDesc(getTableId(alias));
+        try {
+            fields.add(td.fieldNameToIndex(fname));
+        } catch (NoSuchElementException e) {
+            try {
+                fields.add(td.fieldNameToIndex(pureName));
+            } catch (NoSuchElementException e2) {
+                used.put(alias, null);
+            }
+        }
+    }
+
+    /** Compute the fields that the select list, filters, joins, aggregate,
+     *  GROUP BY and ORDER BY of this plan read from each scanned table, so
+     *  that the scans can skip decoding the others.
+     *  @return the indexes of the fields read, for each table alias, or null
+     *    for an alias whose fields are all read
+     */
+    private HashMap<String,int[]> usedFields() {
+        HashMap<String,TreeSet<Integer>> used = new HashMap<String,TreeSet<Integer>>();
+        for (LogicalScanNode table : tables)
+            used.put(table.alias, new TreeSet<Integer>());
+
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.equals("null.*")) {
+                for (String alias : tableMap.keySet())
+                    used.put(alias, null);
+            } else if (si.fname.endsWith(".*")) {
+                used.put(si.fname.substring(0, si.fname.length() - 2), null);
+            } else {
+                addUsedField(used, si.fname);
+            }
+        }
+        for (LogicalFilterNode lf : filters)
+            addUsedField(used, lf.fieldQuantifiedName);
+        for (LogicalJoinNode lj : joins) {
+            addUsedField(used, lj.f1QuantifiedName);
+            addUsedField(used, lj.f2QuantifiedName);
+        }
+        if (hasAgg) {
+            addUsedField(used, aggField);
+            addUsedField(used, groupByField);
+        }
+        if (hasOrderBy)
+            addUsedField(used, oByField);
+
+        HashMap<String,int[]> result = new HashMap<String,int[]>();
+        for (Map.Entry<String,TreeSet<Integer>> e : used.entrySet()) {
+            TreeSet<Integer> fields = e.getValue();
+            if (fields == null
+                    || fields.size() == Database.getCatalog().getTupleDesc(getTableId(e.getKey())).numFields()) {
+                result.put(e.getKey(), null);
+                continue;
+            }
+            int[] columns = new int[fields.size()];
+            int i = 0;
+            for (int f : fields)
+                columns[i++] = f;
+            result.put(e.getKey(), columns);
+        }
+        return result;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned OpIterator will run as a part of
@@ -289,17 +366,27 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,SeqScan> scans = new HashMap<String,SeqScan>();
+        HashMap<String,int[]> usedFields;
+        try {
+            usedFields = usedFields();
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown table in FROM clause");
+        }
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
             SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 // only decode the fields the query reads
+                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias,
+                         usedFields.get(table.alias));
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
             
             subplanMap.put(table.alias,ss);
+            scans.put(table.alias, ss);
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(baseTableName, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
@@ -323,10 +410,11 @@ public class LogicalPlan {
             } catch (java.util.NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            try {
+                f = ftyp.fromString(lf.c);
+            } catch (java.text.ParseException e) {
+                throw new ParsingException("Bad constant in filter expression: " + e.getMessage());
+            }
 
             Predicate p = null;
             try {
@@ -335,6 +423,8 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
             subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            // let the scan skip pages without tuples that pass the filter
+            scans.get(lf.tableAlias).pushPredicate(p);
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -416,14 +506,17 @@ public class LogicalPlan {
             if (si.aggOp != null) {
                 outFields.add(groupByField!=null?1:0);
                 TupleDesc td = node.getTupleDesc();
-//                int  id;
+                int  id;
                 try {
-//                    id = 
-                    td.fieldNameToIndex(si.fname);
+                    id = td.fieldNameToIndex(si.fname);
                 } catch (NoSuchElementException e) {
                     throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
                 }
-                outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
+                try {
+                    outTypes.add(NumericAggregator.resultType(td.getFieldType(id), getAggOp(si.aggOp)));
+                } catch (IllegalArgumentException e) {
+                    throw new ParsingException(e.getMessage());
+                }
 
             } else if (hasAgg) {
                     if (groupByField == null) {
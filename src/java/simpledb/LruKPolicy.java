@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * LruKPolicy evicts the page whose K-th most recent reference is the
+ * oldest (O'Neil, O'Neil and Weikum, "The LRU-K Page Replacement
+ * Algorithm"). Pages referenced fewer than K times count as referenced
+ * infinitely long ago, and go first, least recently used first. A page
+ * read once by a scan therefore never displaces a page that is used over
+ * and over.
+ * <p>
+ * The reference times of evicted pages are kept for as many pages as the
+ * pool holds, so a page that comes back soon after its eviction is ranked
+ * by its whole history. Times come from a counter of references, not the
+ * clock. Pages are kept ordered by rank, so hits and evictions take time
+ * logarithmic in the size of the pool.
+ *
+ * @Threadsafe
+ */
+public class LruKPolicy implements EvictionPolicy {
+    /** Default number of references remembered per page. */
+    public static final int DEFAULT_K = 2;
+
+    private static class History {
+        final PageId pid;
+        /** The last K reference times, most recent first; 0 if none. */
+        final long[] times;
+
+        History(PageId pid, int k) {
+            this.pid = pid;
+            this.times = new long[k];
+        }
+
+        void reference(long now) {
+            System.arraycopy(times, 0, times, 1, times.length - 1);
+            times[0] = now;
+        }
+
+        boolean full() {
+            return times[times.length - 1] != 0;
+        }
+    }
+
+    private final int k;
+    private long clock = 0;
+    private final HashMap<PageId, History> resident = new HashMap<PageId, History>();
+    /** The resident pages, the one to evict first. */
+    private final TreeSet<History> ranked = new TreeSet<History>((a, b) -> {
+        // fewer than K references sorts first, by the last one; times are unique
+        if (a.full() != b.full())
+            return a.full() ? 1 : -1;
+        long ta = a.full() ? a.times[a.times.length - 1] : a.times[0];
+        long tb = b.full() ? b.times[b.times.length - 1] : b.times[0];
+        return Long.compare(ta, tb);
+    });
+    /** Histories of evicted pages, oldest eviction first. */
+    private final LinkedHashMap<PageId, History> retained;
+
+    /**
+     * @param k the number of references remembered per page
+     * @param capacity the number of pages the pool holds, which is also
+     *            the number of evicted pages whose history is kept
+     */
+    public LruKPolicy(int k, final int capacity) {
+        if (k < 1)
+            throw new IllegalArgumentException("k = " + k);
+        this.k = k;
+        this.retained = new LinkedHashMap<PageId, History>() {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<PageId, History> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        History h = resident.get(pid);
+        if (h == null) {
+            h = retained.remove(pid);
+            if (h == null)
+                h = new History(pid, k);
+            resident.put(pid, h);
+        } else {
+            ranked.remove(h);
+        }
+        h.reference(++clock);
+        ranked.add(h);
+    }
+
+    public synchronized void pageHit(PageId pid) {
+        History h = resident.get(pid);
+        if (h == null)
+            return;
+        ranked.remove(h);
+        h.reference(++clock);
+        ranked.add(h);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        History h = resident.remove(pid);
+        if (h != null)
+            ranked.remove(h);
+    }
+
+    public synchronized PageId evict(Evictable evictable) {
+        for (Iterator<History> it = ranked.iterator(); it.hasNext(); ) {
+            History h = it.next();
+            if (evictable.test(h.pid)) {
+                it.remove();
+                resident.remove(h.pid);
+                retained.put(h.pid, h);
+                return h.pid;
+            }
+        }
+        return null;
+    }
+}
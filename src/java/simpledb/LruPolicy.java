@@ -0,0 +1,41 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * LruPolicy evicts the least recently used page. It is simple, but a scan
+ * of a table larger than the pool replaces every page in the pool, however
+ * often the other pages are used.
+ *
+ * @Threadsafe
+ */
+public class LruPolicy implements EvictionPolicy {
+    /** The pages, least recently used first. */
+    private final LinkedHashSet<PageId> order = new LinkedHashSet<PageId>();
+
+    public synchronized void pageAdded(PageId pid) {
+        order.remove(pid);
+        order.add(pid);
+    }
+
+    public synchronized void pageHit(PageId pid) {
+        if (order.remove(pid))
+            order.add(pid);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        order.remove(pid);
+    }
+
+    public synchronized PageId evict(Evictable evictable) {
+        for (Iterator<PageId> it = order.iterator(); it.hasNext(); ) {
+            PageId pid = it.next();
+            if (evictable.test(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,221 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Knows how to compute some aggregate over a set of LongFields, DoubleFields
+ * or DateFields. The running value of each group is kept in a primitive
+ * long or double, so merging a tuple allocates nothing once its group
+ * exists.
+ */
+public class NumericAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int gbfield, afield;
+    private final Type atype;
+    private final Op op;
+    private final Map<Field, Group> groups;
+    private final TupleDesc td;
+
+    /** The running aggregate of one group. */
+    private static class Group {
+        final Field key;
+        long lvalue;
+        double dvalue;
+        int count = 0;
+
+        Group(Field key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Returns the type of the values computed by an aggregate.
+     *
+     * @param atype the type of the aggregate field
+     * @param what the aggregation operator
+     * @return INT_TYPE for COUNT; the type of the field for MIN and MAX; and
+     *         LONG_TYPE or DOUBLE_TYPE for SUM and AVG over longs or doubles
+     * @throws IllegalArgumentException if what cannot be computed over atype
+     */
+    public static Type resultType(Type atype, Op what) {
+        switch (what) {
+        case COUNT:
+            return Type.INT_TYPE;
+        case MIN:
+        case MAX:
+            return atype;
+        case SUM:
+        case AVG:
+            if (atype == Type.LONG_TYPE || atype == Type.DOUBLE_TYPE)
+                return atype;
+            if (atype == Type.INT_TYPE)
+                return Type.INT_TYPE;
+            break;
+        default:
+            break;
+        }
+        throw new IllegalArgumentException("cannot compute " + what + " over " + atype);
+    }
+
+    /**
+     * Aggregate constructor
+     *
+     * @param gbfield
+     *            the 0-based index of the group-by field in the tuple, or
+     *            NO_GROUPING if there is no grouping
+     * @param gbfieldtype
+     *            the type of the group by field (e.g., Type.INT_TYPE), or null
+     *            if there is no grouping
+     * @param afield
+     *            the 0-based index of the aggregate field in the tuple
+     * @param atype
+     *            the type of the aggregate field: LONG_TYPE, DOUBLE_TYPE or
+     *            DATE_TYPE
+     * @param what
+     *            the aggregation operator
+     * @throws IllegalArgumentException if what cannot be computed over atype
+     */
+    public NumericAggregator(int gbfield, Type gbfieldtype, int afield, Type atype, Op what) {
+        if (atype != Type.LONG_TYPE && atype != Type.DOUBLE_TYPE && atype != Type.DATE_TYPE)
+            throw new IllegalArgumentException("not a long, double or date field: " + atype);
+        Type rtype = resultType(atype, what);
+        this.gbfield = gbfield;
+        this.afield = afield;
+        this.atype = atype;
+        this.op = what;
+        this.td = (gbfield == NO_GROUPING)
+                ? new TupleDesc(new Type[] { rtype })
+                : new TupleDesc(new Type[] { gbfieldtype, rtype });
+        this.groups = new HashMap<Field, Group>();
+    }
+
+    /**
+     * Merge a new tuple into the aggregate, grouping as indicated in the
+     * constructor
+     *
+     * @param tup
+     *            the Tuple containing an aggregate field and a group-by field
+     */
+    public void mergeTupleIntoGroup(Tuple tup) {
+        Field key = gbfield == NO_GROUPING ? null : tup.getField(gbfield);
+        Group g = groups.get(key);
+        boolean first = g == null;
+        if (first) {
+            g = new Group(key);
+            groups.put(key, g);
+        }
+        g.count++;
+
+        Field f = tup.getField(afield);
+        if (atype == Type.DOUBLE_TYPE) {
+            double v = ((DoubleField) f).getValue();
+            switch (op) {
+            case MIN:
+                g.dvalue = first ? v : Math.min(g.dvalue, v);
+                break;
+            case MAX:
+                g.dvalue = first ? v : Math.max(g.dvalue, v);
+                break;
+            case SUM:
+            case AVG:
+                g.dvalue += v;
+                break;
+            default:
+                break;
+            }
+        } else {
+            long v = atype == Type.LONG_TYPE ? ((LongField) f).getValue() : ((DateField) f).getValue();
+            switch (op) {
+            case MIN:
+                g.lvalue = first ? v : Math.min(g.lvalue, v);
+                break;
+            case MAX:
+                g.lvalue = first ? v : Math.max(g.lvalue, v);
+                break;
+            case SUM:
+            case AVG:
+                g.lvalue += v;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private Field result(Group g) {
+        switch (op) {
+        case COUNT:
+            return new IntField(g.count);
+        case AVG:
+            if (atype == Type.DOUBLE_TYPE)
+                return new DoubleField(g.dvalue / g.count);
+            return new LongField(g.lvalue / g.count);
+        default:
+            if (atype == Type.DOUBLE_TYPE)
+                return new DoubleField(g.dvalue);
+            if (atype == Type.DATE_TYPE)
+                return new DateField(g.lvalue);
+            return new LongField(g.lvalue);
+        }
+    }
+
+    /**
+     * Create a OpIterator over group aggregate results.
+     *
+     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
+     *         if using group, or a single (aggregateVal) if no grouping. The
+     *         aggregateVal is determined by the type of aggregate specified in
+     *         the constructor.
+     */
+    public OpIterator iterator() {
+        ArrayList<Tuple> resultList = new ArrayList<Tuple>();
+        for (Group g : groups.values()) {
+            Tuple t = new Tuple(td);
+            if (gbfield == NO_GROUPING) {
+                t.setField(0, result(g));
+            } else {
+                t.setField(0, g.key);
+                t.setField(1, result(g));
+            }
+            resultList.add(t);
+        }
+
+        return new OpIterator() {
+            private static final long serialVersionUID = 1L;
+            private Iterator<Tuple> iter;
+
+            public void open() throws DbException, TransactionAbortedException {
+                iter = resultList.iterator();
+            }
+
+            public TupleDesc getTupleDesc() {
+                return td;
+            }
+
+            public boolean hasNext() throws TransactionAbortedException, DbException {
+                return iter.hasNext();
+            }
+
+            public Tuple next() throws NoSuchElementException,
+                    TransactionAbortedException, DbException {
+                return iter.next();
+            }
+
+            public void close() {
+                iter = null;
+            }
+
+            public void rewind() throws DbException, NoSuchElementException,
+                    TransactionAbortedException {
+                close();
+                open();
+            }
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -46,6 +48,17 @@ public interface Page {
 
     public byte[] getPageData();
 
+  /**
+   * Writes the same bytes as {@link #getPageData} into buf at its current
+   * position, advancing the position. Lets callers serialize into a buffer
+   * they reuse instead of allocating a new array for every page.
+   *
+   * @param buf the buffer to write to; must have at least a page of space
+   */
+    public default void writePageData(ByteBuffer buf) {
+        buf.put(getPageData());
+    }
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
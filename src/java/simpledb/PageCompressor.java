@@ -0,0 +1,167 @@
+package simpledb;
+
+/**
+ * PageCompressor is a small LZ77 block compressor in the style of LZ4, used
+ * to store pages of a {@link CompressedHeapFile}. It favours speed over
+ * ratio: matches are found through a single hash table probe, and
+ * decompression is a plain copy loop.
+ * <p>
+ * A compressed block is a sequence of runs. Each run starts with a token
+ * byte whose high four bits hold the number of literal bytes and whose low
+ * four bits hold the match length minus {@link #MIN_MATCH}; a nibble of 15
+ * is followed by extra length bytes, each adding up to 255. The token is
+ * followed by the literal bytes and, unless this is the last run, by a two
+ * byte little-endian offset back to the start of the match.
+ */
+public class PageCompressor {
+    /** Shortest match that is encoded as a back reference. */
+    static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+
+    private PageCompressor() {
+    }
+
+    /**
+     * @return the largest number of bytes compressing len bytes can produce
+     */
+    public static int maxCompressedLength(int len) {
+        return len + len / 255 + 16;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int v) {
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /** Writes the extra bytes of a length that did not fit in its nibble. */
+    private static int writeLength(byte[] dst, int pos, int len) {
+        while (len >= 255) {
+            dst[pos++] = (byte) 255;
+            len -= 255;
+        }
+        dst[pos++] = (byte) len;
+        return pos;
+    }
+
+    /**
+     * Writes one run: the literals src[anchor, anchor+litLen) followed by a
+     * match of matchLen bytes at offset back, or no match if matchLen is 0.
+     */
+    private static int writeRun(byte[] src, int anchor, int litLen, int offset, int matchLen,
+            byte[] dst, int pos) {
+        int tokenPos = pos++;
+        int token = Math.min(litLen, 15) << 4;
+        if (litLen >= 15)
+            pos = writeLength(dst, pos, litLen - 15);
+        System.arraycopy(src, anchor, dst, pos, litLen);
+        pos += litLen;
+
+        if (matchLen > 0) {
+            dst[pos++] = (byte) offset;
+            dst[pos++] = (byte) (offset >>> 8);
+            int ml = matchLen - MIN_MATCH;
+            token |= Math.min(ml, 15);
+            if (ml >= 15)
+                pos = writeLength(dst, pos, ml - 15);
+        }
+        dst[tokenPos] = (byte) token;
+        return pos;
+    }
+
+    /**
+     * Compresses src into dst.
+     *
+     * @param src the bytes to compress
+     * @param dst the output buffer; must hold at least
+     *            {@link #maxCompressedLength(int)} bytes
+     * @return the number of bytes written to dst
+     */
+    public static int compress(byte[] src, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        java.util.Arrays.fill(table, -1);
+
+        int pos = 0;
+        int anchor = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= src.length) {
+            int v = readInt(src, i);
+            int h = hash(v);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != v) {
+                i++;
+                continue;
+            }
+
+            int len = MIN_MATCH;
+            while (i + len < src.length && src[ref + len] == src[i + len])
+                len++;
+            pos = writeRun(src, anchor, i - anchor, i - ref, len, dst, pos);
+            i += len;
+            anchor = i;
+        }
+        // the last run only holds literals
+        return writeRun(src, anchor, src.length - anchor, 0, 0, dst, pos);
+    }
+
+    /**
+     * Decompresses a block produced by {@link #compress}.
+     *
+     * @param src the buffer holding the compressed block
+     * @param off the offset of the block in src
+     * @param len the length of the block
+     * @param dst the output buffer, which must be exactly the size of the
+     *            uncompressed data
+     * @throws IllegalArgumentException if the block is corrupt or does not
+     *             decompress to dst.length bytes
+     */
+    public static void decompress(byte[] src, int off, int len, byte[] dst) {
+        int end = off + len;
+        int pos = 0;
+        int i = off;
+        try {
+            while (i < end) {
+                int token = src[i++] & 0xFF;
+                int litLen = token >>> 4;
+                if (litLen == 15) {
+                    int b;
+                    do {
+                        b = src[i++] & 0xFF;
+                        litLen += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, i, dst, pos, litLen);
+                i += litLen;
+                pos += litLen;
+                if (i >= end)
+                    break;
+
+                int offset = (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8;
+                i += 2;
+                int matchLen = (token & 0x0F);
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[i++] & 0xFF;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                if (offset == 0 || offset > pos)
+                    throw new IllegalArgumentException("invalid match offset " + offset);
+                // matches may overlap the bytes they produce, so copy bytewise
+                for (int k = 0; k < matchLen; k++, pos++)
+                    dst[pos] = dst[pos - offset];
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("corrupt compressed block", e);
+        }
+        if (pos != dst.length)
+            throw new IllegalArgumentException("compressed block has " + pos + " bytes, expected "
+                    + dst.length);
+    }
+}
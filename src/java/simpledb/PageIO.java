@@ -0,0 +1,37 @@
+package simpledb;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PageIO owns the pool of I/O threads that run asynchronous page reads
+ * (see {@link DbFile#readPageAsync}). Running reads on a few dedicated
+ * threads lets the BufferPool keep several reads outstanding, for example
+ * for read-ahead, while transactions wait only for the pages they need.
+ * <p>
+ * The number of threads is {@link #DEFAULT_THREADS}, or the value of the
+ * <code>simpledb.io.threads</code> system property. The threads are daemon
+ * threads, so they never keep the JVM alive.
+ */
+public class PageIO {
+    /** Default number of I/O threads. */
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final ExecutorService ioThreads = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger("simpledb.io.threads", DEFAULT_THREADS)), r -> {
+                Thread t = new Thread(r, "simpledb-page-io");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private PageIO() {
+    }
+
+    /**
+     * @return the executor that runs page reads
+     */
+    public static Executor executor() {
+        return ioThreads;
+    }
+}
@@ -0,0 +1,53 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * The on-disk page formats a HeapFile can use. The layout is chosen per
+ * table when its HeapFile is created, and all pages of the file share it.
+ * Every layout accepts the all-zero page returned by
+ * {@link HeapPage#createEmptyPageData()} as an empty page.
+ */
+public enum PageLayout {
+    /**
+     * Fixed-size slots, each holding one tuple of {@link TupleDesc#getSize()}
+     * bytes.
+     * @see HeapPage
+     */
+    ROW() {
+        @Override
+        public HeapFilePage createPage(HeapPageId id, byte[] data) throws IOException {
+            return new HeapPage(id, data, false);
+        }
+    },
+    /**
+     * Slotted pages with a slot directory, storing strings in only as many
+     * bytes as they need.
+     * @see SlottedHeapPage
+     */
+    SLOTTED() {
+        @Override
+        public HeapFilePage createPage(HeapPageId id, byte[] data) throws IOException {
+            return new SlottedHeapPage(id, data, false);
+        }
+    },
+    /**
+     * The slots of a HeapPage with the values of each field grouped into
+     * a minipage, so scans of a few fields only decode those fields.
+     * @see PaxHeapPage
+     */
+    PAX() {
+        @Override
+        public HeapFilePage createPage(HeapPageId id, byte[] data) throws IOException {
+            return new PaxHeapPage(id, data, false);
+        }
+    };
+
+    /**
+     * Builds a page of this layout from the bytes read from disk.
+     *
+     * @param id the id of the page
+     * @param data the raw page data; the page takes ownership of it
+     */
+    public abstract HeapFilePage createPage(HeapPageId id, byte[] data) throws IOException;
+}
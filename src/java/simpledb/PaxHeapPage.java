@@ -0,0 +1,77 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * PaxHeapPage is a HeapPage stored in the PAX (Partition Attributes Across)
+ * format. It has the same header and the same number of slots as a
+ * HeapPage, but instead of storing each tuple contiguously, the values of
+ * each field are grouped into a minipage: the header is followed by the
+ * values of field 0 for every slot, then the values of field 1 for every
+ * slot, and so on.
+ * <p>
+ * Scans that only read a few fields of a wide table, through
+ * {@link #iterator(int[])}, then only touch the minipages of those fields.
+ *
+ * @see HeapPage
+ * @see PageLayout#PAX
+ */
+public class PaxHeapPage extends HeapPage {
+
+    /** Offset of the minipage of each field. */
+    private final int columnOffsets[];
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk.
+     * The header is the same as that of a HeapPage (see
+     * {@link HeapPage#HeapPage}); the minipage of field j starts after the
+     * minipages of fields 0 to j-1, each of which holds one value per slot.
+     *
+     * @see Database#getCatalog
+     * @see BufferPool#getPageSize()
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a PaxHeapPage, taking ownership of data unless copy is true.
+     *
+     * @see HeapPage#HeapPage(HeapPageId, byte[], boolean)
+     */
+    PaxHeapPage(HeapPageId id, byte[] data, boolean copy) throws IOException {
+        super(id, data, copy);
+        columnOffsets = new int[td.numFields()];
+        if (columnOffsets.length > 0)
+            columnOffsets[0] = header.length;
+        for (int j=1; j<columnOffsets.length; j++)
+            columnOffsets[j] = columnOffsets[j-1] + numSlots * fieldLen(j-1);
+    }
+
+    @Override
+    HeapPage copyOf(byte[] data) throws IOException {
+        return new PaxHeapPage(pid, data, false);
+    }
+
+    /** The fields of a tuple are spread over the minipages. */
+    @Override
+    boolean rowBytes() {
+        return false;
+    }
+
+    /**
+     * @return the offset in data of field fieldIndex of the tuple in slot
+     *         slotId, within the minipage of that field.
+     */
+    @Override
+    int fieldOffset(int slotId, int fieldIndex) {
+        return columnOffsets[fieldIndex] + slotId * fieldLen(fieldIndex);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    @Override
+    public PaxHeapPage getBeforeImage() {
+        return (PaxHeapPage) super.getBeforeImage();
+    }
+}
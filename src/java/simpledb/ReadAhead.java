@@ -0,0 +1,101 @@
+package simpledb;
+
+/**
+ * ReadAhead detects sequential page access by a scan and asks a background
+ * I/O thread to load the following pages into the BufferPool, so the scan
+ * finds them cached instead of waiting for each read.
+ * <p>
+ * Each scan owns one ReadAhead and reports every page it visits through
+ * {@link #accessed}. After {@link #getTrigger()} consecutive pages have been
+ * visited in order, the next {@link #getWindow()} pages are prefetched,
+ * and the window is topped up as the scan moves on. Any jump resets the
+ * detection.
+ * <p>
+ * Prefetched pages are loaded through {@link BufferPool#prefetchPage},
+ * which takes no locks; the scan still locks each page when it reads it.
+ * Read-ahead is off by default. It is enabled with {@link #setWindow} or by
+ * starting the JVM with the system properties
+ * <code>simpledb.readahead.window</code> and
+ * <code>simpledb.readahead.trigger</code>.
+ *
+ * @see HeapFile#iterator
+ */
+public class ReadAhead {
+    /** Default number of pages read in order before prefetching starts. */
+    public static final int DEFAULT_TRIGGER = 2;
+
+    private static volatile int window =
+            Math.max(0, Integer.getInteger("simpledb.readahead.window", 0));
+    private static volatile int trigger =
+            Math.max(1, Integer.getInteger("simpledb.readahead.trigger", DEFAULT_TRIGGER));
+
+    private final int tableId;
+    private int lastPage = -1;
+    private int sequential = 0;
+    private int prefetchedUpTo = -1;
+
+    /**
+     * Creates the read-ahead state of one scan over the specified table.
+     *
+     * @param tableId the id of the HeapFile being scanned
+     */
+    public ReadAhead(int tableId) {
+        this.tableId = tableId;
+    }
+
+    /**
+     * @return the number of pages prefetched ahead of a sequential scan
+     */
+    public static int getWindow() {
+        return window;
+    }
+
+    /**
+     * Sets the number of pages prefetched ahead of a sequential scan; 0
+     * disables read-ahead.
+     */
+    public static void setWindow(int window) {
+        ReadAhead.window = Math.max(0, window);
+    }
+
+    /**
+     * @return the number of pages read in order before prefetching starts
+     */
+    public static int getTrigger() {
+        return trigger;
+    }
+
+    /**
+     * Sets the number of pages that must be read in order before
+     * prefetching starts.
+     */
+    public static void setTrigger(int trigger) {
+        ReadAhead.trigger = Math.max(1, trigger);
+    }
+
+    /**
+     * Records that the scan is about to read page pgNo, and prefetches the
+     * pages after it if the scan is sequential.
+     *
+     * @param pgNo the page the scan reads
+     * @param numPages the number of pages in the file
+     */
+    public void accessed(int pgNo, int numPages) {
+        if (pgNo == lastPage + 1) {
+            sequential++;
+        } else if (pgNo != lastPage) {
+            sequential = 1;
+            prefetchedUpTo = pgNo;
+        }
+        lastPage = pgNo;
+
+        int w = window;
+        if (w == 0 || sequential < trigger)
+            return;
+        int last = Math.min(pgNo + w, numPages - 1);
+        BufferPool bufferPool = Database.getBufferPool();
+        for (int p = Math.max(prefetchedUpTo, pgNo) + 1; p <= last; p++)
+            bufferPool.prefetchPage(new HeapPageId(tableId, p));
+        prefetchedUpTo = Math.max(prefetchedUpTo, last);
+    }
+}
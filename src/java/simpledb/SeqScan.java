@@ -11,6 +11,8 @@ public class SeqScan implements OpIterator {
     private TransactionId tid;
     private int tableid;
     private String tableAlias;
+    private int[] columns;
+    private ArrayList<Predicate> predicates;
     private DbFileIterator tupleIt;
 
     private static final long serialVersionUID = 1L;
@@ -32,11 +34,64 @@ public class SeqScan implements OpIterator {
      *            tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan over the specified table that only reads
+     * some of its fields. The returned tuples have the full TupleDesc of the
+     * table, but fields that are not listed may be null; this lets heap
+     * files in the {@link PageLayout#PAX} layout skip decoding them.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table (see
+     *            {@link #SeqScan(TransactionId, int, String)}).
+     * @param columns
+     *            the indexes of the fields read by the operators above this
+     *            scan, or null to read every field.
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
         // some code goes here
         this.tid = tid;
         this.tableid = tableid;
         this.tableAlias = tableAlias;
-        this.tupleIt = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        this.columns = columns;
+        this.tupleIt = openFile(tableid);
+    }
+
+    /**
+     * @return an iterator over the table, reading only the scanned columns
+     *         if the table supports it
+     */
+    private DbFileIterator openFile(int tableid) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if ((columns != null || predicates != null) && file instanceof HeapFile)
+            return ((HeapFile) file).iterator(tid, columns, predicates);
+        return file.iterator(tid);
+    }
+
+    /**
+     * Tells the scan that the operators above it only want tuples that
+     * satisfy p, so that it may skip pages that hold none (see
+     * {@link HeapFile#iterator(TransactionId, int[], List)}). The scan may
+     * still return tuples that do not satisfy p. Must be called before the
+     * scan is opened. {@link LogicalPlan#physicalPlan} pushes the predicates
+     * of the filters it puts over a scan; operators never do it themselves,
+     * since a scan may be reused under other operators.
+     *
+     * @param p a predicate over the fields of the table
+     */
+    public void pushPredicate(Predicate p) {
+        if (predicates == null)
+            predicates = new ArrayList<Predicate>();
+        if (!predicates.contains(p)) {
+            predicates.add(p);
+            tupleIt = openFile(tableid);
+        }
     }
 
     /**
@@ -73,7 +128,9 @@ public class SeqScan implements OpIterator {
         // some code goes here
         this.tableid = tableid;
         this.tableAlias = tableAlias;
-        tupleIt = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        // the predicates are over the fields of the old table
+        predicates = null;
+        tupleIt = openFile(tableid);
     }
 
     public SeqScan(TransactionId tid, int tableId) {
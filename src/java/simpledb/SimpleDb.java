@@ -30,21 +30,17 @@ public class SimpleDb {
                 }
                 int index=0;
                 for (String s: typeStringAr) {
-                        if (s.toLowerCase().equals("int"))
-                            ts[index++]=Type.INT_TYPE;
-                        else if (s.toLowerCase().equals("string"))
-                                ts[index++]=Type.STRING_TYPE;
-                            else {
-                                System.err.println("Unknown type " + s);
-                                return;
-                            }
+                        ts[index] = Type.fromName(s);
+                        if (ts[index++] == null) {
+                            System.err.println("Unknown type " + s);
+                            return;
+                        }
                 }
                 if (args.length==5)
                     fieldSeparator=args[4].charAt(0);
             }
 
-            HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
-                        BufferPool.getPageSize(),numOfAttributes,ts,fieldSeparator);
+            new BulkLoader(ts, fieldSeparator).load(sourceTxtFile, targetDatFile);
 
         } catch (IOException e) {
                 throw new RuntimeException(e);
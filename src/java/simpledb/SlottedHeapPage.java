@@ -0,0 +1,396 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapPage is a HeapFile page format for tables with variable-length
+ * data. Unlike HeapPage, which gives every tuple {@link TupleDesc#getSize()}
+ * bytes, a string field here only takes two length bytes plus its
+ * characters, so tables of short strings fit many more tuples per page.
+ * <p>
+ * The page starts with a header of two ints, the number of entries in the
+ * slot directory and the offset where tuple data begins (0 for an empty
+ * page, meaning the end of the page). The slot directory follows, one entry
+ * per slot holding two unsigned shorts: the offset and length of the tuple,
+ * with offset 0 marking an empty slot. Tuples are packed from the end of the
+ * page towards the directory.
+ * <p>
+ * The slot number of a tuple is its tuple number in its RecordId, and it
+ * does not change when the page is compacted to reclaim the space of
+ * deleted tuples.
+ *
+ * @see HeapFile
+ * @see PageLayout#SLOTTED
+ */
+public class SlottedHeapPage implements HeapFilePage {
+
+    /** Bytes used by the page header: slot count and start of tuple data. */
+    static final int HEADER_SIZE = 8;
+    /** Bytes used by each entry of the slot directory. */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final byte data[];
+    private final ByteBuffer dataBuf;
+    private final int maxTupleSize;
+
+    /** Decoded tuples by slot, filled in on first access. */
+    private ArrayList<Tuple> tuples;
+
+    private TransactionId tid;
+
+    byte[] oldData;
+    private final Object oldDataLock=new Object();
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     * The page works on a copy of data; tuples are decoded from it on first
+     * access and modifications are written back to it immediately.
+     *
+     * @see Database#getCatalog
+     * @see BufferPool#getPageSize()
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a SlottedHeapPage, taking ownership of data unless copy is
+     * true.
+     *
+     * @see HeapPage#HeapPage(HeapPageId, byte[], boolean)
+     */
+    SlottedHeapPage(HeapPageId id, byte[] data, boolean copy) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        if (data.length != BufferPool.getPageSize())
+            throw new IOException("page data has " + data.length + " bytes, expected "
+                    + BufferPool.getPageSize());
+        if (data.length > 0xFFFF + 1)
+            throw new IOException("slotted pages cannot be larger than 64KB");
+        this.data = copy ? data.clone() : data;
+        this.dataBuf = ByteBuffer.wrap(this.data);
+
+        int max = 0;
+        for (int j = 0; j < td.numFields(); j++)
+            max += maxFieldSize(td.getFieldType(j));
+        this.maxTupleSize = max;
+
+        this.tuples = new ArrayList<Tuple>(Collections.nCopies(getNumSlots(), (Tuple) null));
+    }
+
+    private static int maxFieldSize(Type type) {
+        if (type == Type.STRING_TYPE)
+            return 2 + Type.STRING_LEN;
+        return type.getLen();
+    }
+
+    private static int fieldSize(Field f) {
+        if (f.getType() == Type.STRING_TYPE)
+            return 2 + Math.min(((StringField) f).getValue().length(), Type.STRING_LEN);
+        return f.getType().getLen();
+    }
+
+    /** @return the number of entries in the slot directory */
+    private int getNumSlots() {
+        return dataBuf.getInt(0);
+    }
+
+    /** @return the offset of the first byte of tuple data */
+    private int getDataStart() {
+        int start = dataBuf.getInt(4);
+        return start == 0 ? data.length : start;
+    }
+
+    private int getSlotOffset(int i) {
+        return dataBuf.getShort(HEADER_SIZE + i * SLOT_SIZE) & 0xFFFF;
+    }
+
+    private int getSlotLength(int i) {
+        return dataBuf.getShort(HEADER_SIZE + i * SLOT_SIZE + 2) & 0xFFFF;
+    }
+
+    private void setSlot(int i, int offset, int length) {
+        dataBuf.putShort(HEADER_SIZE + i * SLOT_SIZE, (short) offset);
+        dataBuf.putShort(HEADER_SIZE + i * SLOT_SIZE + 2, (short) length);
+    }
+
+    /** @return the number of bytes taken by live tuples */
+    private int getUsedBytes() {
+        int used = 0;
+        for (int i = 0; i < getNumSlots(); i++)
+            used += getSlotLength(i);
+        return used;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage(){
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData;
+            }
+            // no saved image: the page is unchanged since it was read or committed
+            return new SlottedHeapPage(pid, oldDataRef == null ? getPageData() : oldDataRef.clone(), false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        // the current content becomes the before image; it is only copied
+        // once the page is modified again
+        synchronized(oldDataLock)
+        {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Save the current content as the before image, unless it has already
+     * been saved since the page was read or last committed. Must be called
+     * before every modification of the page.
+     */
+    private void captureBeforeImage() {
+        synchronized(oldDataLock)
+        {
+            if (oldData == null)
+                oldData = getPageData();
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Decode the tuple in slot i, or return the already decoded copy.
+     * Returns null if the slot is empty.
+     */
+    private Tuple getTuple(int i) {
+        if (!isSlotUsed(i))
+            return null;
+        Tuple t = tuples.get(i);
+        if (t != null)
+            return t;
+
+        t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, i));
+        int offset = getSlotOffset(i);
+        for (int j = 0; j < td.numFields(); j++) {
+            Type type = td.getFieldType(j);
+            if (type == Type.STRING_TYPE) {
+                int len = dataBuf.getShort(offset) & 0xFFFF;
+                byte bs[] = new byte[len];
+                for (int k = 0; k < len; k++)
+                    bs[k] = data[offset + 2 + k];
+                t.setField(j, new StringField(new String(bs), Type.STRING_LEN));
+                offset += 2 + len;
+            } else {
+                t.setField(j, type.parse(dataBuf, offset));
+                offset += type.getLen();
+            }
+        }
+        tuples.set(i, t);
+        return t;
+    }
+
+    /**
+     * Serialize t into the page data starting at offset.
+     */
+    private void writeTuple(int offset, Tuple t) {
+        for (int j = 0; j < td.numFields(); j++) {
+            Field f = t.getField(j);
+            if (f.getType() == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                dataBuf.putShort(offset, (short) len);
+                for (int k = 0; k < len; k++)
+                    data[offset + 2 + k] = (byte) s.charAt(k);
+                offset += 2 + len;
+            } else {
+                f.serialize(dataBuf, offset);
+                offset += f.getType().getLen();
+            }
+        }
+    }
+
+    /**
+     * Move all live tuples to the end of the page so the free space between
+     * the slot directory and the tuple data is contiguous.
+     */
+    private void compact() {
+        byte[] copy = data.clone();
+        int end = data.length;
+        for (int i = 0; i < getNumSlots(); i++) {
+            if (!isSlotUsed(i))
+                continue;
+            int len = getSlotLength(i);
+            end -= len;
+            System.arraycopy(copy, getSlotOffset(i), data, end, len);
+            setSlot(i, end, len);
+        }
+        Arrays.fill(data, HEADER_SIZE + getNumSlots() * SLOT_SIZE, end, (byte) 0);
+        dataBuf.putInt(4, end);
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p>
+     * The invariant here is that it should be possible to pass the byte
+     * array generated by getPageData to the SlottedHeapPage constructor and
+     * have it produce an identical SlottedHeapPage object.
+     *
+     * @see #SlottedHeapPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    // see Page.java for javadocs
+    public void writePageData(ByteBuffer buf) {
+        buf.put(data);
+    }
+
+    /**
+     * Delete the specified tuple from the page. Its space is reclaimed the
+     * next time the page is compacted.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        int i = rid.getTupleNumber();
+        if (!rid.getPageId().equals(pid) || !isSlotUsed(i))
+            throw new DbException("failed to delete tuple");
+
+        captureBeforeImage();
+        setSlot(i, 0, 0);
+        tuples.set(i, null);
+
+        // drop empty entries at the end of the slot directory
+        int numSlots = getNumSlots();
+        while (numSlots > 0 && !isSlotUsed(numSlots - 1)) {
+            numSlots--;
+            tuples.remove(numSlots);
+        }
+        dataBuf.putInt(0, numSlots);
+    }
+
+    /**
+     * Adds the specified tuple to the page, reusing an empty slot if there
+     * is one; the tuple should be updated to reflect that it is now stored
+     * on this page.
+     * @throws DbException if the tuple does not fit on the page or tupledesc
+     *         is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("tuple desc does not match");
+
+        int len = 0;
+        for (int j = 0; j < td.numFields(); j++)
+            len += fieldSize(t.getField(j));
+
+        int numSlots = getNumSlots();
+        int slot = 0;
+        while (slot < numSlots && isSlotUsed(slot))
+            slot++;
+        int dirEnd = HEADER_SIZE + Math.max(numSlots, slot + 1) * SLOT_SIZE;
+        if (dirEnd + getUsedBytes() + len > data.length)
+            throw new DbException("page is full, failed to insert tuple");
+
+        captureBeforeImage();
+        if (getDataStart() - dirEnd < len)
+            compact();
+
+        int offset = getDataStart() - len;
+        writeTuple(offset, t);
+        if (slot == numSlots) {
+            dataBuf.putInt(0, numSlots + 1);
+            tuples.add(null);
+        }
+        setSlot(slot, offset, len);
+        dataBuf.putInt(4, offset);
+
+        t.setRecordId(new RecordId(pid, slot));
+        tuples.set(slot, t);
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.tid = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return tid;
+    }
+
+    /**
+     * Returns the number of tuples of the largest possible size that still
+     * fit on this page, each with a new slot directory entry. Shorter tuples
+     * may fit even when this returns 0.
+     */
+    public int getNumEmptySlots() {
+        int free = data.length - HEADER_SIZE - getNumSlots() * SLOT_SIZE - getUsedBytes();
+        return Math.max(0, free / (maxTupleSize + SLOT_SIZE));
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < getNumSlots() && getSlotOffset(i) != 0;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     * (note that this iterator shouldn't return tuples in empty slots!)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (index < getNumSlots() && !isSlotUsed(index))
+                    index++;
+                return index < getNumSlots();
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return getTuple(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,280 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * SparseIndex records, for each page of a clustered HeapFile, the smallest
+ * and largest value of the key field on that page. It is used to place new
+ * tuples next to tuples with similar keys, and to skip pages that cannot
+ * hold a tuple matching a predicate on the key.
+ * <p>
+ * The index is stored in a side file next to the heap file, one fixed-size
+ * entry per page: a flag byte that tells whether the range of the page is
+ * unknown, known or the page is known to be empty, then the serialized
+ * minimum and maximum. Pages past the end of the side file have no known
+ * range. Each change is written through to the file.
+ * <p>
+ * A range only ever widens when tuples are added to its page, and is not
+ * narrowed when tuples are deleted, so it always covers every key on the
+ * page, including the keys of uncommitted inserts.
+ *
+ * @see HeapFile#setClustered
+ * @Threadsafe
+ */
+public class SparseIndex {
+    private static final byte RANGE = 1;
+    private static final byte EMPTY = 2;
+
+    private final File f;
+    private final Type keyType;
+    private final int entrySize;
+    private FileChannel channel;
+    private ArrayList<Field> mins;
+    private ArrayList<Field> maxs;
+    /** The pages known to hold no tuples. */
+    private BitSet empty;
+
+    /**
+     * Opens the index stored in the specified file, creating it on the first
+     * update if it does not exist.
+     *
+     * @param f the file holding the index
+     * @param keyType the type of the key field
+     */
+    public SparseIndex(File f, Type keyType) {
+        this.f = f;
+        this.keyType = keyType;
+        this.entrySize = 1 + 2 * keyType.getLen();
+    }
+
+    /**
+     * @return the file holding the index
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * Orders two key values.
+     *
+     * @return a negative number, zero or a positive number as a is less
+     *         than, equal to or greater than b
+     */
+    public static int compare(Field a, Field b) {
+        if (a.compare(Predicate.Op.LESS_THAN, b))
+            return -1;
+        return a.compare(Predicate.Op.GREATER_THAN, b) ? 1 : 0;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+
+    private void load() throws IOException {
+        if (mins != null)
+            return;
+        mins = new ArrayList<Field>();
+        maxs = new ArrayList<Field>();
+        empty = new BitSet();
+        if (!f.exists())
+            return;
+
+        int n = (int) (f.length() / entrySize);
+        ByteBuffer buf = ByteBuffer.allocate(n * entrySize);
+        FileChannel fc = getChannel();
+        while (buf.hasRemaining() && fc.read(buf, buf.position()) >= 0)
+            ;
+        for (int i = 0; i < n; i++) {
+            int off = i * entrySize;
+            boolean known = buf.get(off) == RANGE;
+            mins.add(known ? keyType.parse(buf, off + 1) : null);
+            maxs.add(known ? keyType.parse(buf, off + 1 + keyType.getLen()) : null);
+            empty.set(i, buf.get(off) == EMPTY);
+        }
+    }
+
+    private void load0() {
+        try {
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the number of pages with an entry in the index
+     */
+    public synchronized int size() {
+        load0();
+        return mins.size();
+    }
+
+    /**
+     * @return true if page pgNo is known to hold no tuples
+     */
+    public synchronized boolean isEmpty(int pgNo) {
+        load0();
+        return empty.get(pgNo);
+    }
+
+    /**
+     * @return the smallest key on page pgNo, or null if the page has no
+     *         known range
+     */
+    public synchronized Field getMin(int pgNo) {
+        load0();
+        return pgNo < mins.size() ? mins.get(pgNo) : null;
+    }
+
+    /**
+     * @return the largest key on page pgNo, or null if the page has no
+     *         known range
+     */
+    public synchronized Field getMax(int pgNo) {
+        load0();
+        return pgNo < maxs.size() ? maxs.get(pgNo) : null;
+    }
+
+    /**
+     * Sets the range of page pgNo.
+     *
+     * @param min the smallest key on the page, or null if the page is empty
+     * @param max the largest key on the page
+     */
+    public synchronized void setRange(int pgNo, Field min, Field max) throws IOException {
+        load();
+        while (mins.size() <= pgNo) {
+            mins.add(null);
+            maxs.add(null);
+        }
+        mins.set(pgNo, min);
+        maxs.set(pgNo, min == null ? null : max);
+        empty.set(pgNo, min == null);
+
+        // entries left zero, as past the end of the file, are unknown
+        ByteBuffer entry = ByteBuffer.allocate(entrySize);
+        entry.put(0, min == null ? EMPTY : RANGE);
+        if (min != null) {
+            min.serialize(entry, 1);
+            max.serialize(entry, 1 + keyType.getLen());
+        }
+        FileChannel fc = getChannel();
+        while (entry.hasRemaining())
+            fc.write(entry, (long) pgNo * entrySize + entry.position());
+    }
+
+    /**
+     * Adds entries with an unknown range for the pages below numPages that
+     * have no entry, so that they are not taken for new pages.
+     */
+    public synchronized void markUnknown(int numPages) throws IOException {
+        load();
+        if (mins.size() >= numPages)
+            return;
+        ByteBuffer entries = ByteBuffer.allocate((numPages - mins.size()) * entrySize);
+        long offset = (long) mins.size() * entrySize;
+        FileChannel fc = getChannel();
+        while (entries.hasRemaining())
+            fc.write(entries, offset + entries.position());
+        while (mins.size() < numPages) {
+            mins.add(null);
+            maxs.add(null);
+        }
+    }
+
+    /**
+     * Widens the range of page pgNo to cover key, before a tuple with that
+     * key is added to the page.
+     */
+    public synchronized void include(int pgNo, Field key) throws IOException {
+        Field min = getMin(pgNo);
+        Field max = getMax(pgNo);
+        if (min != null && compare(min, key) <= 0 && compare(key, max) <= 0)
+            return;
+        // pages past the end of the index are new, and so empty
+        if (min == null && pgNo < mins.size() && !empty.get(pgNo))
+            return;
+        setRange(pgNo, min == null || compare(key, min) < 0 ? key : min,
+                max == null || compare(key, max) > 0 ? key : max);
+    }
+
+    /**
+     * Forgets the pages from numPages on, after the heap file was shortened
+     * to numPages pages.
+     */
+    public synchronized void truncate(int numPages) throws IOException {
+        load();
+        while (mins.size() > numPages) {
+            mins.remove(mins.size() - 1);
+            maxs.remove(maxs.size() - 1);
+        }
+        empty.clear(mins.size(), Math.max(mins.size(), empty.length()));
+        getChannel().truncate((long) mins.size() * entrySize);
+    }
+
+    /**
+     * Returns false if page pgNo cannot hold a key k for which
+     * <code>k op value</code> holds.
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate.Op op, Field value) {
+        Field min = getMin(pgNo);
+        Field max = getMax(pgNo);
+        if (min == null)
+            return !isEmpty(pgNo);
+        switch (op) {
+        case EQUALS:
+            return compare(min, value) <= 0 && compare(value, max) <= 0;
+        case GREATER_THAN:
+            return compare(max, value) > 0;
+        case GREATER_THAN_OR_EQ:
+            return compare(max, value) >= 0;
+        case LESS_THAN:
+            return compare(min, value) < 0;
+        case LESS_THAN_OR_EQ:
+            return compare(min, value) <= 0;
+        case NOT_EQUALS:
+            return compare(min, value) != 0 || compare(max, value) != 0;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Returns the pages a tuple with the specified key should go to, best
+     * first: the pages whose range covers the key, then the page with the
+     * closest range below it and the page with the closest range above it.
+     */
+    public synchronized List<Integer> pagesFor(Field key) {
+        load0();
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        int below = -1, above = -1;
+        for (int pgNo = 0; pgNo < mins.size(); pgNo++) {
+            Field min = mins.get(pgNo);
+            if (min == null)
+                continue;
+            Field max = maxs.get(pgNo);
+            if (compare(max, key) < 0) {
+                if (below < 0 || compare(max, maxs.get(below)) > 0)
+                    below = pgNo;
+            } else if (compare(min, key) > 0) {
+                if (above < 0 || compare(min, mins.get(above)) < 0)
+                    above = pgNo;
+            } else {
+                result.add(pgNo);
+            }
+        }
+        if (below >= 0)
+            result.add(below);
+        if (above >= 0)
+            result.add(above);
+        return result;
+    }
+}
@@ -0,0 +1,170 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * StringDictionary maps the values of the dictionary-encoded STRING_TYPE
+ * columns of a table to int codes. Pages of the table store the 4-byte code
+ * of each value instead of its {@link Type#STRING_LEN}+4 bytes, and decode
+ * it to a shared {@link DictStringField}, so equal values of a column are
+ * compared, hashed and grouped by code.
+ * <p>
+ * Codes are assigned per column in order of first use and never change or
+ * get reused, so a dictionary only grows. It is stored in its own file, one
+ * entry per code: the column index, the length of the string and its bytes.
+ * Each new entry is forced to disk before its code is returned, so a page
+ * can never be written with a code the dictionary does not know, and an
+ * entry left incomplete by a crash is dropped when the dictionary is opened.
+ *
+ * @see HeapFile#setDictionaryEncoded
+ */
+public class StringDictionary {
+
+    /** The codes of one column. */
+    private static class Column {
+        final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        volatile DictStringField[] fields = new DictStringField[16];
+        int size = 0;
+    }
+
+    private final File file;
+    private final Column[] columns;
+
+    /**
+     * Opens the dictionary stored in file, creating it if it does not exist.
+     *
+     * @param file the file holding the dictionary
+     * @param td the schema of the table
+     * @param encoded the indexes of the encoded columns, which must be of
+     *            type STRING_TYPE
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a column is not a string column
+     */
+    public StringDictionary(File file, TupleDesc td, int[] encoded) throws IOException {
+        this.file = file;
+        this.columns = new Column[td.numFields()];
+        for (int j : encoded) {
+            if (td.getFieldType(j) != Type.STRING_TYPE)
+                throw new IllegalArgumentException("column " + j + " is not a string column");
+            columns[j] = new Column();
+        }
+        if (!file.exists())
+            return;
+
+        long end = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int j = in.readInt();
+                byte[] bs = new byte[in.readUnsignedShort()];
+                in.readFully(bs);
+                if (j < 0 || j >= columns.length || columns[j] == null)
+                    throw new IOException("dictionary entry for column " + j + " that is not encoded");
+                add(j, new String(bs, "ISO-8859-1"));
+                end += 6 + bs.length;
+            }
+        } catch (EOFException e) {
+            // the end of the file, or an entry cut short by a crash in encode
+        } finally {
+            in.close();
+        }
+        if (file.length() > end) {
+            // no page uses the code of a partial entry, since encode had not
+            // returned it yet; drop it so new entries follow the last whole one
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                fc.truncate(end);
+                fc.force(false);
+            }
+        }
+    }
+
+    /**
+     * @return the file holding this dictionary
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if column j is dictionary encoded
+     */
+    public boolean isEncoded(int j) {
+        return j < columns.length && columns[j] != null;
+    }
+
+    /**
+     * @return the number of distinct values of column j
+     */
+    public synchronized int size(int j) {
+        return columns[j].size;
+    }
+
+    private int add(int j, String s) {
+        Column c = columns[j];
+        int code = c.size;
+        DictStringField[] fields = c.fields;
+        if (code == fields.length)
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        fields[code] = new DictStringField(this, j, code, s);
+        c.fields = fields;
+        c.codes.put(s, code);
+        c.size++;
+        return code;
+    }
+
+    /**
+     * Returns the code of value s of column j, adding s to the dictionary if
+     * it is new.
+     *
+     * @throws IOException if a new entry cannot be written
+     */
+    public synchronized int encode(int j, String s) throws IOException {
+        if (s.length() > Type.STRING_LEN)
+            s = s.substring(0, Type.STRING_LEN);
+        Integer code = columns[j].codes.get(s);
+        if (code != null)
+            return code;
+
+        byte[] bs = s.getBytes("ISO-8859-1");
+        ByteBuffer entry = ByteBuffer.allocate(6 + bs.length);
+        entry.putInt(j).putShort((short) bs.length).put(bs).flip();
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (entry.hasRemaining())
+                fc.write(entry);
+            fc.force(false);
+        }
+        return add(j, s);
+    }
+
+    /**
+     * Returns the code of field f, a value of column j.
+     *
+     * @throws IOException if a new entry cannot be written
+     */
+    public int encode(int j, Field f) throws IOException {
+        if (f instanceof DictStringField) {
+            DictStringField d = (DictStringField) f;
+            if (d.getDictionary() == this && d.getColumn() == j)
+                return d.getCode();
+        }
+        return encode(j, ((StringField) f).getValue());
+    }
+
+    /**
+     * Returns the shared field holding the value with the specified code.
+     *
+     * @throws NoSuchElementException if the code is not in the dictionary
+     */
+    public DictStringField decode(int j, int code) {
+        DictStringField[] fields = columns[j].fields;
+        DictStringField f = code >= 0 && code < fields.length ? fields[code] : null;
+        if (f == null)
+            throw new NoSuchElementException("unknown code " + code + " in column " + j);
+        return f;
+    }
+}
@@ -0,0 +1,292 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * TableMetadata caches facts about a HeapFile that would otherwise take a
+ * system call or a scan to learn: the number of pages, and for each page
+ * the number of live tuples and of free slots.
+ * <p>
+ * The metadata is stored in a side file next to the heap file. A header
+ * holds a magic number, a fingerprint of the schema and the number of
+ * pages; it is followed by one entry per page with its tuple count and free
+ * slot count, where a count of -1 means the page has not been looked at.
+ * When the file is opened, metadata written for another schema or another
+ * number of pages, for example because the heap file was replaced, is
+ * thrown away. A missing side file is only created by {@link #create},
+ * before the heap file is first written; until then the metadata is only
+ * kept in memory.
+ * <p>
+ * The entry of a page is set from the page each time it is written to
+ * disk, which under the BufferPool's FORCE policy is when a transaction
+ * that changed it commits, so the counts are those of committed data.
+ * Pages without an entry get one the first time they are read from disk.
+ * The page count follows the file as pages are appended and truncated, and
+ * is brought up to date by {@link HeapFile#numPages}.
+ *
+ * @see HeapFile#getMetadata
+ * @Threadsafe
+ */
+public class TableMetadata {
+    private static final int MAGIC = 0x5344424d;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 8;
+    private static final int UNKNOWN = -1;
+
+    private final File f;
+    private final int fingerprint;
+    private FileChannel channel;
+    /** True once the side file exists. */
+    private boolean persistent;
+
+    private volatile int numPages;
+    private int[] tuples = new int[0];
+    private int[] freeSlots = new int[0];
+    /** The number of pages below numPages with an entry. */
+    private int knownPages;
+    /** The sums over the pages with an entry. */
+    private long totalTuples;
+    private long totalFreeSlots;
+
+    /**
+     * Opens the metadata stored in the specified file, starting over if it
+     * does not describe the heap file. If the file does not exist, the
+     * metadata is only kept in memory until {@link #create} is called.
+     *
+     * @param f the file holding the metadata
+     * @param td the schema of the table
+     * @param numPages the number of pages the heap file has
+     */
+    public TableMetadata(File f, TupleDesc td, int numPages) throws IOException {
+        this.f = f;
+        this.fingerprint = fingerprint(td);
+        load(numPages);
+    }
+
+    /**
+     * Returns a checksum of the field types of td, which determine the
+     * layout of its tuples on a page.
+     */
+    public static int fingerprint(TupleDesc td) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < td.numFields(); i++)
+            crc.update(td.getFieldType(i).name().getBytes());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return the file holding the metadata
+     */
+    public File getFile() {
+        return f;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+
+    private void ensureCapacity(int pages) {
+        if (pages <= tuples.length)
+            return;
+        int old = tuples.length;
+        int n = Math.max(pages, old * 2);
+        tuples = Arrays.copyOf(tuples, n);
+        freeSlots = Arrays.copyOf(freeSlots, n);
+        Arrays.fill(tuples, old, n, UNKNOWN);
+        Arrays.fill(freeSlots, old, n, UNKNOWN);
+    }
+
+    private void load(int actualPages) throws IOException {
+        ensureCapacity(actualPages);
+        if (f.exists() && f.length() >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            FileChannel fc = getChannel();
+            while (header.hasRemaining() && fc.read(header, header.position()) >= 0)
+                ;
+            if (header.getInt(0) == MAGIC && header.getInt(4) == fingerprint
+                    && header.getInt(8) == actualPages) {
+                int n = (int) Math.min(actualPages, (f.length() - HEADER_SIZE) / ENTRY_SIZE);
+                ByteBuffer buf = ByteBuffer.allocate(n * ENTRY_SIZE);
+                while (buf.hasRemaining() && fc.read(buf, HEADER_SIZE + buf.position()) >= 0)
+                    ;
+                buf.flip();
+                numPages = actualPages;
+                for (int p = 0; p < n; p++)
+                    setEntry(p, buf.getInt(), buf.getInt());
+                persistent = true;
+                return;
+            }
+        }
+
+        // missing or stale: start over with every page unknown
+        numPages = actualPages;
+        if (f.exists()) {
+            getChannel().truncate(0);
+            persistent = true;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Creates the side file if it does not exist yet, holding the counts
+     * known so far, and writes every later change through to it.
+     */
+    public synchronized void create() throws IOException {
+        if (persistent)
+            return;
+        FileChannel fc = getChannel();
+        fc.truncate(0);
+        persistent = true;
+        writeHeader();
+        for (int p = 0; p < numPages; p++) {
+            if (tuples[p] != UNKNOWN)
+                writeEntry(p);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (!persistent)
+            return;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(fingerprint).putInt(numPages);
+        header.flip();
+        FileChannel fc = getChannel();
+        while (header.hasRemaining())
+            fc.write(header, header.position());
+    }
+
+    /** Sets the entry of page pgNo in memory, keeping the sums in step. */
+    private void setEntry(int pgNo, int tupleCount, int free) {
+        if (tuples[pgNo] != UNKNOWN) {
+            knownPages--;
+            totalTuples -= tuples[pgNo];
+            totalFreeSlots -= freeSlots[pgNo];
+        }
+        tuples[pgNo] = tupleCount;
+        freeSlots[pgNo] = free;
+        if (tupleCount != UNKNOWN) {
+            knownPages++;
+            totalTuples += tupleCount;
+            totalFreeSlots += free;
+        }
+    }
+
+    /**
+     * @return the number of pages of the heap file
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * @return true if page pgNo has an entry
+     */
+    public synchronized boolean isKnown(int pgNo) {
+        return pgNo < numPages && tuples[pgNo] != UNKNOWN;
+    }
+
+    /**
+     * @return the number of live tuples on page pgNo, or -1 if unknown
+     */
+    public synchronized int getTupleCount(int pgNo) {
+        return pgNo < numPages ? tuples[pgNo] : UNKNOWN;
+    }
+
+    /**
+     * @return the number of live tuples in the table, or -1 if some page
+     *         has no entry yet
+     */
+    public synchronized long getTupleCount() {
+        return knownPages == numPages ? totalTuples : UNKNOWN;
+    }
+
+    /**
+     * @return the number of free slots in the table, or -1 if some page has
+     *         no entry yet
+     */
+    public synchronized long getFreeSlots() {
+        return knownPages == numPages ? totalFreeSlots : UNKNOWN;
+    }
+
+    /**
+     * Records the counts of page pgNo, which was just written to disk,
+     * growing the page count if the page is new.
+     *
+     * @param pgNo the page number
+     * @param tupleCount the number of tuples on the page
+     * @param free the number of free slots on the page
+     */
+    public synchronized void pageWritten(int pgNo, int tupleCount, int free) throws IOException {
+        if (pgNo >= numPages) {
+            ensureCapacity(pgNo + 1);
+            numPages = pgNo + 1;
+            writeHeader();
+        }
+        setEntry(pgNo, tupleCount, free);
+        if (persistent)
+            writeEntry(pgNo);
+    }
+
+    /** Writes the entry of page pgNo to the side file. */
+    private void writeEntry(int pgNo) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putInt(tuples[pgNo]).putInt(freeSlots[pgNo]);
+        entry.flip();
+        long offset = HEADER_SIZE + (long) pgNo * ENTRY_SIZE;
+        FileChannel fc = getChannel();
+        // fill any gap before the entry with unknown entries
+        long end = fc.size();
+        if (end < offset) {
+            ByteBuffer gap = ByteBuffer.allocate((int) (offset - end));
+            Arrays.fill(gap.array(), (byte) 0xff);
+            while (gap.hasRemaining())
+                fc.write(gap, end + gap.position());
+        }
+        while (entry.hasRemaining())
+            fc.write(entry, offset + entry.position());
+    }
+
+    /**
+     * Records that the heap file has numPages pages, for example because
+     * pages were appended to it without going through its HeapFile.
+     */
+    public void setNumPages(int numPages) throws IOException {
+        if (numPages == this.numPages)
+            return;
+        synchronized (this) {
+            if (numPages < this.numPages) {
+                truncate(numPages);
+            } else if (numPages > this.numPages) {
+                ensureCapacity(numPages);
+                this.numPages = numPages;
+                writeHeader();
+            }
+        }
+    }
+
+    /**
+     * Forgets the pages from numPages on, after the heap file was shortened
+     * to numPages pages.
+     */
+    public synchronized void truncate(int numPages) throws IOException {
+        if (numPages >= this.numPages)
+            return;
+        for (int p = numPages; p < this.numPages; p++)
+            setEntry(p, UNKNOWN, UNKNOWN);
+        this.numPages = numPages;
+        if (!persistent)
+            return;
+        FileChannel fc = getChannel();
+        fc.truncate(Math.min(fc.size(), HEADER_SIZE + (long) numPages * ENTRY_SIZE));
+        writeHeader();
+    }
+}
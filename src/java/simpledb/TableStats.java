@@ -72,6 +72,7 @@ public class TableStats {
     private TupleDesc desc;
     private Map<Integer, IntHistogram> intHistograms;
     private Map<Integer, StringHistogram> stringHistograms;
+    private Map<Integer, DoubleHistogram> doubleHistograms;
     private int totalTuples = 0;
 
     /**
@@ -94,41 +95,80 @@ public class TableStats {
         // in a single scan of the table.
         // some code goes here
         HeapFile heapFile = (HeapFile)Database.getCatalog().getDatabaseFile(tableid);
+        // the cached counts save counting the tuples, once every page has an entry
+        TableMetadata metadata = heapFile.getMetadata();
+        int numPages = metadata.getNumPages();
+        long cachedTuples = metadata.getTupleCount();
         
-        this.scanCost = ioCostPerPage * heapFile.numPages();
+        this.scanCost = ioCostPerPage * numPages;
         
         this.desc = heapFile.getTupleDesc();
         int numFields = this.desc.numFields();
         this.mins = new int[numFields];
         this.maxs = new int[numFields];
+        double[] dmins = new double[numFields];
+        double[] dmaxs = new double[numFields];
         for (int i = 0; i != numFields; i++) {
             mins[i] = Integer.MAX_VALUE;
             maxs[i] = Integer.MIN_VALUE;
+            dmins[i] = Double.POSITIVE_INFINITY;
+            dmaxs[i] = Double.NEGATIVE_INFINITY;
         }
         
+        // the zone map knows the range of each int field once every page has
+        // been seen, which saves a pass over the table
+        boolean rangesKnown = true;
+        for (int i = 0; i < numFields && rangesKnown; i++) {
+            if (desc.getFieldType(i) == Type.INT_TYPE) {
+                int[] range = heapFile.getZoneMap().getRange(i, numPages);
+                if (range != null) {
+                    mins[i] = range[0];
+                    maxs[i] = range[1];
+                } else {
+                    rangesKnown = false;
+                }
+            } else if (desc.getFieldType(i) != Type.STRING_TYPE) {
+                rangesKnown = false;
+            }
+        }
+
         TransactionId tid = new TransactionId();
         DbFileIterator iter = heapFile.iterator(tid);
         try {
             iter.open();
             // Get max and min for int type first
-            while (iter.hasNext()) {
+            while (!rangesKnown && iter.hasNext()) {
                 Tuple t = iter.next();
-                totalTuples++;
                 for (int i = 0; i < numFields; i++) {
-                    if (t.getField(i).getType() == Type.STRING_TYPE)
-                        continue;
-                    int v = ((IntField) t.getField(i)).getValue();
-                    mins[i] = Math.min(mins[i], v);
-                    maxs[i] = Math.max(maxs[i], v);
+                    switch (t.getField(i).getType()) {
+                    case STRING_TYPE:
+                        break;
+                    case INT_TYPE: {
+                        int v = ((IntField) t.getField(i)).getValue();
+                        mins[i] = Math.min(mins[i], v);
+                        maxs[i] = Math.max(maxs[i], v);
+                        break;
+                    }
+                    default: {
+                        double v = DoubleHistogram.valueOf(t.getField(i));
+                        dmins[i] = Math.min(dmins[i], v);
+                        dmaxs[i] = Math.max(dmaxs[i], v);
+                        break;
+                    }
+                    }
                 }
             }
             
             intHistograms = new HashMap<>();
             stringHistograms = new HashMap<>();
+            doubleHistograms = new HashMap<>();
             // there still remains int fields to process
-            iter.rewind();
+            if (!rangesKnown)
+                iter.rewind();
             while (iter.hasNext()) {
                 Tuple t = iter.next();
+                if (cachedTuples < 0)
+                    totalTuples++;
                 for(int i= 0; i !=numFields; i ++) {
                     switch (t.getField(i).getType()) {
                     case INT_TYPE:
@@ -144,12 +184,17 @@ public class TableStats {
                         stringHistograms.get(i).addValue(((StringField) t.getField(i)).getValue());
                         break;
                     default:
-                        assert(false);
+                        if (doubleHistograms.get(i) == null)
+                            doubleHistograms.put(i, new DoubleHistogram(NUM_HIST_BINS, dmins[i], dmaxs[i]));
+
+                        doubleHistograms.get(i).addValue(DoubleHistogram.valueOf(t.getField(i)));
                         break;
                     }
                 }
             }
             iter.close();
+            if (cachedTuples >= 0)
+                totalTuples = (int) cachedTuples;
         } catch (DbException e) {
 
         } catch (TransactionAbortedException e) {
@@ -157,6 +202,37 @@ public class TableStats {
         }
     }
 
+    /**
+     * Create a TableStats object from statistics gathered without scanning
+     * the table, e.g. while it was written by a {@link BulkLoader}.
+     *
+     * @param desc
+     *            The schema of the table
+     * @param numPages
+     *            The number of pages in the table
+     * @param ioCostPerPage
+     *            The cost per page of IO
+     * @param totalTuples
+     *            The number of tuples in the table
+     * @param intHistograms
+     *            The histograms of the int fields, by field index
+     * @param stringHistograms
+     *            The histograms of the string fields, by field index
+     * @param doubleHistograms
+     *            The histograms of the long, double and date fields, by
+     *            field index
+     */
+    TableStats(TupleDesc desc, int numPages, int ioCostPerPage, int totalTuples,
+            Map<Integer, IntHistogram> intHistograms, Map<Integer, StringHistogram> stringHistograms,
+            Map<Integer, DoubleHistogram> doubleHistograms) {
+        this.desc = desc;
+        this.scanCost = ioCostPerPage * numPages;
+        this.totalTuples = totalTuples;
+        this.intHistograms = intHistograms;
+        this.stringHistograms = stringHistograms;
+        this.doubleHistograms = doubleHistograms;
+    }
+
     /**
      * Estimates the cost of sequentially scanning the file, given that the cost
      * to read a page is costPerPageIO. You can assume that there are no seeks
@@ -218,11 +294,16 @@ public class TableStats {
      */
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
         // Done
-        if (desc.getFieldType(field) == Type.STRING_TYPE) {
+        switch (desc.getFieldType(field)) {
+        case STRING_TYPE:
             return stringHistograms.get(field).estimateSelectivity(op, ((StringField) constant).getValue());
+        case INT_TYPE:
+            return intHistograms.get(field).estimateSelectivity(op, ((IntField) constant).getValue());
+        default:
+            DoubleHistogram h = doubleHistograms.get(field);
+            // no histogram is built for an empty table
+            return h == null ? 0.0 : h.estimateSelectivity(op, DoubleHistogram.valueOf(constant));
         }
-
-        return intHistograms.get(field).estimateSelectivity(op, ((IntField) constant).getValue());
     }
 
     /**
@@ -33,6 +33,15 @@ public class Tuple implements Serializable {
         }
     }
 
+    /**
+     * Create a tuple with the specified schema that keeps its fields
+     * somewhere else; used by subclasses such as {@link BytesTuple}, which
+     * must override the field accessors.
+     */
+    Tuple(TupleDesc td, boolean noFields) {
+        my_td = td;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -88,6 +97,38 @@ public class Tuple implements Serializable {
         return null;
     }
 
+    /**
+     * @return the value of the ith field, which must be an INT_TYPE field
+     */
+    public int getInt(int i) {
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * @return the value of the ith field, which must be a STRING_TYPE field
+     */
+    public String getString(int i) {
+        return ((StringField) getField(i)).getValue();
+    }
+
+    /**
+     * @return the value of the ith field, which must be a LONG_TYPE field,
+     *         or the milliseconds of a DATE_TYPE field
+     */
+    public long getLong(int i) {
+        Field f = getField(i);
+        if (f instanceof DateField)
+            return ((DateField) f).getValue();
+        return ((LongField) f).getValue();
+    }
+
+    /**
+     * @return the value of the ith field, which must be a DOUBLE_TYPE field
+     */
+    public double getDouble(int i) {
+        return ((DoubleField) getField(i)).getValue();
+    }
+
     /**
      * Returns the contents of this Tuple as a string. Note that to pass the
      * system tests, the format needs to be as follows:
@@ -8,6 +8,8 @@ import java.util.*;
  */
 public class TupleDesc implements Serializable {
     private ArrayList<TDItem> type_fields;
+    /** Field offsets, computed on first use; see getFieldOffset. */
+    private transient int[] offsets;
 
     /**
      * A help class to facilitate organizing the information of each field
@@ -166,7 +168,10 @@ public class TupleDesc implements Serializable {
 
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
-     *         Note that tuples from a given TupleDesc are of a fixed size.
+     *         This is the exact size of every tuple on a
+     *         {@link PageLayout#ROW} page, and the largest size a tuple can
+     *         take in the other layouts, where strings are stored in only as
+     *         many bytes as they need.
      */
     public int getSize() {
         // some code goes here
@@ -177,6 +182,22 @@ public class TupleDesc implements Serializable {
         return bytes;
     }
 
+    /**
+     * @return the offset (in bytes) of field i from the start of a tuple
+     *         whose fields are stored one after another at their full width,
+     *         as on a {@link PageLayout#ROW} page.
+     */
+    public int getFieldOffset(int i) {
+        int[] offs = offsets;
+        if (offs == null) {
+            offs = new int[type_fields.size() + 1];
+            for (int j = 0; j < type_fields.size(); j++)
+                offs[j + 1] = offs[j] + type_fields.get(j).fieldType.getLen();
+            offsets = offs;
+        }
+        return offs[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
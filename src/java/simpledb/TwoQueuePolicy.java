@@ -0,0 +1,87 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * TwoQueuePolicy is the full 2Q algorithm (Johnson and Shasha, "2Q: A Low
+ * Overhead High Performance Buffer Management Replacement Algorithm").
+ * <p>
+ * A page enters the pool on a FIFO queue, A1in, that holds about a quarter
+ * of the pool. Pages evicted from A1in are remembered, without their data,
+ * on a second FIFO queue, A1out, of about half the size of the pool. Only
+ * a page that is requested again while it is remembered on A1out, that is
+ * a page used more than once within a while, enters the main LRU list,
+ * Am. A scan therefore only cycles through A1in, and leaves the pages on
+ * Am alone. Every operation takes constant time, apart from skipping pages
+ * that may not be evicted.
+ *
+ * @Threadsafe
+ */
+public class TwoQueuePolicy implements EvictionPolicy {
+    private final int kin;
+    private final int kout;
+    /** A1in, oldest first. */
+    private final LinkedHashSet<PageId> in = new LinkedHashSet<PageId>();
+    /** A1out, oldest first. */
+    private final LinkedHashSet<PageId> out = new LinkedHashSet<PageId>();
+    /** Am, least recently used first. */
+    private final LinkedHashSet<PageId> main = new LinkedHashSet<PageId>();
+
+    /**
+     * @param capacity the number of pages the pool holds
+     */
+    public TwoQueuePolicy(int capacity) {
+        this.kin = Math.max(1, capacity / 4);
+        this.kout = Math.max(1, capacity / 2);
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        if (main.remove(pid) || out.remove(pid))
+            main.add(pid);
+        else if (!in.contains(pid))
+            in.add(pid);
+    }
+
+    public synchronized void pageHit(PageId pid) {
+        // hits on A1in are correlated references, which 2Q ignores
+        if (main.remove(pid))
+            main.add(pid);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        if (!in.remove(pid))
+            main.remove(pid);
+    }
+
+    public synchronized PageId evict(Evictable evictable) {
+        PageId pid = null;
+        if (in.size() > kin || main.isEmpty())
+            pid = evictFrom(in, evictable);
+        if (pid == null)
+            pid = evictFrom(main, evictable);
+        if (pid == null)
+            pid = evictFrom(in, evictable);
+        return pid;
+    }
+
+    /**
+     * Removes and returns the oldest evictable page of queue, remembering
+     * it on A1out if it comes from A1in.
+     */
+    private PageId evictFrom(LinkedHashSet<PageId> queue, Evictable evictable) {
+        for (Iterator<PageId> it = queue.iterator(); it.hasNext(); ) {
+            PageId pid = it.next();
+            if (evictable.test(pid)) {
+                it.remove();
+                if (queue == in) {
+                    if (out.size() >= kout)
+                        out.remove(out.iterator().next());
+                    out.add(pid);
+                }
+                return pid;
+            }
+        }
+        return null;
+    }
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,20 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new IntField(buf.getInt(offset));
+        }
+
+        @Override
+        public Field fromString(String s) throws ParseException {
+            try {
+                return new IntField(Integer.parseInt(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("bad int '" + s + "'", 0);
+            }
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +57,110 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = buf.getInt(offset);
+            if (strLen < 0 || strLen > STRING_LEN)
+                throw new IllegalArgumentException("bad string length " + strLen);
+            byte bs[] = new byte[strLen];
+            for (int i = 0; i < strLen; i++)
+                bs[i] = buf.get(offset + 4 + i);
+            return new StringField(new String(bs), STRING_LEN);
+        }
+
+        @Override
+        public Field fromString(String s) {
+            // spaces are part of a string; loaders trim fields themselves
+            return new StringField(s, STRING_LEN);
+        }
+
+    }, LONG_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new LongField(dis.readLong());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new LongField(buf.getLong(offset));
+        }
+
+        @Override
+        public Field fromString(String s) throws ParseException {
+            try {
+                return new LongField(Long.parseLong(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("bad long '" + s + "'", 0);
+            }
+        }
+
+    }, DOUBLE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DoubleField(dis.readDouble());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new DoubleField(buf.getDouble(offset));
+        }
+
+        @Override
+        public Field fromString(String s) throws ParseException {
+            try {
+                return new DoubleField(Double.parseDouble(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("bad double '" + s + "'", 0);
+            }
+        }
+
+    }, DATE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DateField(dis.readLong());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new DateField(buf.getLong(offset));
+        }
+
+        @Override
+        public Field fromString(String s) throws ParseException {
+            try {
+                return DateField.valueOf(s);
+            } catch (IllegalArgumentException e) {
+                throw new ParseException(e.getMessage(), 0);
+            }
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +179,48 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from buf at the absolute offset given; the position of buf is not
+   *   changed.
+   * @param buf The buffer to read from
+   * @param offset The offset in buf of the first byte of the field
+   * @throws IllegalArgumentException if the bytes are not a valid value of
+   *   this type.
+   */
+    public abstract Field parse(ByteBuffer buf, int offset);
+
+  /**
+   * @return a Field object of the same type as this object whose value is
+   *   given by its text form, as found in data files and SQL constants.
+   *   Leading and trailing whitespace is ignored, except in strings, which
+   *   are kept as they are (but truncated to STRING_LEN), so that SQL
+   *   literals such as ' a ' keep their meaning.
+   * @param s The text to parse
+   * @throws ParseException if s is not a valid value of this type.
+   */
+    public abstract Field fromString(String s) throws ParseException;
+
+  /**
+   * @return the type with the specified name as used in catalog files and
+   *   on the command line ("int", "string", "long", "double" or "date"),
+   *   ignoring case, or null if there is no such type.
+   */
+    public static Type fromName(String name) {
+        switch (name.trim().toLowerCase()) {
+        case "int":
+            return INT_TYPE;
+        case "string":
+            return STRING_TYPE;
+        case "long":
+            return LONG_TYPE;
+        case "double":
+            return DOUBLE_TYPE;
+        case "date":
+            return DATE_TYPE;
+        default:
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,301 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Vacuum compacts a HeapFile while it is in use, so that a table shrinks
+ * back after many of its tuples have been deleted.
+ * <p>
+ * Compaction works from the end of the file: the tuples of the last pages
+ * are moved into free slots of earlier pages (found through the
+ * {@link FreeSpaceMap}), and the empty pages left at the end are cut off
+ * with {@link HeapFile#truncate}. Each batch of moves is a transaction that
+ * locks the pages it changes like any other writer, and is committed before
+ * the next batch starts, so concurrent queries only ever wait for one
+ * batch. A batch that is aborted, for example because it timed out waiting
+ * for a lock, is retried.
+ * <p>
+ * A moved tuple gets a new RecordId. Anything that refers to tuples by
+ * RecordId can register a {@link MoveListener}, which is told about every
+ * move inside the transaction that makes it.
+ * <p>
+ * A vacuum runs in the calling thread with {@link #vacuum}, or in a
+ * background thread with {@link #start}. Its I/O can be limited with
+ * {@link #setMaxPagesPerSecond}; the limit is applied between batches, so
+ * no locks are held while the vacuum waits.
+ */
+public class Vacuum implements Runnable {
+    /** Default number of pages emptied by one transaction. */
+    public static final int DEFAULT_BATCH_PAGES = 8;
+    /** Number of times in a row a batch may be aborted before giving up. */
+    static final int MAX_RETRIES = 10;
+    /** Milliseconds to wait after an abort, times the number of aborts. */
+    static final int BACKOFF_MILLIS = 100;
+
+    /**
+     * Receives the tuples moved by a vacuum.
+     */
+    public interface MoveListener {
+        /**
+         * Called after t has been moved from the slot with RecordId from to
+         * the slot t.getRecordId(), inside transaction tid. Throwing aborts
+         * the batch the move is part of.
+         */
+        void tupleMoved(TransactionId tid, RecordId from, Tuple t)
+                throws DbException, IOException, TransactionAbortedException;
+    }
+
+    private final HeapFile file;
+    private final ArrayList<MoveListener> listeners = new ArrayList<MoveListener>();
+    private int batchPages = DEFAULT_BATCH_PAGES;
+    private int maxPagesPerSecond = 0;
+
+    private volatile boolean stopped = false;
+    private volatile Thread thread;
+    private volatile Exception failure;
+
+    // progress, only changed by the vacuuming thread
+    private volatile long tuplesMoved;
+    private volatile int pagesFreed;
+    private int pagesVisited;
+
+    /**
+     * Creates a vacuum of the specified file, which must be in the catalog.
+     */
+    public Vacuum(HeapFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the number of pages at the end of the file emptied by each
+     * transaction. Larger batches commit less often but hold more locks.
+     */
+    public void setBatchPages(int batchPages) {
+        if (batchPages < 1)
+            throw new IllegalArgumentException("batch of " + batchPages + " pages");
+        this.batchPages = batchPages;
+    }
+
+    /**
+     * Limits the number of pages the vacuum reads or changes per second;
+     * 0, the default, means no limit.
+     */
+    public void setMaxPagesPerSecond(int maxPagesPerSecond) {
+        this.maxPagesPerSecond = Math.max(0, maxPagesPerSecond);
+    }
+
+    /**
+     * Registers a listener told about every tuple moved.
+     */
+    public void addMoveListener(MoveListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the number of tuples moved so far
+     */
+    public long getTuplesMoved() {
+        return tuplesMoved;
+    }
+
+    /**
+     * @return the number of pages removed from the file so far
+     */
+    public int getPagesFreed() {
+        return pagesFreed;
+    }
+
+    /**
+     * @return the exception that ended the background vacuum, or null
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Compacts the file in the calling thread, returning when no tuple can
+     * be moved closer to the start of the file or {@link #stop} is called.
+     *
+     * @return the number of pages removed from the file
+     * @throws TransactionAbortedException if a batch was aborted
+     *             {@link #MAX_RETRIES} times in a row
+     */
+    public int vacuum() throws DbException, IOException, TransactionAbortedException,
+            InterruptedException {
+        int freedBefore = pagesFreed;
+        while (!stopped) {
+            long start = System.nanoTime();
+            pagesVisited = 0;
+            int moved = runBatch(true);
+            int freed = runBatch(false);
+            throttle(start);
+            if (moved < 0 || (moved == 0 && freed == 0))
+                break;
+        }
+        return pagesFreed - freedBefore;
+    }
+
+    /**
+     * Runs {@link #vacuum}, recording any failure for {@link #getFailure}.
+     */
+    public void run() {
+        try {
+            vacuum();
+        } catch (Exception e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Starts compacting the file in a background thread.
+     *
+     * @return the thread, which ends when the vacuum is done
+     */
+    public synchronized Thread start() {
+        if (thread != null)
+            throw new IllegalStateException("vacuum already started");
+        Thread t = new Thread(this, "vacuum-" + file.getFile().getName());
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+        return t;
+    }
+
+    /**
+     * Stops the vacuum after its current batch, and waits for the
+     * background thread, if any, to end. The file stays consistent, only
+     * less compact.
+     */
+    public void stop() throws InterruptedException {
+        stopped = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        Thread t = thread;
+        if (t != null)
+            t.join();
+    }
+
+    /**
+     * Waits after a batch so that pages are visited at no more than the
+     * configured rate.
+     */
+    private void throttle(long start) throws InterruptedException {
+        if (maxPagesPerSecond > 0)
+            pause(start + pagesVisited * 1000000000L / maxPagesPerSecond);
+    }
+
+    /**
+     * Waits until System.nanoTime() reaches end or the vacuum is stopped.
+     */
+    private synchronized void pause(long end) throws InterruptedException {
+        long now;
+        while (!stopped && (now = System.nanoTime()) < end)
+            wait(Math.max(1, (end - now) / 1000000));
+    }
+
+    /**
+     * Runs one batch of moves or one truncation in its own transaction,
+     * retrying it if it is aborted. The vacuum backs off before each retry,
+     * so that the transactions it ran into can finish first.
+     *
+     * @return the result of {@link #moveTuples} or {@link #truncateTail}
+     */
+    private int runBatch(boolean move) throws DbException, IOException,
+            TransactionAbortedException, InterruptedException {
+        BufferPool bufferPool = Database.getBufferPool();
+        for (int attempt = 1; ; attempt++) {
+            TransactionId tid = new TransactionId();
+            try {
+                int result = move ? moveTuples(tid) : truncateTail(tid);
+                bufferPool.transactionComplete(tid, true);
+                return result;
+            } catch (TransactionAbortedException e) {
+                bufferPool.transactionComplete(tid, false);
+                if (attempt == MAX_RETRIES || stopped)
+                    throw e;
+                pause(System.nanoTime() + attempt * BACKOFF_MILLIS * 1000000L);
+            } catch (DbException | IOException | RuntimeException e) {
+                bufferPool.transactionComplete(tid, false);
+                throw e;
+            }
+        }
+    }
+
+    private HeapFilePage getPage(TransactionId tid, int pgNo)
+            throws DbException, TransactionAbortedException {
+        pagesVisited++;
+        return (HeapFilePage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(file.getId(), pgNo), Permissions.READ_WRITE);
+    }
+
+    /**
+     * Moves the tuples of the last {@link #setBatchPages batch} pages of the
+     * file into free slots of earlier pages.
+     *
+     * @return the number of tuples moved, or -1 if a tuple could not be
+     *         moved because no earlier page has a free slot
+     */
+    private int moveTuples(TransactionId tid) throws DbException, IOException,
+            TransactionAbortedException {
+        FreeSpaceMap freeSpace = file.getFreeSpaceMap();
+        int moved = 0;
+        int dest = 0;
+        int src = file.numPages() - 1;
+        for (int n = 0; n < batchPages && src > 0; n++, src--) {
+            HeapFilePage srcPage = getPage(tid, src);
+            ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+            Iterator<Tuple> it = srcPage.iterator();
+            while (it.hasNext())
+                tuples.add(it.next());
+            if (tuples.isEmpty())
+                continue;
+            // the page must not be evicted while other pages are fetched
+            srcPage.markDirty(true, tid);
+
+            HeapFilePage destPage = null;
+            for (Tuple t : tuples) {
+                while (destPage == null || destPage.getNumEmptySlots() == 0) {
+                    if (destPage != null) {
+                        file.updateFreeSpace(destPage);
+                        dest++;
+                    }
+                    dest = freeSpace.nextPageWithSpace(dest);
+                    if (dest >= src)
+                        return -1;
+                    destPage = getPage(tid, dest);
+                }
+                destPage.markDirty(true, tid);
+
+                RecordId from = t.getRecordId();
+                srcPage.deleteTuple(t);
+                file.addToPage(destPage, t);
+                moved++;
+                tuplesMoved++;
+                for (MoveListener listener : listeners)
+                    listener.tupleMoved(tid, from, t);
+            }
+            file.updateFreeSpace(srcPage);
+            file.updateFreeSpace(destPage);
+        }
+        return src > 0 ? moved : -1;
+    }
+
+    /**
+     * Removes the empty pages at the end of the file.
+     *
+     * @return the number of pages removed
+     */
+    private int truncateTail(TransactionId tid) throws DbException, IOException,
+            TransactionAbortedException {
+        int oldPages = file.numPages();
+        int numPages = oldPages;
+        while (numPages > 0 && !getPage(tid, numPages - 1).iterator().hasNext())
+            numPages--;
+        if (numPages == oldPages || !file.truncate(tid, numPages))
+            return 0;
+        pagesFreed += oldPages - numPages;
+        return oldPages - numPages;
+    }
+}
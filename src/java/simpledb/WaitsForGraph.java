@@ -0,0 +1,70 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * WaitsForGraph records which transactions each waiting transaction waits
+ * for, and finds the cycles, that is the deadlocks, among them. It is kept
+ * up to date by the {@link LockManager}, which replaces the edges of a
+ * waiter whenever the lock it waits for changes.
+ *
+ * @Threadsafe
+ */
+class WaitsForGraph {
+    private final HashMap<TransactionId, Set<TransactionId>> edges =
+            new HashMap<TransactionId, Set<TransactionId>>();
+
+    /**
+     * Records that tid waits for the transactions in blockers, replacing
+     * what it waited for before.
+     */
+    public synchronized void setEdges(TransactionId tid, Set<TransactionId> blockers) {
+        edges.put(tid, blockers);
+    }
+
+    /**
+     * Records that tid no longer waits.
+     */
+    public synchronized void remove(TransactionId tid) {
+        edges.remove(tid);
+    }
+
+    /**
+     * @return true if tid waits for some transaction
+     */
+    public synchronized boolean isWaiting(TransactionId tid) {
+        return edges.containsKey(tid);
+    }
+
+    /**
+     * Returns the transactions of a cycle through tid, starting with tid, or
+     * null if tid is not part of a deadlock.
+     */
+    public synchronized List<TransactionId> findCycle(TransactionId tid) {
+        ArrayList<TransactionId> path = new ArrayList<TransactionId>();
+        path.add(tid);
+        return findCycle(tid, path, new HashSet<TransactionId>()) ? path : null;
+    }
+
+    /**
+     * Depth-first search for a path from the last transaction of path back
+     * to its first, extending path along the way.
+     */
+    private boolean findCycle(TransactionId start, ArrayList<TransactionId> path,
+            HashSet<TransactionId> visited) {
+        Set<TransactionId> next = edges.get(path.get(path.size() - 1));
+        if (next == null)
+            return false;
+        for (TransactionId t : next) {
+            if (t.equals(start))
+                return true;
+            if (visited.add(t)) {
+                path.add(t);
+                if (findCycle(start, path, visited))
+                    return true;
+                path.remove(path.size() - 1);
+            }
+        }
+        return false;
+    }
+}
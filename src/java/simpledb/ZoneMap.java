@@ -0,0 +1,317 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * ZoneMap records, for each page of a HeapFile, the smallest and largest
+ * value of every INT_TYPE field on that page, so that scans can skip pages
+ * that cannot hold a tuple matching a predicate (see
+ * {@link HeapFile#iterator(TransactionId, int[], List)}).
+ * <p>
+ * The zone of a page is recomputed from its tuples each time the page is
+ * written to disk, which is when a transaction that changed it commits, and
+ * is then written through to a side file next to the heap file: one
+ * fixed-size entry per page, with a flag byte telling whether the page is
+ * unknown, empty or has zones, followed by the minimum and maximum of each
+ * int field. Pages past the end of the side file are unknown, and get their
+ * zone the first time they are read from disk. Like the
+ * {@link FreeSpaceMap}, the side file is only created by {@link #create},
+ * before the heap file is first written; until then zones are only kept in
+ * memory.
+ * <p>
+ * Between writes, tuples inserted into a page only widen its zone in memory,
+ * so a zone always covers the committed tuples of the page and the tuples
+ * of uncommitted inserts. Deletes narrow a zone when the page is written.
+ *
+ * @Threadsafe
+ */
+public class ZoneMap {
+    private static final byte UNKNOWN = 0;
+    private static final byte ZONES = 1;
+    private static final byte EMPTY = 2;
+
+    private final File f;
+    /** The indexes of the int fields. */
+    private final int[] columns;
+    /** The position of each field in columns, or -1 if it has no zone. */
+    private final int[] positions;
+    private final int entrySize;
+    private FileChannel channel;
+    /** True once the side file exists. */
+    private boolean persistent;
+
+    private byte[] states = new byte[0];
+    /** Minimum and maximum of column c of page p, at p * columns.length + c. */
+    private int[] mins = new int[0];
+    private int[] maxs = new int[0];
+    private int size = -1;
+
+    /**
+     * Opens the zone map stored in the specified file. If the file does not
+     * exist, zones are only kept in memory until {@link #create} is called.
+     *
+     * @param f the file holding the zone map
+     * @param td the schema of the table
+     */
+    public ZoneMap(File f, TupleDesc td) {
+        this.f = f;
+        this.positions = new int[td.numFields()];
+        int n = 0;
+        for (int j = 0; j < td.numFields(); j++)
+            positions[j] = td.getFieldType(j) == Type.INT_TYPE ? n++ : -1;
+        this.columns = new int[n];
+        for (int j = 0; j < td.numFields(); j++) {
+            if (positions[j] >= 0)
+                columns[positions[j]] = j;
+        }
+        this.entrySize = 1 + 8 * n;
+    }
+
+    /**
+     * @return the file holding the zone map
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * @return the indexes of the fields with zones: the INT_TYPE fields
+     */
+    public int[] getColumns() {
+        return columns.clone();
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+
+    private void ensureCapacity(int pages) {
+        if (pages <= states.length)
+            return;
+        int n = Math.max(pages, states.length * 2);
+        states = Arrays.copyOf(states, n);
+        mins = Arrays.copyOf(mins, n * columns.length);
+        maxs = Arrays.copyOf(maxs, n * columns.length);
+    }
+
+    private void load() {
+        if (size >= 0)
+            return;
+        size = 0;
+        if (!f.exists())
+            return;
+        persistent = true;
+        try {
+            int n = (int) (f.length() / entrySize);
+            ByteBuffer buf = ByteBuffer.allocate(n * entrySize);
+            FileChannel fc = getChannel();
+            while (buf.hasRemaining() && fc.read(buf, buf.position()) >= 0)
+                ;
+            buf.flip();
+            ensureCapacity(n);
+            for (int p = 0; p < n; p++) {
+                states[p] = buf.get();
+                for (int c = 0; c < columns.length; c++) {
+                    mins[p * columns.length + c] = buf.getInt();
+                    maxs[p * columns.length + c] = buf.getInt();
+                }
+            }
+            size = n;
+        } catch (IOException e) {
+            // the map is only an optimization; start over without it
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the side file if it does not exist yet, holding the zones
+     * known so far, and writes every later update through to it.
+     */
+    public synchronized void create() throws IOException {
+        load();
+        if (persistent)
+            return;
+        FileChannel fc = getChannel();
+        fc.truncate(0);
+        for (int p = 0; p < size; p++)
+            writeEntry(p);
+        persistent = true;
+    }
+
+    /** Writes the entry of page pgNo to the side file. */
+    private void writeEntry(int pgNo) throws IOException {
+        int base = pgNo * columns.length;
+        ByteBuffer entry = ByteBuffer.allocate(entrySize);
+        entry.put(states[pgNo]);
+        for (int c = 0; c < columns.length; c++)
+            entry.putInt(mins[base + c]).putInt(maxs[base + c]);
+        entry.flip();
+        FileChannel fc = getChannel();
+        while (entry.hasRemaining())
+            fc.write(entry, (long) pgNo * entrySize + entry.position());
+    }
+
+    /**
+     * @return true if the zones of page pgNo are known
+     */
+    public synchronized boolean isKnown(int pgNo) {
+        load();
+        return pgNo < size && states[pgNo] != UNKNOWN;
+    }
+
+    /**
+     * @return the smallest value of int field j on page pgNo
+     * @throws NoSuchElementException if the page has no zones
+     */
+    public synchronized int getMin(int pgNo, int j) {
+        load();
+        if (pgNo >= size || states[pgNo] != ZONES || positions[j] < 0)
+            throw new NoSuchElementException("no zone for field " + j + " of page " + pgNo);
+        return mins[pgNo * columns.length + positions[j]];
+    }
+
+    /**
+     * @return the largest value of int field j on page pgNo
+     * @throws NoSuchElementException if the page has no zones
+     */
+    public synchronized int getMax(int pgNo, int j) {
+        load();
+        if (pgNo >= size || states[pgNo] != ZONES || positions[j] < 0)
+            throw new NoSuchElementException("no zone for field " + j + " of page " + pgNo);
+        return maxs[pgNo * columns.length + positions[j]];
+    }
+
+    /**
+     * Returns the smallest and largest value of int field j over the first
+     * numPages pages, or null if one of those pages has no zones yet. The
+     * range of a table without tuples is {Integer.MAX_VALUE,
+     * Integer.MIN_VALUE}.
+     */
+    public synchronized int[] getRange(int j, int numPages) {
+        load();
+        if (numPages > size || positions[j] < 0)
+            return null;
+        int[] range = new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for (int p = 0; p < numPages; p++) {
+            if (states[p] == UNKNOWN)
+                return null;
+            if (states[p] == EMPTY)
+                continue;
+            range[0] = Math.min(range[0], mins[p * columns.length + positions[j]]);
+            range[1] = Math.max(range[1], maxs[p * columns.length + positions[j]]);
+        }
+        return range;
+    }
+
+    /**
+     * Widens the zones of page pgNo to cover t, before t is added to the
+     * page. Only changes the map in memory; the page is written, and its
+     * zones with it, when the insert commits.
+     */
+    public synchronized void include(int pgNo, Tuple t) {
+        load();
+        if (pgNo >= size || states[pgNo] == UNKNOWN)
+            return;
+        int base = pgNo * columns.length;
+        for (int c = 0; c < columns.length; c++) {
+            int v = t.getInt(columns[c]);
+            if (states[pgNo] == EMPTY) {
+                mins[base + c] = v;
+                maxs[base + c] = v;
+            } else {
+                mins[base + c] = Math.min(mins[base + c], v);
+                maxs[base + c] = Math.max(maxs[base + c], v);
+            }
+        }
+        states[pgNo] = ZONES;
+    }
+
+    /**
+     * Sets the zones of page pgNo to those of the specified tuples, which
+     * must be all the tuples on the page, and writes them to the side file
+     * if it exists.
+     *
+     * @return the number of tuples
+     */
+    public synchronized int update(int pgNo, Iterator<Tuple> tuples) throws IOException {
+        load();
+        ensureCapacity(pgNo + 1);
+        if (pgNo >= size) {
+            Arrays.fill(states, size, pgNo + 1, UNKNOWN);
+            size = pgNo + 1;
+        }
+        int base = pgNo * columns.length;
+        Arrays.fill(mins, base, base + columns.length, Integer.MAX_VALUE);
+        Arrays.fill(maxs, base, base + columns.length, Integer.MIN_VALUE);
+        byte state = EMPTY;
+        int count = 0;
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            for (int c = 0; c < columns.length; c++) {
+                int v = t.getInt(columns[c]);
+                mins[base + c] = Math.min(mins[base + c], v);
+                maxs[base + c] = Math.max(maxs[base + c], v);
+            }
+            state = ZONES;
+            count++;
+        }
+        states[pgNo] = state;
+        if (persistent)
+            writeEntry(pgNo);
+        return count;
+    }
+
+    /**
+     * Forgets the pages from numPages on, after the heap file was shortened
+     * to numPages pages.
+     */
+    public synchronized void truncate(int numPages) throws IOException {
+        load();
+        if (numPages >= size)
+            return;
+        size = numPages;
+        if (persistent)
+            getChannel().truncate((long) numPages * entrySize);
+    }
+
+    /**
+     * Returns false if page pgNo cannot hold a tuple that satisfies p.
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate p) {
+        load();
+        if (pgNo >= size || states[pgNo] == UNKNOWN)
+            return true;
+        if (states[pgNo] == EMPTY)
+            return false;
+        int j = p.getField();
+        if (j >= positions.length || positions[j] < 0 || !(p.getOperand() instanceof IntField))
+            return true;
+        int min = mins[pgNo * columns.length + positions[j]];
+        int max = maxs[pgNo * columns.length + positions[j]];
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+            return min <= v && v <= max;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        default:
+            return true;
+        }
+    }
+}
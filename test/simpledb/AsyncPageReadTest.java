@@ -0,0 +1,116 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class AsyncPageReadTest extends SimpleDbTestBase {
+
+    /** Counts readPage calls, which block until released. */
+    private static class BlockingHeapFile extends HeapFile {
+        final AtomicInteger readCount = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        public BlockingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            readCount.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    /**
+     * Unit test for DbFile.readPageAsync()
+     */
+    @Test
+    public void readPageAsync() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+        HeapPageId pid = new HeapPageId(hf.getId(), 1);
+        Page page = hf.readPageAsync(pid).get(10, TimeUnit.SECONDS);
+        assertEquals(pid, page.getId());
+        assertArrayEquals(hf.readPage(pid).getPageData(), page.getPageData());
+
+        CompletableFuture<Page> missing = hf.readPageAsync(new HeapPageId(hf.getId(), 5));
+        try {
+            missing.join();
+            fail("expected the read past the end of the file to fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    /**
+     * Concurrent misses on the same page share one read
+     */
+    @Test
+    public void coalesceMisses() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 10, 100, null, null);
+        BlockingHeapFile table = new BlockingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        final HeapPageId pid = new HeapPageId(table.getId(), 0);
+
+        final Page[] results = new Page[2];
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            final int n = i;
+            readers[i] = new Thread(() -> {
+                try {
+                    results[n] = Database.getBufferPool().getPage(new TransactionId(), pid,
+                            Permissions.READ_ONLY);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            readers[i].start();
+        }
+
+        assertTrue(table.started.await(10, TimeUnit.SECONDS));
+        // give the second reader time to find the read in flight
+        Thread.sleep(200);
+        table.release.countDown();
+        for (Thread t : readers)
+            t.join(10000);
+
+        assertEquals(1, table.readCount.get());
+        assertNotNull(results[0]);
+        assertSame(results[0], results[1]);
+    }
+
+    /**
+     * A failed read is reported by getPage and not cached
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void getPagePastEnd() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        Database.getBufferPool().getPage(new TransactionId(), new HeapPageId(hf.getId(), 3),
+                Permissions.READ_ONLY);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AsyncPageReadTest.class);
+    }
+}
@@ -0,0 +1,141 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BulkLoaderTest extends SimpleDbTestBase {
+
+    private static File tempFile(String suffix) throws IOException {
+        File f = File.createTempFile("bulk", suffix);
+        HeapFile.deleteOnExit(f);
+        return f;
+    }
+
+    private static File writeText(String text) throws IOException {
+        File f = tempFile(".txt");
+        Files.write(f.toPath(), text.getBytes("ISO-8859-1"));
+        return f;
+    }
+
+    /**
+     * The output of several parallel chunks matches HeapFileEncoder
+     */
+    @Test
+    public void matchesEncoder() throws Exception {
+        Random r = new Random(830);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append(r.nextInt(20000) - 10000).append('|');
+            sb.append(" word").append(r.nextInt(1000));
+            if (i % 100 == 0)
+                sb.append("-a-string-longer-than-the-maximum-string-length-of-simpledb-fields");
+            sb.append(" |").append(i).append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i % 500 == 0)
+                sb.append('\n');
+        }
+        File in = writeText(sb.toString());
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+
+        File expected = tempFile(".dat");
+        HeapFileEncoder.convert(in, expected, BufferPool.getPageSize(), 3, types, '|');
+        File actual = tempFile(".dat");
+        BulkLoader loader = new BulkLoader(types, '|');
+        loader.setThreads(4);
+        loader.setChunkSize(1000);
+        loader.load(in, actual);
+
+        assertEquals(3000, loader.getNumTuples());
+        assertEquals(actual.length() / BufferPool.getPageSize(), loader.getNumPages());
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+
+    /**
+     * An empty input gives a table of one empty page, like HeapFileEncoder
+     */
+    @Test
+    public void emptyInput() throws Exception {
+        File in = writeText("");
+        File out = tempFile(".dat");
+        BulkLoader loader = new BulkLoader(new Type[] { Type.INT_TYPE }, ',');
+        loader.load(in, out);
+        assertEquals(0, loader.getNumTuples());
+        assertEquals(1, loader.getNumPages());
+        assertArrayEquals(new byte[BufferPool.getPageSize()], Files.readAllBytes(out.toPath()));
+    }
+
+    /**
+     * Malformed lines fail the load
+     */
+    @Test
+    public void malformedInput() throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE };
+        for (String text : new String[] { "1,2\n3\n", "1,2\n3,4,5\n", "1,2\n3,x\n", "1,99999999999\n" }) {
+            try {
+                new BulkLoader(types, ',').load(writeText(text), tempFile(".dat"));
+                fail("expected IOException for " + text);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * The loaded table can be read, and the statistics gathered during the
+     * load agree with those computed by scanning it
+     */
+    @Test
+    public void loadWithStatistics() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        StringBuilder sb = new StringBuilder();
+        Random r = new Random(6830);
+        for (int i = 0; i < 5000; i++) {
+            int a = r.nextInt(1000);
+            int b = i;
+            tuples.add(new ArrayList<Integer>(Arrays.asList(a, b)));
+            sb.append(a).append(',').append(b).append('\n');
+        }
+        File out = tempFile(".dat");
+        BulkLoader loader = new BulkLoader(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, ',');
+        loader.setChunkSize(4096);
+        loader.setStatistics(true);
+        loader.load(writeText(sb.toString()), out);
+
+        HeapFile hf = Utility.openHeapFile(2, out);
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        TableStats loaded = loader.getTableStats(1000);
+        TableStats scanned = new TableStats(hf.getId(), 1000);
+        assertEquals(5000, loaded.totalTuples());
+        assertEquals(scanned.estimateScanCost(), loaded.estimateScanCost(), 0.0);
+        for (int v : new int[] { 0, 250, 500, 999 }) {
+            assertEquals(scanned.estimateSelectivity(0, Predicate.Op.LESS_THAN, new IntField(v)),
+                    loaded.estimateSelectivity(0, Predicate.Op.LESS_THAN, new IntField(v)), 0.05);
+        }
+        assertEquals(0.5, loaded.estimateSelectivity(1, Predicate.Op.GREATER_THAN, new IntField(2500)), 0.05);
+    }
+
+    /**
+     * getTableStats() requires statistics to be enabled
+     */
+    @Test(expected = IllegalStateException.class)
+    public void noStatistics() throws Exception {
+        BulkLoader loader = new BulkLoader(new Type[] { Type.INT_TYPE }, ',');
+        loader.load(writeText("1\n2\n"), tempFile(".dat"));
+        loader.getTableStats(1000);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkLoaderTest.class);
+    }
+}
@@ -0,0 +1,128 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BytesTupleTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DATE_TYPE },
+            new String[] { "id", "name", "big", "ratio", "day" });
+
+    private static BytesTuple tuple(int id, String name) {
+        BytesTuple t = new BytesTuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        t.setField(2, new LongField(1L << 40 | id));
+        t.setField(3, new DoubleField(id / 4.0));
+        t.setField(4, DateField.valueOf("2001-02-03"));
+        return t;
+    }
+
+    /**
+     * The typed accessors and getField read what setField wrote
+     */
+    @Test
+    public void accessors() {
+        BytesTuple t = tuple(-7, "hello");
+        assertEquals(TD.getSize(), TD.getFieldOffset(TD.numFields()));
+        assertEquals(-7, t.getInt(0));
+        assertEquals("hello", t.getString(1));
+        assertEquals(1L << 40 | -7, t.getLong(2));
+        assertEquals(-1.75, t.getDouble(3), 0);
+        assertEquals(DateField.valueOf("2001-02-03").getValue(), t.getLong(4));
+
+        // fields decoded from the bytes equal the ones written
+        BytesTuple copy = BytesTuple.copyOf(t);
+        assertEquals(new IntField(-7), copy.getField(0));
+        assertEquals(new StringField("hello", Type.STRING_LEN), copy.getField(1));
+        assertEquals(new DoubleField(-1.75), copy.getField(3));
+        assertEquals(t.toString(), copy.toString());
+
+        // the base class accessors give the same answers
+        Tuple plain = new Tuple(TD);
+        for (int i = 0; i < TD.numFields(); i++)
+            plain.setField(i, t.getField(i));
+        assertEquals("hello", plain.getString(1));
+        assertEquals(t.getLong(4), plain.getLong(4));
+        assertEquals(t.toString(), plain.toString());
+    }
+
+    /**
+     * A tuple over a shared buffer copies it before it is changed
+     */
+    @Test
+    public void sharedBuffer() {
+        byte[] buf = new byte[3 * TD.getSize()];
+        tuple(1, "a").copyTo(buf, TD.getSize());
+        byte[] before = buf.clone();
+
+        BytesTuple view = new BytesTuple(TD, buf, TD.getSize(), true);
+        assertEquals(1, view.getInt(0));
+        assertEquals("a", view.getString(1));
+        view.setField(0, new IntField(2));
+        assertEquals(2, view.getInt(0));
+        assertEquals("a", view.getString(1));
+        assertArrayEquals(before, buf);
+    }
+
+    /**
+     * Joined tuples are the concatenation of their inputs
+     */
+    @Test
+    public void concat() {
+        TupleDesc combo = TupleDesc.merge(TD, TD);
+        BytesTuple t = BytesTuple.concat(combo, tuple(1, "left"), tuple(2, "right"));
+        assertEquals(combo, t.getTupleDesc());
+        assertEquals(1, t.getInt(0));
+        assertEquals("left", t.getString(1));
+        assertEquals(2, t.getInt(5));
+        assertEquals("right", t.getString(6));
+        assertEquals(0.5, t.getDouble(8), 0);
+    }
+
+    /**
+     * Row pages return BytesTuples, and joins of them stay BytesTuples
+     */
+    @Test
+    public void scanAndJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1000, 100, null, tuples);
+        TransactionId tid = new TransactionId();
+        SeqScan left = new SeqScan(tid, hf.getId(), "l");
+        SeqScan right = new SeqScan(tid, hf.getId(), "r");
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), left, right);
+        join.open();
+        int count = 0;
+        while (join.hasNext()) {
+            Tuple t = join.next();
+            assertTrue(t instanceof BytesTuple);
+            assertEquals(t.getInt(0), t.getInt(2));
+            assertEquals(t.getField(0), t.getField(2));
+            count++;
+        }
+        join.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (ArrayList<Integer> row : tuples)
+            counts.merge(row.get(0), 1, Integer::sum);
+        int expected = 0;
+        for (int c : counts.values())
+            expected += c * c;
+        assertEquals(expected, count);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BytesTupleTest.class);
+    }
+}
@@ -0,0 +1,225 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ClusteredHeapFileTest extends SimpleDbTestBase {
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.INT_TYPE };
+    /** Tuples of two ints per page of the default size. */
+    private static final int PER_PAGE = 504;
+    private static final int ROWS = 10 * PER_PAGE;
+
+    private File dat;
+    private HeapFile hf;
+
+    private static File tempFile(String suffix) throws IOException {
+        File f = File.createTempFile("clustered", suffix);
+        HeapFile.deleteOnExit(f);
+        return f;
+    }
+
+    /**
+     * Bulk loads the keys 0 to ROWS - 1 in random order, clustered on the key
+     */
+    @Before
+    public void load() throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < ROWS; i++)
+            keys.add(i);
+        Collections.shuffle(keys, new Random(830));
+        StringBuilder sb = new StringBuilder();
+        for (int k : keys)
+            sb.append(k).append(',').append(-k).append('\n');
+        File in = tempFile(".txt");
+        Files.write(in.toPath(), sb.toString().getBytes("ISO-8859-1"));
+
+        dat = tempFile(".dat");
+        BulkLoader loader = new BulkLoader(TYPES, ',');
+        loader.setChunkSize(4096);
+        loader.setClusterKey(0);
+        loader.load(in, dat);
+        hf = open();
+    }
+
+    private HeapFile open() throws IOException {
+        HeapFile f = new HeapFile(dat, Utility.getTupleDesc(2));
+        f.setClustered(0);
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    /**
+     * The loaded file is sorted and each page has its key range
+     */
+    @Test
+    public void sortedLoad() throws Exception {
+        assertEquals(10, hf.numPages());
+        SparseIndex index = hf.getSparseIndex();
+        for (int pgNo = 0; pgNo < 10; pgNo++) {
+            assertEquals(new IntField(pgNo * PER_PAGE), index.getMin(pgNo));
+            assertEquals(new IntField((pgNo + 1) * PER_PAGE - 1), index.getMax(pgNo));
+        }
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = it.next();
+            assertEquals(i, t.getInt(0));
+            assertEquals(-i, t.getInt(1));
+        }
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A planned range filter only reads the pages its range overlaps
+     */
+    @Test
+    public void rangeSkipsPages() throws Exception {
+        // fields named the way the planner qualifies them
+        HeapFile t = new HeapFile(dat, Utility.getTupleDesc(2, "t.key"));
+        t.setClustered(0);
+        Database.getCatalog().addTable(t, SystemTestUtil.getUUID());
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(Database.getCatalog().getTableName(t.getId()), new TableStats(t.getId(), 1));
+
+        int lo = 3 * PER_PAGE + 10, hi = 4 * PER_PAGE + 10;
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(t.getId(), "t");
+        lp.addFilter("t.key0", Predicate.Op.LESS_THAN, "" + hi);
+        lp.addFilter("t.key0", Predicate.Op.GREATER_THAN_OR_EQ, "" + lo);
+        lp.addProjectField("t.key0", null);
+        TransactionId tid = new TransactionId();
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            assertEquals(lo + count, plan.next().getInt(0));
+            count++;
+        }
+        plan.close();
+        assertEquals(hi - lo, count);
+
+        // both filters are pushed down to the scan
+        for (int pgNo = 0; pgNo < 10; pgNo++) {
+            boolean read = Database.getBufferPool().holdsLock(tid, new HeapPageId(t.getId(), pgNo));
+            assertEquals("page " + pgNo, pgNo == 3 || pgNo == 4, read);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A filter does not change the scan it reads, which may be used again
+     * under another operator
+     */
+    @Test
+    public void filterLeavesScanAlone() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "");
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(PER_PAGE)), scan);
+        filter.open();
+        int count = 0;
+        while (filter.hasNext()) {
+            filter.next();
+            count++;
+        }
+        filter.close();
+        assertEquals(PER_PAGE, count);
+
+        scan.open();
+        count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertEquals(ROWS, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * New tuples go to the page whose range covers their key, and the index
+     * stays in step when the file is reopened
+     */
+    @Test
+    public void insertByKey() throws Exception {
+        // make room on pages 2 and 7
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int k = t.getInt(0);
+            if (k % PER_PAGE == 5 && (k / PER_PAGE == 2 || k / PER_PAGE == 7))
+                Database.getBufferPool().deleteTuple(tid, t);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid, true);
+
+        tid = new TransactionId();
+        ArrayList<Tuple> batch = new ArrayList<Tuple>();
+        batch.add(Utility.getHeapTuple(new int[] { 7 * PER_PAGE + 5, 1 }));
+        batch.add(Utility.getHeapTuple(new int[] { ROWS + 100, 2 }));
+        batch.add(Utility.getHeapTuple(new int[] { 2 * PER_PAGE + 5, 3 }));
+        Database.getBufferPool().insertTuples(tid, hf.getId(), batch.iterator());
+        Database.getBufferPool().transactionComplete(tid, true);
+
+        assertEquals(2, batch.get(2).getRecordId().getPageId().getPageNumber());
+        assertEquals(7, batch.get(0).getRecordId().getPageId().getPageNumber());
+        // past every range, and the last page is full
+        assertEquals(10, batch.get(1).getRecordId().getPageId().getPageNumber());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open();
+        SparseIndex index = reopened.getSparseIndex();
+        assertEquals(11, index.size());
+        assertEquals(new IntField(ROWS + 100), index.getMin(10));
+        assertEquals(new IntField(ROWS + 100), index.getMax(10));
+        assertTrue(index.mayMatch(10, Predicate.Op.GREATER_THAN, new IntField(ROWS)));
+        assertFalse(index.mayMatch(9, Predicate.Op.GREATER_THAN, new IntField(ROWS)));
+    }
+
+    /**
+     * Pages written before the file was clustered are always read
+     */
+    @Test
+    public void unknownPages() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2 * PER_PAGE, 100, null, tuples);
+        HeapFile plain = new HeapFile(f, Utility.getTupleDesc(2));
+        plain.setClustered(0);
+        Database.getCatalog().addTable(plain, SystemTestUtil.getUUID());
+
+        SparseIndex index = plain.getSparseIndex();
+        assertEquals(2, index.size());
+        assertNull(index.getMin(0));
+        assertTrue(index.mayMatch(1, Predicate.Op.LESS_THAN, new IntField(-1000)));
+
+        // a new page gets a range; the old ones stay unknown
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, plain.getId(), Utility.getHeapTuple(new int[] { 5000, 0 }));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(3, plain.numPages());
+        assertEquals(new IntField(5000), index.getMin(2));
+        assertNull(index.getMin(1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ClusteredHeapFileTest.class);
+    }
+}
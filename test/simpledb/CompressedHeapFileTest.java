@@ -0,0 +1,117 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private static byte[] roundTrip(byte[] data) {
+        byte[] compressed = new byte[PageCompressor.maxCompressedLength(data.length)];
+        int len = PageCompressor.compress(data, compressed);
+        byte[] out = new byte[data.length];
+        PageCompressor.decompress(compressed, 0, len, out);
+        return out;
+    }
+
+    /**
+     * Unit test for PageCompressor on empty, repetitive and random data
+     */
+    @Test
+    public void codecRoundTrip() throws Exception {
+        assertArrayEquals(new byte[0], roundTrip(new byte[0]));
+        assertArrayEquals(new byte[3], roundTrip(new byte[3]));
+
+        byte[] zeros = new byte[BufferPool.getPageSize()];
+        assertArrayEquals(zeros, roundTrip(zeros));
+        byte[] compressed = new byte[PageCompressor.maxCompressedLength(zeros.length)];
+        assertTrue(PageCompressor.compress(zeros, compressed) < 64);
+
+        Random r = new Random(830);
+        byte[] pattern = new byte[5000];
+        for (int i = 0; i < pattern.length; i++)
+            pattern[i] = (byte) (i % 300 < 20 ? r.nextInt(4) : i % 7);
+        assertArrayEquals(pattern, roundTrip(pattern));
+
+        byte[] random = new byte[BufferPool.getPageSize()];
+        r.nextBytes(random);
+        assertArrayEquals(random, roundTrip(random));
+    }
+
+    /**
+     * Unit test for PageCompressor.decompress() on a block of the wrong size
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void codecWrongSize() throws Exception {
+        byte[] data = new byte[100];
+        byte[] compressed = new byte[PageCompressor.maxCompressedLength(data.length)];
+        int len = PageCompressor.compress(data, compressed);
+        PageCompressor.decompress(compressed, 0, len, new byte[99]);
+    }
+
+    /**
+     * Unit test for CompressedHeapFile.compress() and readPage()
+     */
+    @Test
+    public void compressHeapFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1000, 100, null, tuples);
+        File dest = File.createTempFile("table", ".dat");
+        HeapFile.deleteOnExit(dest);
+
+        CompressedHeapFile cf = CompressedHeapFile.compress(hf, dest);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        assertEquals(hf.numPages(), cf.numPages());
+        assertTrue(cf.getCompressionRatio() > 1.0);
+        assertTrue(dest.length() < hf.getFile().length());
+
+        for (int i = 0; i < hf.numPages(); i++) {
+            assertArrayEquals(hf.readPage(new HeapPageId(hf.getId(), i)).getPageData(),
+                    cf.readPage(new HeapPageId(cf.getId(), i)).getPageData());
+        }
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * Unit test for inserts into a CompressedHeapFile that is then reopened
+     */
+    @Test
+    public void insertAndReopen() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.delete();
+        HeapFile.deleteOnExit(f);
+        TupleDesc td = Utility.getTupleDesc(2);
+        CompressedHeapFile cf = new CompressedHeapFile(f, td);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        assertEquals(0, cf.numPages());
+
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1200; i++) {
+            Database.getBufferPool().insertTuple(tid, cf.getId(), Utility.getHeapTuple(i, 2));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(3, cf.numPages());
+
+        // a new instance reads the page index from disk
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        CompressedHeapFile reopened = new CompressedHeapFile(f, td);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(3, reopened.numPages());
+        SystemTestUtil.matchTuples(reopened, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
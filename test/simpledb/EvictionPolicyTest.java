@@ -0,0 +1,159 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final String[] POLICIES = { "lru", "clock", "lru-k", "2q" };
+    private static final int CAPACITY = 20;
+
+    @After
+    public void restoreDefault() {
+        BufferPool.setDefaultPolicy("lru");
+    }
+
+    /**
+     * Runs a trace of lookups and scans against a cache of CAPACITY pages
+     * evicting by policy, and returns the hit ratio of the lookups of hot
+     * pages. Lookups go to 10 hot pages 80% of the time and to 200 cold
+     * pages otherwise; every 100 lookups, a table of 60 pages is scanned.
+     */
+    private static double hotHitRatio(EvictionPolicy policy) {
+        Random rand = new Random(830);
+        HashSet<PageId> cached = new HashSet<PageId>();
+        int hotLookups = 0, hotHits = 0;
+        for (int round = 0; round < 50; round++) {
+            ArrayList<PageId> trace = new ArrayList<PageId>();
+            for (int i = 0; i < 100; i++) {
+                if (rand.nextInt(10) < 8)
+                    trace.add(new HeapPageId(1, rand.nextInt(10)));
+                else
+                    trace.add(new HeapPageId(2, rand.nextInt(200)));
+            }
+            for (int pgNo = 0; pgNo < 60; pgNo++)
+                trace.add(new HeapPageId(3, pgNo));
+
+            for (PageId pid : trace) {
+                boolean hit = cached.contains(pid);
+                if (hit) {
+                    policy.pageHit(pid);
+                } else {
+                    if (cached.size() == CAPACITY) {
+                        PageId victim = policy.evict(p -> true);
+                        assertTrue(cached.remove(victim));
+                    }
+                    cached.add(pid);
+                    policy.pageAdded(pid);
+                }
+                // the first rounds warm the cache up
+                if (round >= 5 && pid.getTableId() == 1) {
+                    hotLookups++;
+                    if (hit)
+                        hotHits++;
+                }
+            }
+        }
+        return (double) hotHits / hotLookups;
+    }
+
+    /**
+     * LRU-K and 2Q keep the hot pages through scans; LRU and CLOCK lose
+     * them to every scan
+     */
+    @Test
+    public void scanResistance() {
+        double lru = hotHitRatio(EvictionPolicy.forName("lru", CAPACITY));
+        double clock = hotHitRatio(EvictionPolicy.forName("clock", CAPACITY));
+        double lruK = hotHitRatio(EvictionPolicy.forName("lru-k", CAPACITY));
+        double twoQ = hotHitRatio(EvictionPolicy.forName("2q", CAPACITY));
+        assertTrue("lru-k " + lruK, lruK > 0.95);
+        assertTrue("2q " + twoQ, twoQ > 0.95);
+        assertTrue("lru " + lru, lru < 0.9);
+        assertTrue("clock " + clock, clock < 0.9);
+    }
+
+    /**
+     * Every policy skips pages that may not be evicted, and gives up when
+     * there are none
+     */
+    @Test
+    public void pinnedPages() {
+        for (String name : POLICIES) {
+            EvictionPolicy policy = EvictionPolicy.forName(name, 4);
+            for (int i = 0; i < 4; i++)
+                policy.pageAdded(new HeapPageId(1, i));
+            policy.pageHit(new HeapPageId(1, 2));
+            policy.pageRemoved(new HeapPageId(1, 3));
+            // unknown pages are ignored
+            policy.pageHit(new HeapPageId(2, 0));
+            policy.pageRemoved(new HeapPageId(2, 0));
+
+            final PageId pinned = new HeapPageId(1, 0);
+            HashSet<PageId> evicted = new HashSet<PageId>();
+            PageId victim;
+            while ((victim = policy.evict(pid -> !pid.equals(pinned))) != null)
+                assertTrue(name, evicted.add(victim));
+            assertEquals(name, new HashSet<PageId>(Arrays.asList(new HeapPageId(1, 1),
+                    new HeapPageId(1, 2))), evicted);
+            assertEquals(name, pinned, policy.evict(pid -> true));
+            assertNull(name, policy.evict(pid -> true));
+        }
+    }
+
+    /**
+     * Pools evict by plain LRU unless another policy is chosen
+     */
+    @Test
+    public void lruByDefault() {
+        assertEquals("lru", BufferPool.getDefaultPolicy());
+        assertTrue(new BufferPool(CAPACITY).getPolicy() instanceof LruPolicy);
+    }
+
+    /**
+     * The configured policy is used by new pools, which keep dirty pages
+     * and count hits and misses
+     */
+    @Test
+    public void bufferPool() throws Exception {
+        for (String name : POLICIES) {
+            BufferPool.setDefaultPolicy(name);
+            Database.resetBufferPool(5);
+            BufferPool pool = Database.getBufferPool();
+            assertEquals(EvictionPolicy.forName(name, 5).getClass(), pool.getPolicy().getClass());
+
+            HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10 * 504, null, null);
+            TransactionId tid = new TransactionId();
+            HeapPageId dirty = new HeapPageId(hf.getId(), 0);
+            pool.getPage(tid, dirty, Permissions.READ_WRITE).markDirty(true, tid);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int pgNo = 1; pgNo < 10; pgNo++)
+                    pool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+            }
+            assertSame(name, tid, pool.getPage(tid, dirty, Permissions.READ_ONLY).isDirty());
+            assertEquals(name, 20, pool.getHitCount() + pool.getMissCount());
+            assertTrue(name, pool.getHitCount() >= 1);
+            pool.transactionComplete(tid, false);
+        }
+
+        try {
+            BufferPool.setDefaultPolicy("mru");
+            fail("unknown policy");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,80 @@
+package simpledb;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private File f;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = File.createTempFile("table", ".fsm");
+        f.delete();
+        f.deleteOnExit();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.nextPageWithSpace() on an empty map
+     */
+    @Test public void emptyMap() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(f);
+        assertEquals(0, fsm.nextPageWithSpace(0));
+        assertEquals(17, fsm.nextPageWithSpace(17));
+        assertFalse(f.exists());
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.setFull()
+     */
+    @Test public void setFull() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(f);
+        for (int i = 0; i < 20; i++)
+            fsm.setFull(i, true);
+        assertEquals(20, fsm.nextPageWithSpace(0));
+
+        fsm.setFull(9, false);
+        assertEquals(9, fsm.nextPageWithSpace(0));
+        assertEquals(9, fsm.nextPageWithSpace(9));
+        assertEquals(20, fsm.nextPageWithSpace(10));
+
+        fsm.setFull(9, true);
+        assertEquals(20, fsm.nextPageWithSpace(0));
+    }
+
+    /**
+     * Unit test for FreeSpaceMap persistence across instances: changes are
+     * kept in memory until create() writes them, and are written through
+     * after that
+     */
+    @Test public void persistent() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(f);
+        for (int i = 0; i < 12; i++)
+            fsm.setFull(i, true);
+        assertFalse(f.exists());
+        fsm.create();
+        fsm.setFull(3, false);
+        fsm.setFull(40, true);
+
+        FreeSpaceMap reopened = new FreeSpaceMap(f);
+        assertEquals(3, reopened.nextPageWithSpace(0));
+        assertEquals(12, reopened.nextPageWithSpace(4));
+        assertEquals(41, reopened.nextPageWithSpace(40));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
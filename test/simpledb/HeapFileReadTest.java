@@ -3,6 +3,7 @@ package simpledb;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.File;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -77,6 +78,36 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode, including
+     * pages appended after the file was first mapped.
+     */
+    @Test
+    public void readPageMemoryMapped() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 520, 1 << 16, null, null);
+        HeapFile channelFile = new HeapFile(f, td);
+        HeapFile mappedFile = new HeapFile(f, td, true);
+        Database.getCatalog().addTable(mappedFile, SystemTestUtil.getUUID());
+        assertTrue(mappedFile.isMemoryMapped());
+        assertEquals(2, mappedFile.numPages());
+
+        for (int i = 0; i < mappedFile.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(mappedFile.getId(), i);
+            assertArrayEquals(channelFile.readPage(pid).getPageData(),
+                    mappedFile.readPage(pid).getPageData());
+        }
+
+        // grow the file; the mapping has to be extended to see the new page
+        HeapPageId newPid = new HeapPageId(mappedFile.getId(), 2);
+        HeapPage newPage = new HeapPage(newPid, HeapPage.createEmptyPageData());
+        newPage.insertTuple(Utility.getHeapTuple(new int[] { 7, 8 }));
+        mappedFile.writePage(newPage);
+        assertEquals(3, mappedFile.numPages());
+        HeapPage readBack = (HeapPage) mappedFile.readPage(newPid);
+        assertEquals(newPage.getNumEmptySlots(), readBack.getNumEmptySlots());
+        assertTrue(readBack.isSlotUsed(0));
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
@@ -101,6 +132,24 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * A scan of a table without pages returns no tuples
+     */
+    @Test
+    public void testIteratorEmpty() throws Exception {
+        File f = File.createTempFile("empty", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile empty = Utility.openHeapFile(2, f);
+        assertEquals(0, empty.numPages());
+
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        assertFalse(it.hasNext());
+        it.rewind();
+        assertFalse(it.hasNext());
+        it.close();
+    }
+
     @Test
     public void testIteratorClose() throws Exception {
         // make more than 1 page. Previous closed iterator would start fetching
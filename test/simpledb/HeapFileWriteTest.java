@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +45,97 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.insertTuple() using the free space map: inserts
+     * should neither visit nor lock pages that are known to be full, and
+     * should reuse a page once a tuple is deleted from it.
+     */
+    @Test public void addTupleSkipsFullPages() throws Exception {
+        for (int i = 0; i < 504 * 2; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(2, empty.numPages());
+
+        TransactionId tid2 = new TransactionId();
+        HeapPageId p0 = new HeapPageId(empty.getId(), 0);
+        HeapPageId p1 = new HeapPageId(empty.getId(), 1);
+        Database.getBufferPool().insertTuple(tid2, empty.getId(), Utility.getHeapTuple(1, 2));
+        assertEquals(3, empty.numPages());
+        assertFalse(Database.getBufferPool().holdsLock(tid2, p0));
+        assertFalse(Database.getBufferPool().holdsLock(tid2, p1));
+        assertTrue(Database.getBufferPool().holdsLock(tid2, new HeapPageId(empty.getId(), 2)));
+
+        // free a slot on page 1; the next insert should land there
+        DbFileIterator it = empty.iterator(tid2);
+        it.open();
+        Tuple victim = null;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().getPageId().equals(p1)) {
+                victim = t;
+                break;
+            }
+        }
+        it.close();
+        Database.getBufferPool().deleteTuple(tid2, victim);
+        Tuple t = Utility.getHeapTuple(2, 2);
+        Database.getBufferPool().insertTuple(tid2, empty.getId(), t);
+        assertEquals(p1, t.getRecordId().getPageId());
+        Database.getBufferPool().transactionComplete(tid2, true);
+    }
+
+    /**
+     * Unit test for HeapFile.insertTuples(): each page is filled before the
+     * next one is used, and returned once
+     */
+    @Test public void addTuples() throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 2 + 1; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+
+        ArrayList<Page> pages = empty.insertTuples(tid, tuples.iterator());
+        assertEquals(3, empty.numPages());
+        assertEquals(3, pages.size());
+        for (int i = 0; i < pages.size(); ++i) {
+            assertEquals(i, pages.get(i).getId().getPageNumber());
+            assertEquals(tid, pages.get(i).isDirty());
+        }
+        assertEquals(0, ((HeapPage) pages.get(0)).getNumEmptySlots());
+        assertEquals(0, ((HeapPage) pages.get(1)).getNumEmptySlots());
+        assertEquals(503, ((HeapPage) pages.get(2)).getNumEmptySlots());
+        for (int i = 0; i < tuples.size(); ++i)
+            assertEquals(i / 504, tuples.get(i).getRecordId().getPageId().getPageNumber());
+    }
+
+    /**
+     * Unit test for BufferPool.insertTuples() on a table with free space in
+     * an existing page
+     */
+    @Test public void addTuplesFillsFreeSpace() throws Exception {
+        for (int i = 0; i < 500; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid, true);
+
+        TransactionId tid2 = new TransactionId();
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 10; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().insertTuples(tid2, empty.getId(), tuples.iterator());
+        assertEquals(2, empty.numPages());
+        for (int i = 0; i < 10; ++i)
+            assertEquals(i < 4 ? 0 : 1, tuples.get(i).getRecordId().getPageId().getPageNumber());
+        DbFileIterator it = empty.iterator(tid2);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(510, count);
+        Database.getBufferPool().transactionComplete(tid2, true);
+    }
+
     /**
      * JUnit suite target
      */
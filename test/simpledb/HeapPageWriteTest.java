@@ -1,5 +1,6 @@
 package simpledb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -44,6 +45,38 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         assertEquals(false, dirtier != null);
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage() and HeapPage.setBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA.clone());
+        byte[] original = page.getPageData();
+
+        // an unmodified page is its own before image
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+
+        // after a commit the current content becomes the before image
+        page.setBeforeImage();
+        byte[] committed = page.getPageData();
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+        page.insertTuple(Utility.getHeapTuple(3, 2));
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * Changes to a page do not reach the array it was built from
+     */
+    @Test public void constructorCopies() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, data);
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, data);
+    }
+
     /**
      * Unit test for HeapPage.addTuple()
      */
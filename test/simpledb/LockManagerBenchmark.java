@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of the lock manager as the number of threads
+ * grows. Each thread runs short read-only transactions that lock a few
+ * pages, most of them among a small set of hot pages, and releases them on
+ * commit. Run it with
+ *
+ * <pre>
+ * java -cp bin/src:bin/test simpledb.LockManagerBenchmark [maxThreads] [seconds]
+ * </pre>
+ *
+ * and compare the transactions per second of each row; on a machine with
+ * enough cores they should grow with the number of threads.
+ */
+public class LockManagerBenchmark {
+
+    private static final int HOT_PAGES = 16;
+    private static final int PAGES = 10000;
+    private static final int LOCKS_PER_TRANSACTION = 8;
+
+    /**
+     * Runs threads threads for millis milliseconds.
+     *
+     * @return the number of transactions run per second
+     */
+    private static double run(final int threads, final long millis) throws InterruptedException {
+        final LockManager locks = new LockManager();
+        final AtomicLong transactions = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final Random rand = new Random(t);
+            Thread worker = new Thread(() -> {
+                long done = 0;
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        TransactionId tid = new TransactionId();
+                        for (int i = 0; i < LOCKS_PER_TRANSACTION; i++) {
+                            int pgNo = rand.nextInt(4) == 0 ? HOT_PAGES + rand.nextInt(PAGES)
+                                    : rand.nextInt(HOT_PAGES);
+                            locks.acquire(tid, new HeapPageId(1, pgNo), LockManager.LockMode.SHARED);
+                        }
+                        locks.releaseAll(tid);
+                        done++;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (TransactionAbortedException e) {
+                    throw new RuntimeException("read-only transactions cannot deadlock", e);
+                }
+                transactions.addAndGet(done);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        deadline[0] = begin + millis * 1000000L;
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        return transactions.get() * 1e9 / (System.nanoTime() - begin);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 2000;
+
+        // warm up the JIT
+        run(maxThreads, millis);
+        System.out.println("threads\ttransactions/s\tspeedup");
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double rate = run(threads, millis);
+            if (threads == 1)
+                base = rate;
+            System.out.printf("%d\t%.0f\t%.2f%n", threads, rate, rate / base);
+            if (threads < maxThreads && threads * 2 > maxThreads)
+                threads = maxThreads / 2;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+    private static final LockManager.LockMode S = LockManager.LockMode.SHARED;
+    private static final LockManager.LockMode X = LockManager.LockMode.EXCLUSIVE;
+
+    private LockManager locks;
+    private PageId pid;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        locks = new LockManager();
+        pid = new HeapPageId(1, 0);
+        pool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Requests the lock in another thread; the future completes with the
+     * time the lock was granted, in nanoseconds
+     */
+    private Future<Long> request(final TransactionId tid, final LockManager.LockMode mode,
+            final List<TransactionId> order) {
+        return request(tid, pid, mode, order);
+    }
+
+    private Future<Long> request(final TransactionId tid, final PageId pid,
+            final LockManager.LockMode mode, final List<TransactionId> order) {
+        return pool.submit(() -> {
+            locks.acquire(tid, pid, mode);
+            long now = System.nanoTime();
+            if (order != null) {
+                synchronized (order) {
+                    order.add(tid);
+                }
+            }
+            return now;
+        });
+    }
+
+    /** Waits until the other thread is most likely parked on the lock. */
+    private static void settle() throws InterruptedException {
+        Thread.sleep(100);
+    }
+
+    /**
+     * A waiter is woken as soon as the lock is released, not on a later poll
+     */
+    @Test
+    public void wakesOnRelease() throws Exception {
+        TransactionId holder = new TransactionId();
+        TransactionId waiter = new TransactionId();
+        long worst = 0;
+        for (int i = 0; i < 20; i++) {
+            locks.acquire(holder, pid, X);
+            Future<Long> granted = request(waiter, X, null);
+            settle();
+            assertFalse(granted.isDone());
+            long released = System.nanoTime();
+            locks.release(holder, pid);
+            worst = Math.max(worst, granted.get() - released);
+            locks.release(waiter, pid);
+        }
+        // polling every 50 ms would take up to 50 ms
+        assertTrue("woken after " + worst / 1000 + " us", worst < TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * Waiters are granted in arrival order, and a reader does not overtake a
+     * waiting writer
+     */
+    @Test
+    public void fifo() throws Exception {
+        TransactionId reader = new TransactionId();
+        locks.acquire(reader, pid, S);
+        List<TransactionId> order = new ArrayList<TransactionId>();
+        TransactionId writer1 = new TransactionId();
+        TransactionId reader2 = new TransactionId();
+        TransactionId writer2 = new TransactionId();
+        Future<Long> w1 = request(writer1, X, order);
+        settle();
+        Future<Long> r2 = request(reader2, S, order);
+        settle();
+        Future<Long> w2 = request(writer2, X, order);
+        settle();
+        assertFalse(r2.isDone());
+
+        locks.release(reader, pid);
+        w1.get();
+        settle();
+        assertFalse(r2.isDone());
+        locks.release(writer1, pid);
+        r2.get();
+        locks.release(reader2, pid);
+        w2.get();
+        assertEquals(Arrays.asList(writer1, reader2, writer2), order);
+    }
+
+    /**
+     * An upgrade goes ahead of the requests already waiting
+     */
+    @Test
+    public void upgradeFirst() throws Exception {
+        TransactionId upgrader = new TransactionId();
+        TransactionId other = new TransactionId();
+        locks.acquire(upgrader, pid, S);
+        locks.acquire(other, pid, S);
+        List<TransactionId> order = new ArrayList<TransactionId>();
+        TransactionId writer = new TransactionId();
+        Future<Long> w = request(writer, X, order);
+        settle();
+        Future<Long> u = request(upgrader, X, order);
+        settle();
+        assertFalse(u.isDone());
+
+        locks.release(other, pid);
+        u.get();
+        assertTrue(locks.holdsLock(upgrader, pid));
+        assertFalse(w.isDone());
+        locks.release(upgrader, pid);
+        w.get();
+        assertEquals(Arrays.asList(upgrader, writer), order);
+    }
+
+    /**
+     * A request that times out aborts and leaves the queue, so the requests
+     * behind it can go on
+     */
+    @Test
+    public void timeout() throws Exception {
+        TransactionId reader = new TransactionId();
+        locks.acquire(reader, pid, S);
+        locks.setDeadlockMode(LockManager.DeadlockMode.TIMEOUT);
+        locks.setTimeout(100);
+        Future<Long> writer = request(new TransactionId(), X, null);
+        settle();
+        // the mode applies to the requests made after it is set
+        locks.setDeadlockMode(LockManager.DeadlockMode.DETECT);
+        TransactionId reader2 = new TransactionId();
+        Future<Long> r2 = request(reader2, S, null);
+        try {
+            writer.get();
+            fail("writer should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TransactionAbortedException);
+        }
+        r2.get();
+        assertTrue(locks.holdsLock(reader2, pid));
+        locks.releaseAll(reader);
+        locks.releaseAll(reader2);
+        assertFalse(locks.holdsLock(reader2, pid));
+    }
+
+    /** Checks that f fails with a TransactionAbortedException. */
+    private static void assertAborted(Future<Long> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("transaction should have aborted");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TransactionAbortedException);
+        }
+    }
+
+    /**
+     * A deadlock is found as soon as it forms, and by default its youngest
+     * transaction aborts, which lets the others go on
+     */
+    @Test
+    public void detectsDeadlock() throws Exception {
+        PageId other = new HeapPageId(1, 1);
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        locks.acquire(older, pid, X);
+        locks.acquire(younger, other, S);
+        Future<Long> o = request(older, other, X, null);
+        settle();
+        long start = System.nanoTime();
+        assertAborted(request(younger, pid, S, null));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertFalse(o.isDone());
+        locks.releaseAll(younger);
+        o.get();
+        assertTrue(locks.holdsLock(older, other));
+    }
+
+    /**
+     * Under LEAST_WORK the transaction with the fewest exclusive locks
+     * aborts, even if it is older and was already waiting
+     */
+    @Test
+    public void leastWorkVictim() throws Exception {
+        locks.setVictim(LockManager.Victim.LEAST_WORK);
+        PageId other = new HeapPageId(1, 1);
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        locks.acquire(older, pid, X);
+        locks.acquire(younger, other, X);
+        locks.acquire(younger, new HeapPageId(1, 2), X);
+        Future<Long> o = request(older, other, X, null);
+        settle();
+        Future<Long> y = request(younger, pid, X, null);
+        assertAborted(o);
+        assertFalse(y.isDone());
+        locks.releaseAll(older);
+        y.get();
+        assertTrue(locks.holdsLock(younger, pid));
+    }
+
+    /**
+     * Under WAIT_DIE a younger transaction aborts rather than wait for an
+     * older one, while an older one waits
+     */
+    @Test
+    public void waitDie() throws Exception {
+        locks.setDeadlockMode(LockManager.DeadlockMode.WAIT_DIE);
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        locks.acquire(older, pid, S);
+        assertAborted(request(younger, X, null));
+        locks.releaseAll(older);
+        locks.releaseAll(younger);
+
+        locks.acquire(younger, pid, S);
+        Future<Long> o = request(older, X, null);
+        settle();
+        assertFalse(o.isDone());
+        locks.releaseAll(younger);
+        o.get();
+    }
+
+    /**
+     * Under WOUND_WAIT an older transaction aborts the younger ones it waits
+     * for, waking them if they wait themselves, while a younger one waits
+     */
+    @Test
+    public void woundWait() throws Exception {
+        locks.setDeadlockMode(LockManager.DeadlockMode.WOUND_WAIT);
+        PageId other = new HeapPageId(1, 1);
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        locks.acquire(older, other, X);
+        locks.acquire(younger, pid, X);
+        Future<Long> y = request(younger, other, S, null);
+        settle();
+        assertFalse(y.isDone());
+        Future<Long> o = request(older, pid, X, null);
+        assertAborted(y);
+        locks.releaseAll(younger);
+        o.get();
+
+        // a wounded transaction that was not waiting aborts on its next request
+        TransactionId youngest = new TransactionId();
+        locks.acquire(youngest, new HeapPageId(1, 2), S);
+        Future<Long> o2 = request(older, new HeapPageId(1, 2), X, null);
+        settle();
+        try {
+            locks.acquire(youngest, new HeapPageId(1, 3), S);
+            fail("wounded transaction should have aborted");
+        } catch (TransactionAbortedException e) {
+        }
+        locks.releaseAll(youngest);
+        o2.get();
+    }
+
+    /**
+     * Without a deadlock a transaction waits as long as it takes
+     */
+    @Test
+    public void longWait() throws Exception {
+        TransactionId holder = new TransactionId();
+        locks.acquire(holder, pid, X);
+        Future<Long> waiter = request(new TransactionId(), X, null);
+        Thread.sleep(1500);
+        assertFalse(waiter.isDone());
+        locks.releaseAll(holder);
+        waiter.get();
+    }
+
+    /**
+     * Releasing the locks of a transaction releases those and no others, and
+     * wakes the transactions waiting for them
+     */
+    @Test
+    public void releaseAllOwnLocks() throws Exception {
+        TransactionId[] tids = new TransactionId[10];
+        for (int i = 0; i < tids.length; i++) {
+            tids[i] = new TransactionId();
+            for (int pgNo = 0; pgNo < 100; pgNo++)
+                locks.acquire(tids[i], new HeapPageId(1, pgNo * tids.length + i), X);
+            // everyone shares page 0 of table 2
+            locks.acquire(tids[i], new HeapPageId(2, 0), S);
+            assertEquals(101, locks.lockCount(tids[i]));
+        }
+        TransactionId waiter = new TransactionId();
+        Future<Long> w = request(waiter, new HeapPageId(1, 3), X, null);
+        settle();
+        assertFalse(w.isDone());
+
+        locks.releaseAll(tids[3]);
+        w.get();
+        assertEquals(0, locks.lockCount(tids[3]));
+        assertFalse(locks.holdsLock(tids[3], new HeapPageId(2, 0)));
+        for (int i = 0; i < tids.length; i++) {
+            if (i == 3)
+                continue;
+            assertEquals(101, locks.lockCount(tids[i]));
+            assertTrue(locks.holdsLock(tids[i], new HeapPageId(1, 50 * tids.length + i)));
+            assertTrue(locks.holdsLock(tids[i], new HeapPageId(2, 0)));
+        }
+    }
+
+    /**
+     * Many threads taking shared and exclusive locks on a few pages never
+     * let a writer in with anybody else
+     */
+    @Test
+    public void concurrentAccess() throws Exception {
+        final int pages = 4;
+        final int[] readers = new int[pages];
+        final boolean[] writer = new boolean[pages];
+        final boolean[] broken = new boolean[1];
+        List<Future<Long>> done = new ArrayList<Future<Long>>();
+        for (int t = 0; t < 8; t++) {
+            final Random rand = new Random(t);
+            done.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    TransactionId tid = new TransactionId();
+                    int pgNo = rand.nextInt(pages);
+                    boolean write = rand.nextInt(10) == 0;
+                    locks.acquire(tid, new HeapPageId(1, pgNo), write ? X : S);
+                    synchronized (readers) {
+                        if (writer[pgNo] || (write && readers[pgNo] > 0))
+                            broken[0] = true;
+                        if (write)
+                            writer[pgNo] = true;
+                        else
+                            readers[pgNo]++;
+                    }
+                    Thread.yield();
+                    synchronized (readers) {
+                        if (write)
+                            writer[pgNo] = false;
+                        else
+                            readers[pgNo]--;
+                    }
+                    locks.releaseAll(tid);
+                }
+                return 0L;
+            }));
+        }
+        for (Future<Long> f : done)
+            f.get();
+        assertFalse(broken[0]);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
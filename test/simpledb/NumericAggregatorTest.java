@@ -0,0 +1,120 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class NumericAggregatorTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.LONG_TYPE,
+            Type.DOUBLE_TYPE, Type.DATE_TYPE });
+
+    private static Tuple tuple(int g, long l, double d, String date) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(g));
+        t.setField(1, new LongField(l));
+        t.setField(2, new DoubleField(d));
+        t.setField(3, DateField.valueOf(date));
+        return t;
+    }
+
+    private static final Tuple[] TUPLES = new Tuple[] {
+        tuple(1, 5000000000L, 1.5, "2021-03-01"),
+        tuple(1, 7000000000L, 2.0, "2020-12-31"),
+        tuple(2, -1L, -0.25, "2022-01-01"),
+        tuple(1, 3000000000L, 0.5, "2021-06-15"),
+    };
+
+    /** Runs an aggregate and returns the result field of each group. */
+    private static Map<Field, Field> aggregate(int afield, Aggregator.Op op, boolean grouped) throws Exception {
+        NumericAggregator agg = new NumericAggregator(grouped ? 0 : Aggregator.NO_GROUPING,
+                grouped ? Type.INT_TYPE : null, afield, TD.getFieldType(afield), op);
+        for (Tuple t : TUPLES)
+            agg.mergeTupleIntoGroup(t);
+
+        HashMap<Field, Field> results = new HashMap<Field, Field>();
+        OpIterator it = agg.iterator();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (grouped)
+                results.put(t.getField(0), t.getField(1));
+            else
+                results.put(null, t.getField(0));
+        }
+        it.close();
+        return results;
+    }
+
+    /**
+     * Aggregates over a LONG_TYPE field
+     */
+    @Test
+    public void longAggregates() throws Exception {
+        Map<Field, Field> sum = aggregate(1, Aggregator.Op.SUM, true);
+        assertEquals(new LongField(15000000000L), sum.get(new IntField(1)));
+        assertEquals(new LongField(-1L), sum.get(new IntField(2)));
+        assertEquals(new LongField(3000000000L), aggregate(1, Aggregator.Op.MIN, true).get(new IntField(1)));
+        assertEquals(new LongField(7000000000L), aggregate(1, Aggregator.Op.MAX, false).get(null));
+        assertEquals(new LongField(5000000000L), aggregate(1, Aggregator.Op.AVG, true).get(new IntField(1)));
+        assertEquals(new IntField(4), aggregate(1, Aggregator.Op.COUNT, false).get(null));
+    }
+
+    /**
+     * Aggregates over a DOUBLE_TYPE field
+     */
+    @Test
+    public void doubleAggregates() throws Exception {
+        assertEquals(new DoubleField(3.75), aggregate(2, Aggregator.Op.SUM, false).get(null));
+        assertEquals(new DoubleField(-0.25), aggregate(2, Aggregator.Op.MIN, false).get(null));
+        assertEquals(new DoubleField(2.0), aggregate(2, Aggregator.Op.MAX, true).get(new IntField(1)));
+        assertEquals(new DoubleField(4.0 / 3), aggregate(2, Aggregator.Op.AVG, true).get(new IntField(1)));
+    }
+
+    /**
+     * MIN, MAX and COUNT over a DATE_TYPE field; SUM is rejected
+     */
+    @Test
+    public void dateAggregates() throws Exception {
+        assertEquals(DateField.valueOf("2020-12-31"), aggregate(3, Aggregator.Op.MIN, false).get(null));
+        assertEquals(DateField.valueOf("2021-06-15"), aggregate(3, Aggregator.Op.MAX, true).get(new IntField(1)));
+        assertEquals(new IntField(3), aggregate(3, Aggregator.Op.COUNT, true).get(new IntField(1)));
+        try {
+            aggregate(3, Aggregator.Op.SUM, false);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The Aggregate operator picks NumericAggregator for the new types
+     */
+    @Test
+    public void aggregateOperator() throws Exception {
+        Aggregate agg = new Aggregate(new TupleIterator(TD, Arrays.asList(TUPLES)), 1, 0, Aggregator.Op.MAX);
+        agg.open();
+        int groups = 0;
+        while (agg.hasNext()) {
+            Tuple t = agg.next();
+            if (t.getField(0).equals(new IntField(1)))
+                assertEquals(new LongField(7000000000L), t.getField(1));
+            groups++;
+        }
+        agg.close();
+        assertEquals(2, groups);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NumericAggregatorTest.class);
+    }
+}
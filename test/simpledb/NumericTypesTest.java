@@ -0,0 +1,146 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.text.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class NumericTypesTest extends SimpleDbTestBase {
+
+    private static final Type[] TYPES = new Type[] { Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DATE_TYPE };
+
+    /**
+     * Fields survive both serialization paths
+     */
+    @Test
+    public void serializeRoundTrip() throws Exception {
+        Field[] fields = new Field[] { new LongField(Long.MIN_VALUE), new DoubleField(-2.5),
+                DateField.valueOf("2024-02-29 13:45:10.250") };
+        for (Field f : fields) {
+            assertEquals(8, f.getType().getLen());
+
+            ByteBuffer buf = ByteBuffer.allocate(12);
+            f.serialize(buf, 4);
+            assertEquals(f, f.getType().parse(buf, 4));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            f.serialize(new DataOutputStream(bytes));
+            assertEquals(8, bytes.size());
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            assertEquals(f, f.getType().parse(in));
+        }
+    }
+
+    /**
+     * Unit test for Type.fromString() and Type.fromName()
+     */
+    @Test
+    public void parseText() throws Exception {
+        assertEquals(new LongField(12345678901L), Type.LONG_TYPE.fromString(" 12345678901 "));
+        assertEquals(new DoubleField(0.125), Type.DOUBLE_TYPE.fromString("0.125"));
+        assertEquals(new DateField(0), Type.DATE_TYPE.fromString("1970-01-01"));
+        assertEquals(new DateField(86400000L + 1000), Type.DATE_TYPE.fromString("1970-01-02 00:00:01"));
+        assertEquals("2024-02-29", Type.DATE_TYPE.fromString("2024-02-29").toString());
+        assertEquals("2024-02-29 13:45:10", Type.DATE_TYPE.fromString("2024-02-29T13:45:10").toString());
+        assertEquals(new StringField(" a ", Type.STRING_LEN), Type.STRING_TYPE.fromString(" a "));
+
+        for (String bad : new String[] { "x", "1.5", "" }) {
+            try {
+                Type.LONG_TYPE.fromString(bad);
+                fail("expected ParseException for " + bad);
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+        try {
+            Type.DATE_TYPE.fromString("2024-13-01");
+            fail("expected ParseException");
+        } catch (ParseException e) {
+            // expected
+        }
+
+        assertEquals(Type.LONG_TYPE, Type.fromName("LONG"));
+        assertEquals(Type.DOUBLE_TYPE, Type.fromName("double"));
+        assertEquals(Type.DATE_TYPE, Type.fromName(" date"));
+        assertNull(Type.fromName("float"));
+    }
+
+    /**
+     * Unit test for compare() of the new fields
+     */
+    @Test
+    public void compare() throws Exception {
+        LongField big = new LongField(1L << 40);
+        assertTrue(big.compare(Predicate.Op.GREATER_THAN, new LongField(Integer.MAX_VALUE)));
+        assertTrue(big.compare(Predicate.Op.EQUALS, new LongField(1L << 40)));
+        assertFalse(big.compare(Predicate.Op.LESS_THAN_OR_EQ, new LongField(0)));
+
+        DoubleField d = new DoubleField(1.5);
+        assertTrue(d.compare(Predicate.Op.LESS_THAN, new DoubleField(1.75)));
+        assertTrue(d.compare(Predicate.Op.NOT_EQUALS, new DoubleField(Double.NaN)));
+        assertTrue(new DoubleField(Double.NaN).compare(Predicate.Op.EQUALS, new DoubleField(Double.NaN)));
+
+        DateField day = DateField.valueOf("2020-06-01");
+        assertTrue(day.compare(Predicate.Op.GREATER_THAN_OR_EQ, DateField.valueOf("2020-06-01")));
+        assertTrue(day.compare(Predicate.Op.LESS_THAN, DateField.valueOf("2020-06-01 00:00:01")));
+    }
+
+    /**
+     * Tables with the new types can be loaded, read and filtered, and have
+     * histograms in TableStats
+     */
+    @Test
+    public void loadAndFilter() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(10000000000L + i).append(',').append(i / 4.0).append(',');
+            sb.append(String.format("2020-01-01 00:%02d:%02d", i / 60, i % 60)).append('\n');
+        }
+        File in = File.createTempFile("types", ".txt");
+        in.deleteOnExit();
+        Files.write(in.toPath(), sb.toString().getBytes("ISO-8859-1"));
+        File out = File.createTempFile("types", ".dat");
+        HeapFile.deleteOnExit(out);
+        new BulkLoader(TYPES, ',').load(in, out);
+
+        HeapFile hf = new HeapFile(out, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        Filter f = new Filter(new Predicate(2, Predicate.Op.LESS_THAN, DateField.valueOf("2020-01-01 00:01:00")),
+                new SeqScan(tid, hf.getId(), ""));
+        f.open();
+        int count = 0;
+        while (f.hasNext()) {
+            Tuple t = f.next();
+            assertEquals(10000000000L + count, ((LongField) t.getField(0)).getValue());
+            assertEquals(count / 4.0, ((DoubleField) t.getField(1)).getValue(), 0.0);
+            count++;
+        }
+        f.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(60, count);
+
+        TableStats stats = new TableStats(hf.getId(), 1000);
+        assertEquals(1000, stats.totalTuples());
+        assertEquals(0.5, stats.estimateSelectivity(0, Predicate.Op.LESS_THAN, new LongField(10000000500L)), 0.02);
+        assertEquals(0.25, stats.estimateSelectivity(1, Predicate.Op.GREATER_THAN_OR_EQ, new DoubleField(187.5)), 0.02);
+        assertEquals(0.06, stats.estimateSelectivity(2, Predicate.Op.LESS_THAN,
+                DateField.valueOf("2020-01-01 00:01:00")), 0.02);
+        assertEquals(0.0, stats.estimateSelectivity(0, Predicate.Op.EQUALS, new LongField(5)), 0.0);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NumericTypesTest.class);
+    }
+}
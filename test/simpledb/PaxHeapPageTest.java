@@ -0,0 +1,187 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxHeapPageTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+    private TupleDesc td;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws IOException {
+        this.pid = new HeapPageId(-1, -1);
+        this.td = Utility.getTupleDesc(3);
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Values of each field are stored together, after the header
+     */
+    @Test public void layout() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(new int[] { 1, 2, 3 }));
+        page.insertTuple(Utility.getHeapTuple(new int[] { 4, 5, 6 }));
+
+        int numSlots = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        assertEquals(numSlots - 2, page.getNumEmptySlots());
+
+        ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+        assertEquals(3, buf.get(0));
+        assertEquals(1, buf.getInt(headerSize));
+        assertEquals(4, buf.getInt(headerSize + 4));
+        assertEquals(2, buf.getInt(headerSize + numSlots * 4));
+        assertEquals(5, buf.getInt(headerSize + numSlots * 4 + 4));
+        assertEquals(3, buf.getInt(headerSize + numSlots * 8));
+        assertEquals(6, buf.getInt(headerSize + numSlots * 8 + 4));
+    }
+
+    /**
+     * Unit test for PaxHeapPage.iterator() and deleteTuple()
+     */
+    @Test public void insertDelete() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, HeapPage.createEmptyPageData());
+        Tuple first = Utility.getHeapTuple(new int[] { 1, 2, 3 });
+        page.insertTuple(first);
+        page.insertTuple(Utility.getHeapTuple(new int[] { 4, 5, 6 }));
+        page.deleteTuple(first);
+
+        PaxHeapPage copy = new PaxHeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        assertTrue(it.hasNext());
+        Tuple t = it.next();
+        assertEquals(new RecordId(pid, 1), t.getRecordId());
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(new int[] { 4, 5, 6 }), t));
+        assertFalse(it.hasNext());
+
+        // the before image keeps the page format
+        PaxHeapPage before = page.getBeforeImage();
+        assertFalse(before.iterator().hasNext());
+    }
+
+    /**
+     * Unit test for PaxHeapPage.iterator(int[])
+     */
+    @Test public void projectedIterator() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(new int[] { 1, 2, 3 }));
+        page = new PaxHeapPage(pid, page.getPageData());
+
+        Iterator<Tuple> it = page.iterator(new int[] { 2 });
+        Tuple t = it.next();
+        assertNull(t.getField(0));
+        assertNull(t.getField(1));
+        assertEquals(new IntField(3), t.getField(2));
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for a SeqScan over a HeapFile stored in PAX pages
+     */
+    @Test public void paxSeqScan() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, td, PageLayout.PAX, false);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(tid, hf.getId(),
+                    Utility.getHeapTuple(new int[] { i, 2 * i, 3 * i }));
+        Database.getBufferPool().transactionComplete(tid, true);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t", new int[] { 0, 2 });
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            int v = ((IntField) t.getField(0)).getValue();
+            assertEquals(new IntField(3 * v), t.getField(2));
+            assertNull(t.getField(1));
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1000, count);
+    }
+
+    private static SeqScan findScan(OpIterator op) {
+        while (!(op instanceof SeqScan))
+            op = ((Operator) op).getChildren()[0];
+        return (SeqScan) op;
+    }
+
+    /**
+     * The scans of a planned query only decode the fields the query reads
+     */
+    @Test public void plannedScanDecodesUsedFields() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        HeapFile.deleteOnExit(f);
+        // fields named the way the planner qualifies them
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(3, "t.key"), PageLayout.PAX, false);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 100; i++)
+            Database.getBufferPool().insertTuple(tid, hf.getId(),
+                    Utility.getHeapTuple(new int[] { i, 2 * i, 3 * i }));
+        Database.getBufferPool().transactionComplete(tid, true);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(Database.getCatalog().getTableName(hf.getId()), new TableStats(hf.getId(), 1));
+        // drop the pages that computing the statistics decoded in full
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.key2", Predicate.Op.GREATER_THAN_OR_EQ, "150");
+        lp.addProjectField("t.key0", null);
+        tid = new TransactionId();
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            assertEquals(50 + count, plan.next().getInt(0));
+            count++;
+        }
+        plan.close();
+        assertEquals(50, count);
+
+        // the field that is neither selected nor filtered on is not decoded
+        SeqScan scan = findScan(plan);
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertNotNull(t.getField(0));
+            assertNull(t.getField(1));
+            assertNotNull(t.getField(2));
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapPageTest.class);
+    }
+}
@@ -0,0 +1,153 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int PAGES = 10;
+
+    /** Counts the number of readPage operations. */
+    private static class InstrumentedHeapFile extends HeapFile {
+        final AtomicInteger readCount = new AtomicInteger();
+
+        public InstrumentedHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            readCount.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    private InstrumentedHeapFile table;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before
+    public void createTable() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        table = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        ReadAhead.setWindow(4);
+        ReadAhead.setTrigger(2);
+    }
+
+    @After
+    public void resetReadAhead() {
+        ReadAhead.setWindow(0);
+        ReadAhead.setTrigger(ReadAhead.DEFAULT_TRIGGER);
+    }
+
+    private void waitForReads(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && table.readCount.get() < count; i++)
+            Thread.sleep(10);
+    }
+
+    /**
+     * Pages after the current one are loaded once the scan is sequential,
+     * and each page is only read once.
+     */
+    @Test
+    public void prefetchSequentialScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+
+        // the first tuple of the second page triggers read-ahead
+        for (int i = 0; i < 993; i++)
+            it.next();
+        waitForReads(6);
+        assertEquals(6, table.readCount.get());
+
+        int count = 993;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(tuples.size(), count);
+        assertEquals(PAGES, table.readCount.get());
+    }
+
+    /**
+     * Nothing is prefetched when read-ahead is disabled.
+     */
+    @Test
+    public void disabled() throws Exception {
+        ReadAhead.setWindow(0);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        for (int i = 0; i < 2 * 992 + 1; i++)
+            it.next();
+        Thread.sleep(100);
+        assertEquals(3, table.readCount.get());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Scans a table of pages pages through a pool of 20 pages, and returns
+     * the number of pages read.
+     */
+    private int readsOfLargeScan(int pages) throws Exception {
+        Database.resetBufferPool(20);
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * pages, 1000, null, null);
+        InstrumentedHeapFile large = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(large, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = large.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(992 * pages, count);
+        return large.readCount.get();
+    }
+
+    /**
+     * Read-ahead does not read pages again when the table does not fit in
+     * the pool: the pages the scan evicts do not invalidate the prefetches
+     */
+    @Test
+    public void largerThanPool() throws Exception {
+        ReadAhead.setWindow(0);
+        assertEquals(60, readsOfLargeScan(60));
+        ReadAhead.setWindow(8);
+        String defaultPolicy = BufferPool.getDefaultPolicy();
+        try {
+            for (String policy : new String[] { "lru", "clock", "lru-k", "2q" }) {
+                BufferPool.setDefaultPolicy(policy);
+                assertEquals(policy, 60, readsOfLargeScan(60));
+            }
+        } finally {
+            BufferPool.setDefaultPolicy(defaultPolicy);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,185 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+    private TupleDesc td;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws IOException {
+        this.pid = new HeapPageId(-1, -1);
+        this.td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    private Tuple getTuple(int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private ArrayList<Tuple> getTuples(SlottedHeapPage page) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            tuples.add(it.next());
+        return tuples;
+    }
+
+    /**
+     * Unit test for SlottedHeapPage on an all-zero page
+     */
+    @Test public void emptyPage() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        assertFalse(page.iterator().hasNext());
+        assertFalse(page.isSlotUsed(0));
+        // only full size tuples are counted
+        int maxSize = 4 + 2 + Type.STRING_LEN + SlottedHeapPage.SLOT_SIZE;
+        assertEquals((BufferPool.getPageSize() - SlottedHeapPage.HEADER_SIZE) / maxSize,
+                page.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for SlottedHeapPage.insertTuple() and reading the page back
+     */
+    @Test public void insertTuple() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < 20; i++) {
+            Tuple t = getTuple(i, "code" + i);
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            assertTrue(page.isSlotUsed(i));
+        }
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        ArrayList<Tuple> tuples = getTuples(copy);
+        assertEquals(20, tuples.size());
+        for (int i = 0; i < 20; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("code" + i, Type.STRING_LEN), t.getField(1));
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+    }
+
+    /**
+     * Short strings take less room than on a HeapPage
+     */
+    @Test public void density() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        int count = 0;
+        try {
+            while (true) {
+                page.insertTuple(getTuple(count, "ab"));
+                count++;
+            }
+        } catch (DbException e) {
+            // page is full
+        }
+        int perTuple = 4 + 2 + 2 + SlottedHeapPage.SLOT_SIZE;
+        assertEquals((BufferPool.getPageSize() - SlottedHeapPage.HEADER_SIZE) / perTuple, count);
+        int rowTuples = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        assertTrue(count > 10 * rowTuples);
+        assertEquals(count, getTuples(page).size());
+    }
+
+    /**
+     * Unit test for SlottedHeapPage.deleteTuple() with slot reuse and compaction
+     */
+    @Test public void deleteTuple() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+        try {
+            while (true) {
+                Tuple t = getTuple(inserted.size(), "x");
+                page.insertTuple(t);
+                inserted.add(t);
+            }
+        } catch (DbException e) {
+            // page is full
+        }
+
+        // free every other tuple; the space is fragmented between live tuples
+        for (int i = 0; i < inserted.size(); i += 2)
+            page.deleteTuple(inserted.get(i));
+        assertFalse(page.isSlotUsed(0));
+        assertTrue(page.isSlotUsed(1));
+        try {
+            page.deleteTuple(inserted.get(0));
+            throw new Exception("page should have thrown on double delete");
+        } catch (DbException e) {
+            // expected
+        }
+
+        // longer tuples only fit once the page is compacted
+        Tuple big = getTuple(-1, "a longer string than before");
+        page.insertTuple(big);
+        assertEquals(new RecordId(pid, 0), big.getRecordId());
+
+        ArrayList<Tuple> tuples = getTuples(new SlottedHeapPage(pid, page.getPageData()));
+        assertEquals(new StringField("a longer string than before", Type.STRING_LEN),
+                tuples.get(0).getField(1));
+        for (int i = 1; i < tuples.size(); i++)
+            assertEquals(1, tuples.get(i).getRecordId().getTupleNumber() % 2);
+        assertEquals(inserted.size() / 2 + 1, tuples.size());
+    }
+
+    /**
+     * Unit test for a HeapFile stored in SLOTTED pages
+     */
+    @Test public void slottedHeapFile() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile hf = new HeapFile(f, td, PageLayout.SLOTTED, false);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertEquals(PageLayout.SLOTTED, hf.getLayout());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(tid, hf.getId(), getTuple(i, "c" + (i % 10)));
+        Database.getBufferPool().transactionComplete(tid);
+
+        // 1000 short tuples fit in far fewer pages than the 34 a HeapPage needs
+        assertTrue(hf.numPages() < 5);
+
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals("c" + (((IntField) t.getField(0)).getValue() % 10),
+                    ((StringField) t.getField(1)).getValue());
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1000, count);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
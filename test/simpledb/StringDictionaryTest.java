@@ -0,0 +1,207 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class StringDictionaryTest extends SimpleDbTestBase {
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+    private static final TupleDesc TD = new TupleDesc(TYPES, new String[] { "id", "city" });
+    private static final String[] CITIES = { "Boston", "Cambridge", "Somerville", "Medford" };
+
+    private static File tempFile(String suffix) throws IOException {
+        File f = File.createTempFile("dict", suffix);
+        f.delete();
+        HeapFile.deleteOnExit(f);
+        return f;
+    }
+
+    private static HeapFile open(File f, PageLayout layout) throws IOException {
+        HeapFile hf = new HeapFile(f, TD, layout, false);
+        hf.setDictionaryEncoded(1);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static Tuple tuple(int id, String city) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(city, Type.STRING_LEN));
+        return t;
+    }
+
+    private static ArrayList<Tuple> readAll(HeapFile hf) throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return result;
+    }
+
+    /**
+     * Encoded tables store codes on their pages and decode them to shared
+     * fields, also after the table is reopened
+     */
+    private void insertAndReopen(PageLayout layout) throws Exception {
+        File f = tempFile(".dat");
+        HeapFile hf = open(f, layout);
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 1000; i++)
+            tuples.add(tuple(i, CITIES[i % CITIES.length]));
+        Database.getBufferPool().insertTuples(tid, hf.getId(), tuples.iterator());
+        Database.getBufferPool().transactionComplete(tid, true);
+
+        // 8 bytes per tuple instead of 136
+        assertEquals(2, hf.numPages());
+        assertEquals(CITIES.length, hf.getDictionary().size(1));
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = open(f, layout);
+        ArrayList<Tuple> read = readAll(reopened);
+        assertEquals(1000, read.size());
+        for (Tuple t : read) {
+            int id = ((IntField) t.getField(0)).getValue();
+            DictStringField city = (DictStringField) t.getField(1);
+            assertEquals(CITIES[id % CITIES.length], city.getValue());
+            assertEquals(id % CITIES.length, city.getCode());
+            assertSame(reopened.getDictionary().decode(1, city.getCode()), city);
+        }
+    }
+
+    @Test
+    public void insertAndReopenRow() throws Exception {
+        insertAndReopen(PageLayout.ROW);
+    }
+
+    @Test
+    public void insertAndReopenPax() throws Exception {
+        insertAndReopen(PageLayout.PAX);
+    }
+
+    /**
+     * Encoded values compare and hash by code, and stay interchangeable with
+     * plain StringFields
+     */
+    @Test
+    public void compareCodes() throws Exception {
+        File f = tempFile(".dat");
+        StringDictionary dict = new StringDictionary(f, TD, new int[] { 1 });
+        int boston = dict.encode(1, "Boston");
+        int cambridge = dict.encode(1, "Cambridge");
+        assertEquals(boston, dict.encode(1, "Boston"));
+        assertTrue(boston != cambridge);
+
+        DictStringField b = dict.decode(1, boston);
+        DictStringField c = dict.decode(1, cambridge);
+        StringField plain = new StringField("Boston", Type.STRING_LEN);
+        assertTrue(b.compare(Predicate.Op.EQUALS, dict.decode(1, boston)));
+        assertTrue(b.compare(Predicate.Op.NOT_EQUALS, c));
+        assertTrue(b.compare(Predicate.Op.LESS_THAN, c));
+        assertTrue(b.compare(Predicate.Op.EQUALS, plain));
+        assertEquals(plain, b);
+        assertEquals(b, plain);
+        assertEquals(plain.hashCode(), b.hashCode());
+
+        // the dictionary is reloaded with the same codes
+        StringDictionary reloaded = new StringDictionary(f, TD, new int[] { 1 });
+        assertEquals(2, reloaded.size(1));
+        assertEquals(cambridge, reloaded.encode(1, "Cambridge"));
+        assertEquals(boston, reloaded.encode(1, plain));
+    }
+
+    /**
+     * An entry cut short by a crash during encode is dropped on reopen, and
+     * later entries are appended after the last complete one
+     */
+    @Test
+    public void tornEntry() throws Exception {
+        File f = tempFile(".dat");
+        StringDictionary dict = new StringDictionary(f, TD, new int[] { 1 });
+        int boston = dict.encode(1, "Boston");
+        long length = f.length();
+
+        // the column and length of an entry for "Cambridge", but only half its bytes
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(f, true));
+        out.writeInt(1);
+        out.writeShort("Cambridge".length());
+        out.writeBytes("Camb");
+        out.close();
+
+        StringDictionary reloaded = new StringDictionary(f, TD, new int[] { 1 });
+        assertEquals(length, f.length());
+        assertEquals(1, reloaded.size(1));
+        assertEquals(boston, reloaded.encode(1, "Boston"));
+        int cambridge = reloaded.encode(1, "Cambridge");
+
+        // a torn column index is dropped too
+        out = new DataOutputStream(new FileOutputStream(f, true));
+        out.writeShort(0);
+        out.close();
+        reloaded = new StringDictionary(f, TD, new int[] { 1 });
+        assertEquals(2, reloaded.size(1));
+        assertEquals("Cambridge", reloaded.decode(1, cambridge).getValue());
+    }
+
+    /**
+     * Only string columns can be encoded
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeIntColumn() throws Exception {
+        new StringDictionary(tempFile(".dat"), TD, new int[] { 0 });
+    }
+
+    /**
+     * BulkLoader writes encoded tables, and grouping works on their codes
+     */
+    @Test
+    public void bulkLoadAndGroup() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+            sb.append(i).append(',').append(CITIES[i % 3]).append('\n');
+        File in = tempFile(".txt");
+        Files.write(in.toPath(), sb.toString().getBytes("ISO-8859-1"));
+
+        File plain = tempFile(".dat");
+        new BulkLoader(TYPES, ',').load(in, plain);
+        File encoded = tempFile(".dat");
+        BulkLoader loader = new BulkLoader(TYPES, ',');
+        loader.setDictionaryEncoded(1);
+        loader.load(in, encoded);
+        assertTrue(plain.length() > 10 * encoded.length());
+
+        HeapFile hf = open(encoded, PageLayout.ROW);
+        TransactionId tid = new TransactionId();
+        Aggregate agg = new Aggregate(new SeqScan(tid, hf.getId(), ""), 0, 1, Aggregator.Op.COUNT);
+        agg.open();
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        while (agg.hasNext()) {
+            Tuple t = agg.next();
+            counts.put(((StringField) t.getField(0)).getValue(), ((IntField) t.getField(1)).getValue());
+        }
+        agg.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(3, counts.size());
+        assertEquals(Integer.valueOf(1667), counts.get("Boston"));
+        assertEquals(Integer.valueOf(1666), counts.get("Somerville"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StringDictionaryTest.class);
+    }
+}
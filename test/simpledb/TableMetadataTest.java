@@ -0,0 +1,165 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class TableMetadataTest extends SimpleDbTestBase {
+
+    /** Tuples of two ints per page of the default size. */
+    private static final int PER_PAGE = 504;
+
+    private File f;
+    private HeapFile hf;
+
+    /**
+     * Creates a table of 3 pages, the last one holding 100 tuples
+     */
+    @Before
+    public void createTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        f = SystemTestUtil.createRandomHeapFileUnopened(2, 2 * PER_PAGE + 100, 1000, null, tuples);
+        hf = open();
+    }
+
+    private HeapFile open() {
+        HeapFile file = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        return file;
+    }
+
+    private void scan() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            it.next();
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Tuple counts are learned as pages are read, and kept across reopens
+     * once the table is written
+     */
+    @Test
+    public void counts() throws Exception {
+        TableMetadata meta = hf.getMetadata();
+        assertEquals(3, meta.getNumPages());
+        assertEquals(-1, meta.getTupleCount());
+        scan();
+        assertEquals(2 * PER_PAGE + 100, meta.getTupleCount());
+        assertEquals(PER_PAGE, meta.getTupleCount(0));
+        assertEquals(100, meta.getTupleCount(2));
+        assertEquals(PER_PAGE - 100, meta.getFreeSlots());
+        // reading the table leaves no files behind
+        for (String suffix : HeapFile.SIDE_FILES)
+            assertFalse(suffix, new File(f.getPath() + suffix).exists());
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { 1, 1 }));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertTrue(meta.getFile().exists());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = open();
+        assertEquals(2 * PER_PAGE + 101, hf.getMetadata().getTupleCount());
+    }
+
+    /**
+     * Counts change when inserts and deletes commit, not when they abort
+     */
+    @Test
+    public void transactional() throws Exception {
+        scan();
+        TableMetadata meta = hf.getMetadata();
+
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> batch = new ArrayList<Tuple>();
+        for (int i = 0; i < PER_PAGE; i++)
+            batch.add(Utility.getHeapTuple(new int[] { i, i }));
+        Database.getBufferPool().insertTuples(tid, hf.getId(), batch.iterator());
+        // the new page is on disk, but still empty there
+        assertEquals(4, hf.numPages());
+        assertEquals(2 * PER_PAGE + 100, meta.getTupleCount());
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(3 * PER_PAGE + 100, meta.getTupleCount());
+        assertEquals(100, meta.getTupleCount(3));
+        assertEquals(4 * PER_PAGE - meta.getTupleCount(), meta.getFreeSlots());
+
+        tid = new TransactionId();
+        for (int i = 0; i < 10; i++)
+            Database.getBufferPool().deleteTuple(tid, batch.get(i));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(3 * PER_PAGE + 100, meta.getTupleCount());
+
+        tid = new TransactionId();
+        for (int i = 0; i < 10; i++)
+            Database.getBufferPool().deleteTuple(tid, batch.get(i));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(3 * PER_PAGE + 90, meta.getTupleCount());
+    }
+
+    /**
+     * Metadata that does not describe the file is thrown away
+     */
+    @Test
+    public void stale() throws Exception {
+        scan();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        // another schema
+        HeapFile other = new HeapFile(f, Utility.getTupleDesc(3));
+        assertEquals(-1, other.getMetadata().getTupleCount());
+        assertFalse(other.getMetadata().isKnown(0));
+
+        // a shorter file
+        scan();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength(2L * BufferPool.getPageSize());
+        raf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = open();
+        assertEquals(2, hf.numPages());
+        assertEquals(-1, hf.getMetadata().getTupleCount());
+        scan();
+        assertEquals(2 * PER_PAGE, hf.getMetadata().getTupleCount());
+    }
+
+    /**
+     * Scans read the page count from the metadata; only opening the scan
+     * asks the file system. Table statistics take the tuple count from it.
+     */
+    @Test
+    public void cachedCounts() throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        hf = new HeapFile(f, Utility.getTupleDesc(2)) {
+            @Override
+            int countPages() {
+                lookups.incrementAndGet();
+                return super.countPages();
+            }
+        };
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        hf.getMetadata();
+        lookups.set(0);
+        scan();
+        assertEquals(1, lookups.get());
+
+        assertEquals(2 * PER_PAGE + 100, new TableStats(hf.getId(), 1).totalTuples());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TableMetadataTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class VacuumTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> kept;
+
+    /**
+     * Creates a table of 20 full pages and deletes all but every tenth
+     * tuple, which then fit in 2 pages
+     */
+    @Before
+    public void createTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(2, 20 * 504, null, tuples);
+        assertEquals(20, hf.numPages());
+
+        kept = new ArrayList<ArrayList<Integer>>();
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> scanned = new ArrayList<Tuple>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            scanned.add(it.next());
+        it.close();
+        for (int i = 0; i < scanned.size(); i++) {
+            if (i % 10 == 0)
+                kept.add(SystemTestUtil.tupleToList(scanned.get(i)));
+            else
+                Database.getBufferPool().deleteTuple(tid, scanned.get(i));
+        }
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(20, hf.numPages());
+    }
+
+    /**
+     * Vacuum packs the remaining tuples into the first pages and truncates
+     * the file, telling listeners where each tuple went
+     */
+    @Test
+    public void compact() throws Exception {
+        final HashMap<RecordId, RecordId> moves = new HashMap<RecordId, RecordId>();
+        Vacuum vacuum = new Vacuum(hf);
+        vacuum.setBatchPages(3);
+        vacuum.addMoveListener(new Vacuum.MoveListener() {
+            public void tupleMoved(TransactionId tid, RecordId from, Tuple t) {
+                assertTrue(Database.getBufferPool().holdsLock(tid, t.getRecordId().getPageId()));
+                assertTrue(from.getPageId().getPageNumber() > t.getRecordId().getPageId().getPageNumber());
+                assertNull(moves.put(from, t.getRecordId()));
+            }
+        });
+
+        assertEquals(18, vacuum.vacuum());
+        assertEquals(2, hf.numPages());
+        assertEquals(18, vacuum.getPagesFreed());
+        assertEquals(moves.size(), vacuum.getTuplesMoved());
+        SystemTestUtil.matchTuples(hf, kept);
+
+        // nothing left to do
+        assertEquals(0, new Vacuum(hf).vacuum());
+        assertEquals(2, hf.numPages());
+
+        // the truncated pages are gone from the free space map, so the table
+        // grows again by appending
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> extra = new ArrayList<Tuple>();
+        for (int i = 0; i < 1000; i++) {
+            extra.add(Utility.getHeapTuple(new int[] { i, i }));
+            kept.add(new ArrayList<Integer>(Arrays.asList(i, i)));
+        }
+        Database.getBufferPool().insertTuples(tid, hf.getId(), extra.iterator());
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(4, hf.numPages());
+        SystemTestUtil.matchTuples(hf, kept);
+    }
+
+    /**
+     * A throttled vacuum in a background thread reaches the same result
+     * while another transaction reads the table
+     */
+    @Test
+    public void background() throws Exception {
+        Vacuum vacuum = new Vacuum(hf);
+        vacuum.setBatchPages(2);
+        vacuum.setMaxPagesPerSecond(400);
+        long start = System.currentTimeMillis();
+        Thread t = vacuum.start();
+        // the reader may be aborted when it waits too long for a lock
+        for (boolean done = false; !done; ) {
+            TransactionId tid = new TransactionId();
+            try {
+                SystemTestUtil.matchTuples(hf, tid, kept);
+                done = true;
+            } catch (TransactionAbortedException e) {
+            }
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        t.join();
+        assertNull(vacuum.getFailure());
+        assertEquals(2, hf.numPages());
+        SystemTestUtil.matchTuples(hf, kept);
+        // at least the 20 pages emptied or truncated were visited
+        assertTrue(System.currentTimeMillis() - start >= 20 * 1000 / 400);
+    }
+
+    /**
+     * Only pages the caller has locked can be truncated
+     */
+    @Test
+    public void truncateNeedsLocks() throws Exception {
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), 19), Permissions.READ_WRITE);
+        assertFalse(hf.truncate(tid, 18));
+        assertEquals(20, hf.numPages());
+        Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), 18), Permissions.READ_WRITE);
+        assertTrue(hf.truncate(tid, 18));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(18, hf.numPages());
+    }
+
+    /**
+     * A transaction waiting for a page that is then truncated aborts when
+     * it gets the lock, instead of reading past the end of the file
+     */
+    @Test
+    public void waiterOnTruncatedPage() throws Exception {
+        TransactionId vacuum = new TransactionId();
+        for (int pgNo = 2; pgNo < 20; pgNo++)
+            Database.getBufferPool().getPage(vacuum, new HeapPageId(hf.getId(), pgNo), Permissions.READ_WRITE);
+
+        final TransactionId reader = new TransactionId();
+        final Throwable[] failure = new Throwable[1];
+        Thread t = new Thread(() -> {
+            try {
+                Database.getBufferPool().getPage(reader, new HeapPageId(hf.getId(), 5), Permissions.READ_ONLY);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        });
+        t.start();
+        // let the reader queue up behind the vacuum
+        Thread.sleep(200);
+        assertTrue(t.isAlive());
+
+        assertTrue(hf.truncate(vacuum, 2));
+        Database.getBufferPool().transactionComplete(vacuum);
+        t.join(10000);
+        assertFalse(t.isAlive());
+        assertTrue(String.valueOf(failure[0]), failure[0] instanceof TransactionAbortedException);
+        Database.getBufferPool().transactionComplete(reader, false);
+
+        // pages past the end that never existed are still an error
+        try {
+            Database.getBufferPool().getPage(new TransactionId(), new HeapPageId(hf.getId(), 25),
+                    Permissions.READ_ONLY);
+            fail("read past the end of the file");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(VacuumTest.class);
+    }
+}
@@ -0,0 +1,172 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    /** Tuples of two ints per page of the default size. */
+    private static final int PER_PAGE = 504;
+
+    private File f;
+    private HeapFile hf;
+
+    /**
+     * Creates a table of 4 full pages where field 0 of page p holds values
+     * from p * 1000 to p * 1000 + PER_PAGE - 1, and field 1 holds 7
+     */
+    @Before
+    public void createTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int p = 0; p < 4; p++) {
+            for (int i = 0; i < PER_PAGE; i++)
+                tuples.add(new ArrayList<Integer>(Arrays.asList(p * 1000 + i, 7)));
+        }
+        f = File.createTempFile("zones", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        hf = open();
+    }
+
+    private HeapFile open() {
+        HeapFile file = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        return file;
+    }
+
+    /**
+     * Scans the table through a filter on field 0 and returns the pages the
+     * scan read
+     */
+    private Set<Integer> pagesRead(Predicate p, int expected) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "");
+        scan.pushPredicate(p);
+        Filter filter = new Filter(p, scan);
+        filter.open();
+        int count = 0;
+        while (filter.hasNext()) {
+            filter.next();
+            count++;
+        }
+        filter.close();
+        assertEquals(expected, count);
+
+        HashSet<Integer> read = new HashSet<Integer>();
+        for (int pgNo = 0; pgNo < hf.numPages(); pgNo++) {
+            if (Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), pgNo)))
+                read.add(pgNo);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return read;
+    }
+
+    /**
+     * Zones are built the first time a page is read, and then let filtered
+     * scans skip pages
+     */
+    @Test
+    public void skipsPages() throws Exception {
+        ZoneMap zones = hf.getZoneMap();
+        assertFalse(zones.isKnown(0));
+        // the first scan reads everything and learns the zones
+        assertEquals(4, pagesRead(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0)),
+                4 * PER_PAGE).size());
+        for (int p = 0; p < 4; p++) {
+            assertTrue(zones.isKnown(p));
+            assertEquals(p * 1000, zones.getMin(p, 0));
+            assertEquals(p * 1000 + PER_PAGE - 1, zones.getMax(p, 0));
+            assertEquals(7, zones.getMin(p, 1));
+            assertEquals(7, zones.getMax(p, 1));
+        }
+
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)),
+                pagesRead(new Predicate(0, Predicate.Op.EQUALS, new IntField(2010)), 1));
+        assertEquals(new HashSet<Integer>(Arrays.asList(2, 3)),
+                pagesRead(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(1600)), 2 * PER_PAGE));
+        // between the zones of pages 0 and 1
+        assertEquals(new HashSet<Integer>(),
+                pagesRead(new Predicate(0, Predicate.Op.EQUALS, new IntField(800)), 0));
+        assertEquals(new HashSet<Integer>(),
+                pagesRead(new Predicate(1, Predicate.Op.NOT_EQUALS, new IntField(7)), 0));
+    }
+
+    /**
+     * Inserts widen a zone right away; deletes narrow it when they commit
+     */
+    @Test
+    public void followsChanges() throws Exception {
+        pagesRead(new Predicate(0, Predicate.Op.EQUALS, new IntField(-1)), 0);
+        ZoneMap zones = hf.getZoneMap();
+
+        // make room on page 1 by deleting its largest values
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getInt(0) >= 1000 + PER_PAGE - 10 && t.getInt(0) < 2000)
+                Database.getBufferPool().deleteTuple(tid, t);
+        }
+        it.close();
+        // not yet committed, so the zone still covers the deleted tuples
+        assertEquals(1000 + PER_PAGE - 1, zones.getMax(1, 0));
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertEquals(1000 + PER_PAGE - 11, zones.getMax(1, 0));
+
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(new int[] { 5000, 7 });
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(1, t.getRecordId().getPageId().getPageNumber());
+        assertEquals(5000, zones.getMax(1, 0));
+        Database.getBufferPool().transactionComplete(tid, true);
+
+        assertEquals(new HashSet<Integer>(Arrays.asList(1)),
+                pagesRead(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(4000)), 1));
+    }
+
+    /**
+     * Zones are kept in the side file, and pages known to be empty are
+     * never read
+     */
+    @Test
+    public void persistent() throws Exception {
+        pagesRead(new Predicate(0, Predicate.Op.EQUALS, new IntField(-1)), 0);
+
+        // empty page 3
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getInt(0) >= 3000)
+                Database.getBufferPool().deleteTuple(tid, t);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid, true);
+        assertTrue(hf.getZoneMap().isKnown(3));
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = open();
+        ZoneMap zones = hf.getZoneMap();
+        assertTrue(zones.isKnown(3));
+        assertEquals(2000 + PER_PAGE - 1, zones.getMax(2, 0));
+        assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2)),
+                pagesRead(new Predicate(1, Predicate.Op.EQUALS, new IntField(7)), 3 * PER_PAGE));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
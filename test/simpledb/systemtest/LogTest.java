@@ -3,6 +3,7 @@ package simpledb.systemtest;
 import java.io.*;
 import java.util.*;
 
+import org.junit.After;
 import org.junit.Test;
 
 import simpledb.*;
@@ -126,6 +127,14 @@ public class LogTest extends SimpleDbTestBase {
         hf2 = Utility.createEmptyHeapFile(file2.getAbsolutePath(), 2);
     }
 
+    @After
+    public void deleteSideFiles() {
+        if (file1 != null)
+            HeapFile.deleteSideFiles(file1);
+        if (file2 != null)
+            HeapFile.deleteSideFiles(file2);
+    }
+
     @Test public void PatchTest()
             throws IOException, DbException, TransactionAbortedException {
         setup();